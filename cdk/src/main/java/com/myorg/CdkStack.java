@@ -21,6 +21,11 @@ import software.amazon.awscdk.services.apigateway.LambdaIntegrationOptions;
 import software.amazon.awscdk.services.apigateway.Resource;
 import software.amazon.awscdk.services.apigateway.RestApi;
 import software.amazon.awscdk.services.apigateway.StageOptions;
+import software.amazon.awscdk.services.apigatewayv2.CfnApi;
+import software.amazon.awscdk.services.apigatewayv2.CfnDeployment;
+import software.amazon.awscdk.services.apigatewayv2.CfnIntegration;
+import software.amazon.awscdk.services.apigatewayv2.CfnRoute;
+import software.amazon.awscdk.services.apigatewayv2.CfnStage;
 import software.amazon.awscdk.services.certificatemanager.DnsValidatedCertificate;
 import software.amazon.awscdk.services.certificatemanager.ICertificate;
 import software.amazon.awscdk.services.cloudformation.CustomResource;
@@ -40,17 +45,25 @@ import software.amazon.awscdk.services.cloudfront.SourceConfiguration;
 import software.amazon.awscdk.services.cloudfront.ViewerCertificate;
 import software.amazon.awscdk.services.cloudfront.ViewerCertificateOptions;
 import software.amazon.awscdk.services.cloudfront.ViewerProtocolPolicy;
+import software.amazon.awscdk.services.cloudwatch.Dashboard;
+import software.amazon.awscdk.services.cloudwatch.GraphWidget;
+import software.amazon.awscdk.services.cloudwatch.IMetric;
+import software.amazon.awscdk.services.cloudwatch.Metric;
+import software.amazon.awscdk.services.cloudwatch.MetricOptions;
 import software.amazon.awscdk.services.dynamodb.Attribute;
 import software.amazon.awscdk.services.dynamodb.AttributeType;
 import software.amazon.awscdk.services.dynamodb.BillingMode;
+import software.amazon.awscdk.services.dynamodb.GlobalSecondaryIndexProps;
 import software.amazon.awscdk.services.dynamodb.Table;
 import software.amazon.awscdk.services.iam.Effect;
 import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.iam.ServicePrincipal;
 import software.amazon.awscdk.services.lambda.Alias;
 import software.amazon.awscdk.services.lambda.Code;
 import software.amazon.awscdk.services.lambda.Function;
 import software.amazon.awscdk.services.lambda.IAlias;
 import software.amazon.awscdk.services.lambda.IVersion;
+import software.amazon.awscdk.services.lambda.Permission;
 import software.amazon.awscdk.services.lambda.Runtime;
 import software.amazon.awscdk.services.lambda.SingletonFunction;
 import software.amazon.awscdk.services.lambda.Tracing;
@@ -70,6 +83,7 @@ import software.amazon.awscdk.services.s3.deployment.Expires;
 import software.amazon.awscdk.services.s3.deployment.ISource;
 import software.amazon.awscdk.services.s3.deployment.Source;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
@@ -122,8 +136,47 @@ public class CdkStack extends Stack {
                         .build())
                 .billingMode(BillingMode.PAY_PER_REQUEST)
                 .build();
+        // Which realtime WebSocket connections are subscribed to which whiteboards. API Gateway closes connections
+        // after two hours, so subscriptions expire after that in case the disconnect never gets handled.
+        final Table subscriptionTable = Table.Builder.create(this, "SubscriptionTable")
+                .partitionKey(Attribute.builder()
+                        .name("identifier")
+                        .type(AttributeType.STRING)
+                        .build())
+                .sortKey(Attribute.builder()
+                        .name("connectionId")
+                        .type(AttributeType.STRING)
+                        .build())
+                .timeToLiveAttribute("expiresAt")
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build();
+        subscriptionTable.addGlobalSecondaryIndex(GlobalSecondaryIndexProps.builder()
+                .indexName("connectionId")
+                .partitionKey(Attribute.builder()
+                        .name("connectionId")
+                        .type(AttributeType.STRING)
+                        .build())
+                .build());
+        final CfnApi realtimeApi = CfnApi.Builder.create(this, "WhiteboardRealtimeApi")
+                .name(String.format("%s-realtime", shortStackName))
+                .protocolType("WEBSOCKET")
+                .routeSelectionExpression("$request.body.action")
+                .build();
+        final String realtimeEndpoint = String.format("https://%s.execute-api.%s.amazonaws.com/prod",
+                realtimeApi.getRef(),
+                props.getEnv().getRegion());
+
         final Map<String, String> lambdaEnvironment = new HashMap<>();
         lambdaEnvironment.put("WHITEBOARD_TABLE_NAME", whiteboardTable.getTableName());
+        lambdaEnvironment.put("WHITEBOARD_STORAGE_MODE", "SNAPSHOT_AND_DELTA");
+        lambdaEnvironment.put("SUBSCRIPTION_TABLE_NAME", subscriptionTable.getTableName());
+        lambdaEnvironment.put("REALTIME_ENDPOINT", realtimeEndpoint);
+        // One JSON object per log line, which CloudWatch Logs Insights picks the fields out of. See log4j2.xml.
+        lambdaEnvironment.put("WHITEBOARD_LOG_APPENDER", "Json");
+        // Built with ./gradlew build -PappCds: map the classes of a cold start in from the class-data sharing archive.
+        if (new File("../lambda/build/appcds/whiteboard.jsa").isFile()) {
+            lambdaEnvironment.put("JAVA_TOOL_OPTIONS", "-Xshare:auto -XX:SharedArchiveFile=/var/task/whiteboard.jsa");
+        }
 
         final Function whiteboardLambda = Function.Builder.create(this, "WhiteboardLambda")
                 .runtime(Runtime.JAVA_11)    // execution environment
@@ -144,6 +197,42 @@ public class CdkStack extends Stack {
                 .aliasName("LATEST")
                 .build();
         whiteboardTable.grantReadWriteData(whiteboardLambda);
+        subscriptionTable.grantReadWriteData(whiteboardLambda);
+        // --------------------------------------------------------------------
+
+        // --------------------------------------------------------------------
+        //  Dashboard of the metrics the whiteboard Lambda writes in embedded metric format, see metrics.Metrics in
+        //  the lambda project. What to look at before changing the memory size above: heap used against memorySize,
+        //  and which stages take a save's time as documents grow.
+        // --------------------------------------------------------------------
+        final Dashboard dashboard = Dashboard.Builder.create(this, "WhiteboardDashboard")
+                .dashboardName(String.format("%s-whiteboard", shortStackName))
+                .build();
+        final String functionName = whiteboardLambda.getFunctionName();
+        dashboard.addWidgets(
+                graph("Stage time p99 (ms)", functionName, "p99", ImmutableList.of("DecodeTime", "EncodeTime",
+                        "ParseTime", "MergeNodesTime", "RenderTime", "TableReadTime", "TableWriteTime",
+                        "WhiteboardLoadTime", "NewestWhiteboardLoadTime")),
+                graph("Commit time and attempts p99", functionName, "p99",
+                        ImmutableList.of("CommitTime", "CommitAttempts")));
+        dashboard.addWidgets(
+                graph("Document size p99", functionName, "p99", ImmutableList.of("DocumentBytes")),
+                graph("Document cells p99", functionName, "p99", ImmutableList.of("DocumentCells")));
+        dashboard.addWidgets(
+                graph("Sets by outcome", functionName, "Sum",
+                        ImmutableList.of("Clobbers", "LossyClobbers", "CleanMerges", "ConflictMerges",
+                                "CommitsGivenUp")),
+                graph("Cache hit rate (%)", functionName, "Average",
+                        ImmutableList.of("WhiteboardCacheHitRate", "NewestWhiteboardCacheHitRate")));
+        dashboard.addWidgets(
+                graph("Heap used max (bytes)", functionName, "Maximum", ImmutableList.of("HeapUsedBytes")),
+                GraphWidget.Builder.create()
+                        .title("Duration p99 (ms)")
+                        .left(Collections.singletonList(whiteboardLambda.metricDuration(MetricOptions.builder()
+                                .statistic("p99")
+                                .build())))
+                        .width(12)
+                        .build());
         // --------------------------------------------------------------------
 
         // --------------------------------------------------------------------
@@ -194,8 +283,12 @@ public class CdkStack extends Stack {
                 .defaultCorsPreflightOptions(CorsOptions.builder()
                         .allowOrigins(Cors.ALL_ORIGINS)
                         .allowCredentials(true)
-                        .allowHeaders(Cors.DEFAULT_HEADERS)
-                        .allowMethods(ImmutableList.of("POST", "OPTIONS"))
+                        .allowHeaders(ImmutableList.<String>builder()
+                                .addAll(Cors.DEFAULT_HEADERS)
+                                .add("If-None-Match")
+                                .add("X-Request-Id")
+                                .build())
+                        .allowMethods(ImmutableList.of("GET", "POST", "OPTIONS"))
                         .maxAge(Duration.seconds(86400))
                         .build())
                 .deployOptions(StageOptions.builder()
@@ -213,6 +306,72 @@ public class CdkStack extends Stack {
         final LambdaIntegration setWhiteboardIntegration = new LambdaIntegration(whiteboardLambdaLatest,
                 LambdaIntegrationOptions.builder().proxy(true).build());
         setResource.addMethod("POST", setWhiteboardIntegration);
+
+        final Resource patchResource = rootResource.addResource("patch");
+        final LambdaIntegration patchWhiteboardIntegration = new LambdaIntegration(whiteboardLambdaLatest,
+                LambdaIntegrationOptions.builder().proxy(true).build());
+        patchResource.addMethod("POST", patchWhiteboardIntegration);
+
+        // GET /api/board/{identifier}/v/{version} never changes, so CloudFront and browsers can cache it for good, and
+        // GET /api/board/{identifier}/head is cached for a second so that many polling clients cost one read.
+        final Resource whiteboardResource = rootResource.addResource("board").addResource("{identifier}");
+        final LambdaIntegration getWhiteboardVersionIntegration = new LambdaIntegration(whiteboardLambdaLatest,
+                LambdaIntegrationOptions.builder().proxy(true).build());
+        whiteboardResource.addResource("v").addResource("{version}").addMethod("GET", getWhiteboardVersionIntegration);
+        final LambdaIntegration getWhiteboardHeadIntegration = new LambdaIntegration(whiteboardLambdaLatest,
+                LambdaIntegrationOptions.builder().proxy(true).build());
+        whiteboardResource.addResource("head").addMethod("GET", getWhiteboardHeadIntegration);
+        // --------------------------------------------------------------------
+
+        // --------------------------------------------------------------------
+        //  Realtime WebSocket API. Clients subscribe to a whiteboard and the whiteboard Lambda pushes new versions to
+        //  them, instead of them polling /api/get.
+        // --------------------------------------------------------------------
+        final Function realtimeLambda = Function.Builder.create(this, "RealtimeLambda")
+                .runtime(Runtime.JAVA_11)
+                .code(Code.fromAsset("../lambda/build/distributions/collaborative_whiteboard.zip"))
+                .handler("lambda.RealtimeHandler::handleRequest")
+                .memorySize(1024)
+                .timeout(Duration.seconds(10))
+                .environment(lambdaEnvironment)
+                .logRetention(RetentionDays.ONE_WEEK)
+                .tracing(Tracing.ACTIVE)
+                .build();
+        subscriptionTable.grantReadWriteData(realtimeLambda);
+        realtimeLambda.addPermission("RealtimeApiInvoke", Permission.builder()
+                .principal(new ServicePrincipal("apigateway.amazonaws.com"))
+                .sourceArn(String.format("arn:aws:execute-api:%s:%s:%s/*",
+                        props.getEnv().getRegion(), this.getAccount(), realtimeApi.getRef()))
+                .build());
+        whiteboardLambda.addToRolePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .actions(Collections.singletonList("execute-api:ManageConnections"))
+                .resources(Collections.singletonList(String.format("arn:aws:execute-api:%s:%s:%s/prod/POST/@connections/*",
+                        props.getEnv().getRegion(), this.getAccount(), realtimeApi.getRef())))
+                .build());
+
+        final CfnIntegration realtimeIntegration = CfnIntegration.Builder.create(this, "RealtimeIntegration")
+                .apiId(realtimeApi.getRef())
+                .integrationType("AWS_PROXY")
+                .integrationUri(String.format("arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
+                        props.getEnv().getRegion(), realtimeLambda.getFunctionArn()))
+                .build();
+        final CfnDeployment realtimeDeployment = CfnDeployment.Builder.create(this, "RealtimeDeployment")
+                .apiId(realtimeApi.getRef())
+                .build();
+        for (final String routeKey : ImmutableList.of("$connect", "$disconnect", "subscribe", "unsubscribe")) {
+            final CfnRoute route = CfnRoute.Builder.create(this, String.format("RealtimeRoute_%s_", routeKey.replace("$", "")))
+                    .apiId(realtimeApi.getRef())
+                    .routeKey(routeKey)
+                    .target(String.format("integrations/%s", realtimeIntegration.getRef()))
+                    .build();
+            realtimeDeployment.addDependsOn(route);
+        }
+        CfnStage.Builder.create(this, "RealtimeStage")
+                .apiId(realtimeApi.getRef())
+                .stageName("prod")
+                .deploymentId(realtimeDeployment.getRef())
+                .build();
         // --------------------------------------------------------------------
 
         // --------------------------------------------------------------------
@@ -250,10 +409,23 @@ public class CdkStack extends Stack {
                                 .originKeepaliveTimeout(Duration.seconds(60))
                                 .build())
                         .originPath("/prod")
-                        .behaviors(Collections.singletonList(Behavior.builder()
-                                .pathPattern("/api/*")
-                                .allowedMethods(CloudFrontAllowedMethods.ALL)
-                                .build()))
+                        .behaviors(ImmutableList.of(
+                                // Whiteboard versions and heads, before /api/* so that it matches first. The TTLs
+                                // leave how long to cache to the Lambda's Cache-Control header: a year for a version,
+                                // a second for a head or a version that isn't there yet.
+                                Behavior.builder()
+                                        .pathPattern("/api/board/*")
+                                        .compress(true)
+                                        .allowedMethods(CloudFrontAllowedMethods.GET_HEAD_OPTIONS)
+                                        .minTtl(Duration.seconds(0))
+                                        .defaultTtl(Duration.seconds(0))
+                                        .maxTtl(Duration.days(365))
+                                        .build(),
+
+                                Behavior.builder()
+                                        .pathPattern("/api/*")
+                                        .allowedMethods(CloudFrontAllowedMethods.ALL)
+                                        .build()))
                         .build(),
 
                 SourceConfiguration.builder()
@@ -360,6 +532,11 @@ public class CdkStack extends Stack {
                 .value(apiGatewayDomainName)
                 .build();
 
+        CfnOutput.Builder.create(this, "RealtimeEndpointExport")
+                .exportName(String.format("%s-%s", shortStackName, "RealtimeEndpointExport"))
+                .value(realtimeEndpoint.replace("https://", "wss://"))
+                .build();
+
         CfnOutput.Builder.create(this, "CloudfrontDomainNameExport")
                 .exportName(String.format("%s-%s", shortStackName, "CloudfrontDomainNameExport"))
                 .value(distribution.getDomainName())
@@ -370,4 +547,28 @@ public class CdkStack extends Stack {
                 .value(rewriteLambdaArn)
                 .build();
     }
+
+    /**
+     * A graph of the whiteboard Lambda's metrics from the Whiteboard namespace, half the dashboard wide.
+     */
+    private static GraphWidget graph(final String title,
+                                     final String functionName,
+                                     final String statistic,
+                                     final List<String> metricNames) {
+        final ImmutableList.Builder<IMetric> metrics = ImmutableList.builder();
+        for (final String metricName : metricNames) {
+            metrics.add(Metric.Builder.create()
+                    .namespace("Whiteboard")
+                    .metricName(metricName)
+                    .dimensions(ImmutableMap.<String, Object>of("FunctionName", functionName))
+                    .statistic(statistic)
+                    .period(Duration.minutes(5))
+                    .build());
+        }
+        return GraphWidget.Builder.create()
+                .title(title)
+                .left(metrics.build())
+                .width(12)
+                .build();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package lambda;
+
+import logic.BenchmarkDocuments;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compress and decompress one document with each codec. The compressed size is printed during setup, since time is
+ * only half of the trade off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"DEFLATE_1", "DEFLATE_6", "DEFLATE_9", "LZ4"})
+    public String codecName;
+
+    @Param({"10", "1000", "10000", "50000"})
+    public int cellCount;
+
+    private ContentCodec codec;
+    private byte[] document;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        codec = codecName.startsWith("DEFLATE_")
+                ? new DeflateCodec(Integer.parseInt(codecName.substring("DEFLATE_".length())))
+                : new Lz4Codec();
+        document = BenchmarkDocuments.document(cellCount).getBytes(StandardCharsets.UTF_8);
+        compressed = codec.compress(document);
+        System.out.printf("%n%s compresses %d bytes to %d bytes%n", codecName, document.length, compressed.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return codec.compress(document);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return codec.decompress(compressed, 0, compressed.length);
+    }
+}
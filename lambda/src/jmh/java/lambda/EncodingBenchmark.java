@@ -0,0 +1,103 @@
+package lambda;
+
+import logic.BenchmarkDocuments;
+import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link Encoding} against the stream based implementation it replaced, and the cost of storing client content and
+ * loading it back for a client with each storage codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+    @Param({"DEFLATE", "LZ4"})
+    public String storageCodec;
+
+    @Param({"10", "1000", "10000", "50000"})
+    public int cellCount;
+
+    private Encoding encoding;
+    private String document;
+    private String encoded;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() {
+        final DeflateCodec deflateCodec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+        encoding = new Encoding(deflateCodec, "LZ4".equals(storageCodec) ? new Lz4Codec() : deflateCodec);
+        document = BenchmarkDocuments.document(cellCount);
+        encoded = encoding.encode(document);
+        stored = encoding.toStored(encoded);
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoding.encode(document);
+    }
+
+    @Benchmark
+    public String decode() {
+        return encoding.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] toStored() {
+        return encoding.toStored(encoded);
+    }
+
+    @Benchmark
+    public String fromStored() {
+        return encoding.fromStored(stored);
+    }
+
+    @SneakyThrows(IOException.class)
+    @Benchmark
+    public String legacyEncode() {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final InputStream is = IOUtils.toInputStream(document, StandardCharsets.UTF_8);
+        try (final DeflaterInputStream dis = new DeflaterInputStream(is)) {
+            IOUtils.copy(dis, baos);
+        }
+        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+
+    @SneakyThrows(IOException.class)
+    @Benchmark
+    public String legacyDecode() {
+        final byte[] compressed = Base64.getDecoder().decode(encoded);
+        final StringWriter writer = new StringWriter();
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(compressed);
+             final InflaterInputStream iis = new InflaterInputStream(bais)) {
+            IOUtils.copy(iis, writer, StandardCharsets.UTF_8);
+        }
+        return writer.toString();
+    }
+}
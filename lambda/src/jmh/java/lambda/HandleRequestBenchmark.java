@@ -0,0 +1,132 @@
+package lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import dynamodb.InMemoryWhiteboardTable;
+import logic.BenchmarkDocuments;
+import org.apache.logging.log4j.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole requests through {@link BaseHandler#handleRequest}, on an in-memory table, with each way of logging: VERBOSE
+ * writes every trace line of every request as it is logged, which is how the handler logged before requests were
+ * sampled, and SAMPLED_ASYNC is log4j2.xml with WHITEBOARD_LOG_APPENDER=AsyncJson and the default sample rate.
+ *
+ * Lines go to a file, since JMH would otherwise pass them all through its own output. The bytes logged per request are
+ * printed at the end, since those are what CloudWatch Logs charges for.
+ *
+ * Run with: ./gradlew jmh -PjmhInclude=HandleRequestBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleRequestBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String IDENTIFIER = "12345";
+
+    @Param({"VERBOSE", "SAMPLED_ASYNC"})
+    public String logging;
+
+    @Param({"1000", "10000"})
+    public int cellCount;
+
+    private File logFile;
+    private String content;
+    private byte[] getEvent;
+    private WhiteboardHandler handler;
+    private long version;
+    private long requests;
+
+    /**
+     * Before anything logs, so that log4j starts with the configuration picked here. Each parameter gets a JVM of its
+     * own.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("whiteboard-benchmark", ".log");
+        System.setProperty("benchmark.logFile", logFile.getPath());
+        System.setProperty("log4j.configurationFile",
+                "VERBOSE".equals(logging) ? "log4j2-bench-verbose.xml" : "log4j2-bench-sampled.xml");
+        content = new Encoding().encode(BenchmarkDocuments.document(cellCount));
+        getEvent = event("/api/get", "{\"apiVersion\": 1, \"identifier\": \"" + IDENTIFIER + "\"}");
+    }
+
+    /**
+     * Versions pile up in the table, so it starts again each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void setUpTable() {
+        handler = new WhiteboardHandler(new InMemoryWhiteboardTable());
+        handle(getEvent);
+        version = 1;
+    }
+
+    /**
+     * Each set is of the newest version, so the new content is saved as it is, without a merge.
+     */
+    @State(Scope.Benchmark)
+    public static class SetEvent {
+        private byte[] event;
+
+        @Setup(Level.Invocation)
+        public void setUp(final HandleRequestBenchmark benchmark) throws IOException {
+            event = event("/api/set", objectMapper.writeValueAsString(
+                    new SetWhiteboardRequest(1, IDENTIFIER, benchmark.version, benchmark.content)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // Stopping log4j writes out whatever the async appender still has queued.
+        LogManager.shutdown();
+        System.out.printf("%n%s logged %d bytes per request over %d requests%n",
+                logging, logFile.length() / Math.max(requests, 1), requests);
+        logFile.delete();
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return handle(getEvent);
+    }
+
+    @Benchmark
+    public byte[] set(final SetEvent setEvent) {
+        version++;
+        return handle(setEvent.event);
+    }
+
+    private byte[] handle(final byte[] event) {
+        requests++;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(event), output, null /*context*/);
+        return output.toByteArray();
+    }
+
+    private static byte[] event(final String resource, final String body) throws IOException {
+        return objectMapper.writeValueAsBytes(ImmutableMap.of(
+                "resource", resource,
+                "headers", ImmutableMap.of("Content-Type", "application/json"),
+                "body", body));
+    }
+}
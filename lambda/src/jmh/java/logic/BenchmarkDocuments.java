@@ -0,0 +1,73 @@
+package logic;
+
+import lombok.Value;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Synthetic mxGraph documents for benchmarks: a grid of square vertex cells, like a large architecture board.
+ */
+public final class BenchmarkDocuments {
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * The three documents of a merge. Both sides modify a percentage of the ancestor's cells and add one cell each.
+     */
+    @Value
+    public static class Scenario {
+        String ancestor;
+        String oldDocument;
+        String newDocument;
+    }
+
+    /**
+     * @param cellCount number of vertex cells on the board.
+     * @return a board no one has edited.
+     */
+    public static String document(final int cellCount) {
+        return document(cellCount, -1, -1, 0, null);
+    }
+
+    /**
+     * Edits are spread evenly over the board: in every run of 100 cells the old side modifies the first editPercent, and
+     * the new side the next editPercent, shifted back so that conflictPercent of its edits land on cells the old side
+     * modified too, differently.
+     *
+     * @param cellCount number of vertex cells on the board.
+     * @param editPercent percentage of cells each side modifies, up to 50.
+     * @param conflictPercent percentage of each side's edits that are to the same cells.
+     */
+    public static Scenario scenario(final int cellCount, final int editPercent, final int conflictPercent) {
+        checkArgument(editPercent >= 0 && editPercent <= 50, "editPercent must be between 0 and 50");
+        checkArgument(conflictPercent >= 0 && conflictPercent <= 100, "conflictPercent must be between 0 and 100");
+        final int newEditStart = editPercent - editPercent * conflictPercent / 100;
+        return new Scenario(
+                document(cellCount),
+                document(cellCount, 0, editPercent, 10, "old"),
+                document(cellCount, newEditStart, newEditStart + editPercent, 20, "new"));
+    }
+
+    private static String document(final int cellCount,
+                                   final int editStart,
+                                   final int editEnd,
+                                   final int editOffset,
+                                   final String addedId) {
+        final StringBuilder sb = new StringBuilder("<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>");
+        for (int i = 0; i < cellCount; i++) {
+            final int offset = i % 100 >= editStart && i % 100 < editEnd ? editOffset : 0;
+            appendCell(sb, "cell_" + i, (i % 50) * 100 + offset, (i / 50) * 100);
+        }
+        if (addedId != null) {
+            appendCell(sb, "added_" + addedId, 0, 0);
+        }
+        return sb.append("</root></mxGraphModel>").toString();
+    }
+
+    private static void appendCell(final StringBuilder sb, final String id, final int x, final int y) {
+        sb.append("<mxCell id=\"").append(id)
+                .append("\" value=\"\" style=\"whiteSpace=wrap;html=1;aspect=fixed;\" parent=\"1\" vertex=\"1\">")
+                .append("<mxGeometry x=\"").append(x).append("\" y=\"").append(y)
+                .append("\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>");
+    }
+}
@@ -0,0 +1,52 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole merge on the DOM path, reusing each thread's DocumentBuilder and Transformer against creating new ones every
+ * time. A merge parses three documents and renders one. Creating them is a fixed cost, so it matters most on small
+ * boards, which are most of the traffic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomReuseBenchmark {
+    @Param({"10", "100", "1000"})
+    public int cellCount;
+
+    private BenchmarkDocuments.Scenario scenario;
+    private final MxGraphDocumentMerger reusingMerger =
+            new MxGraphDocumentMerger(new XmlUtils(XmlUtils.ParserType.DOM, true));
+    private final MxGraphDocumentMerger creatingMerger =
+            new MxGraphDocumentMerger(new XmlUtils(XmlUtils.ParserType.DOM, false));
+
+    @Setup
+    public void setUp() {
+        scenario = BenchmarkDocuments.scenario(cellCount, 10, 0);
+    }
+
+    @Benchmark
+    public String reused() {
+        return reusingMerger.merge(scenario.getAncestor(), scenario.getOldDocument(), scenario.getNewDocument());
+    }
+
+    @Benchmark
+    public String created() {
+        return creatingMerger.merge(scenario.getAncestor(), scenario.getOldDocument(), scenario.getNewDocument());
+    }
+}
@@ -0,0 +1,79 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole merge as the Lambda does it, from three documents to the merged document, and the ID-keyed merge on its own
+ * against the Myers diff merge it replaced, on already parsed documents.
+ *
+ * Both sides modify a percentage of cells spread over the board and add one cell each, see
+ * {@link BenchmarkDocuments#scenario}. A low edit percentage is what a typical concurrent edit looks like; a high one is
+ * e.g. two people dragging large selections. Conflicts are edits by both sides to the same cell.
+ *
+ * Throughput and sampled latency percentiles are both reported, and bytes allocated per operation by the GC profiler,
+ * which build.gradle turns on for all benchmarks.
+ *
+ * Run with: ./gradlew jmh, or ./gradlew jmh -PjmhInclude=MergeBenchmark for just this one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int cellCount;
+
+    @Param({"1", "10"})
+    public int editPercent;
+
+    @Param({"0", "50"})
+    public int conflictPercent;
+
+    private BenchmarkDocuments.Scenario scenario;
+    private List<MxCell> ancestorNodes;
+    private List<MxCell> oldNodes;
+    private List<MxCell> newNodes;
+
+    private final MxGraphDocumentMerger merger = new MxGraphDocumentMerger();
+    private final NodeMerger idKeyedNodeMerger = new IdKeyedNodeMerger();
+    private final NodeMerger myersNodeMerger = new MyersNodeMerger();
+
+    @Setup
+    public void setUp() {
+        final XmlUtils xmlUtils = new XmlUtils();
+        scenario = BenchmarkDocuments.scenario(cellCount, editPercent, conflictPercent);
+        ancestorNodes = xmlUtils.readMxCells(scenario.getAncestor());
+        oldNodes = xmlUtils.readMxCells(scenario.getOldDocument());
+        newNodes = xmlUtils.readMxCells(scenario.getNewDocument());
+    }
+
+    @Benchmark
+    public String merge() {
+        return merger.merge(scenario.getAncestor(), scenario.getOldDocument(), scenario.getNewDocument());
+    }
+
+    @Benchmark
+    public NodeMergeResult idKeyed() {
+        return idKeyedNodeMerger.mergeNodes(ancestorNodes, oldNodes, newNodes);
+    }
+
+    @Benchmark
+    public NodeMergeResult myers() {
+        return myersNodeMerger.mergeNodes(ancestorNodes, oldNodes, newNodes);
+    }
+}
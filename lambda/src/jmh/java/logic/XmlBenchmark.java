@@ -0,0 +1,63 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse and render one document, the way a merge does for its output, with the DOM path and with the streaming path.
+ * The DOM path's parse and render are also measured on their own.
+ *
+ * Bytes allocated per operation are reported by the GC profiler, which build.gradle turns on for all benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlBenchmark {
+    @Param({"10", "1000", "10000", "50000"})
+    public int cellCount;
+
+    private final XmlUtils xmlUtils = new XmlUtils();
+    private String document;
+    private List<MxCell> cells;
+
+    @Setup
+    public void setUp() {
+        document = BenchmarkDocuments.document(cellCount);
+        cells = xmlUtils.readMxCells(document);
+    }
+
+    @Benchmark
+    public String dom() {
+        return xmlUtils.documentToString(xmlUtils.createMxGraphModelDocument(xmlUtils.getMxCellNodes(document)));
+    }
+
+    @Benchmark
+    public String streaming() {
+        return xmlUtils.mxGraphModelToString(xmlUtils.readMxCells(document));
+    }
+
+    @Benchmark
+    public List<MxCell> getMxCellNodes() {
+        return xmlUtils.getMxCellNodes(document);
+    }
+
+    @Benchmark
+    public String documentToString() {
+        return xmlUtils.documentToString(xmlUtils.createMxGraphModelDocument(cells));
+    }
+}
@@ -0,0 +1,292 @@
+package dynamodb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import exception.WhiteboardVersionExistsException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The whiteboard table through the non-blocking SDK v2 client, so a call in flight doesn't hold a thread. Items are
+ * mapped by hand, to the same attributes the v1 mapper uses for {@link Whiteboard}, so either can read what the other
+ * saved.
+ */
+public class AsyncWhiteboardTable implements WhiteboardTable {
+    /**
+     * Unprocessed items of a batch are retried this many times, backing off from {@link #BATCH_RETRY_DELAY_MILLIS}.
+     */
+    private static final int MAX_BATCH_RETRIES = 8;
+    private static final long BATCH_RETRY_DELAY_MILLIS = 25;
+
+    private static final String IDENTIFIER = "identifier";
+    private static final String VERSION = "version";
+    private static final String CONTENT = "content";
+    private static final String COMPRESSED_CONTENT = "compressedContent";
+    private static final String DELTA = "delta";
+    private static final String SNAPSHOT_VERSION = "snapshotVersion";
+    private static final String CHUNK_KEY = "chunkKey";
+    private static final String CHUNK_COUNT = "chunkCount";
+
+    private final DynamoDbAsyncClient dynamoDb;
+    private final String tableName;
+
+    public AsyncWhiteboardTable(final DynamoDbAsyncClient dynamoDb, final String tableName) {
+        this.dynamoDb = checkNotNull(dynamoDb);
+        this.tableName = checkNotNull(tableName);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+        return dynamoDb.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(key(identifier, version))
+                .build())
+                .thenApply(response -> response.hasItem()
+                        ? Optional.of(fromItem(response.item()))
+                        : Optional.empty());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier, final boolean consistentRead) {
+        return queryNewest(newestQuery(identifier, consistentRead).build());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                          final boolean consistentRead) {
+        return queryNewest(newestQuery(identifier, consistentRead)
+                .projectionExpression("identifier, #version, snapshotVersion, delta")
+                .expressionAttributeNames(ImmutableMap.of("#version", VERSION))
+                .build());
+    }
+
+    private QueryRequest.Builder newestQuery(final String identifier, final boolean consistentRead) {
+        return QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression("identifier = :identifier")
+                .expressionAttributeValues(ImmutableMap.of(":identifier", AttributeValue.fromS(identifier)))
+                .scanIndexForward(false)
+                .limit(1)
+                .consistentRead(consistentRead);
+    }
+
+    private CompletableFuture<Optional<Whiteboard>> queryNewest(final QueryRequest request) {
+        return dynamoDb.query(request)
+                .thenApply(response -> response.items().isEmpty()
+                        ? Optional.empty()
+                        : Optional.of(fromItem(response.items().get(0))));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                            final long fromVersion,
+                                                            final long toVersion,
+                                                            final boolean consistentRead) {
+        final QueryRequest request = QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression("identifier = :identifier AND #version BETWEEN :fromVersion AND :toVersion")
+                .expressionAttributeNames(ImmutableMap.of("#version", VERSION))
+                .expressionAttributeValues(ImmutableMap.of(
+                        ":identifier", AttributeValue.fromS(identifier),
+                        ":fromVersion", AttributeValue.fromN(Long.toString(fromVersion)),
+                        ":toVersion", AttributeValue.fromN(Long.toString(toVersion))))
+                .consistentRead(consistentRead)
+                .build();
+        return queryPages(request, null, new ArrayList<>());
+    }
+
+    /**
+     * A query returns at most 1MB at a time, so carry on from where the last page stopped until there are no more.
+     */
+    private CompletableFuture<List<Whiteboard>> queryPages(final QueryRequest request,
+                                                           @Nullable final Map<String, AttributeValue> startKey,
+                                                           final List<Whiteboard> results) {
+        return dynamoDb.query(request.toBuilder().exclusiveStartKey(startKey).build())
+                .thenCompose(response -> {
+                    response.items().forEach(item -> results.add(fromItem(item)));
+                    return response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+                            ? queryPages(request, response.lastEvaluatedKey(), results)
+                            : CompletableFuture.completedFuture(results);
+                });
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys in a batch, not %s", keys.size());
+        final List<Map<String, AttributeValue>> itemKeys = keys.stream()
+                .map(key -> key(key.getIdentifier(), key.getVersion()))
+                .collect(Collectors.toList());
+        return batchLoad(ImmutableMap.of(tableName, KeysAndAttributes.builder().keys(itemKeys).build()),
+                0,
+                new ArrayList<>(keys.size()));
+    }
+
+    private CompletableFuture<List<Whiteboard>> batchLoad(final Map<String, KeysAndAttributes> requestItems,
+                                                          final int retries,
+                                                          final List<Whiteboard> results) {
+        return dynamoDb.batchGetItem(BatchGetItemRequest.builder().requestItems(requestItems).build())
+                .thenCompose(response -> {
+                    response.responses().getOrDefault(tableName, ImmutableList.of())
+                            .forEach(item -> results.add(fromItem(item)));
+                    if (!response.hasUnprocessedKeys() || response.unprocessedKeys().isEmpty()) {
+                        return CompletableFuture.completedFuture(results);
+                    }
+                    return afterBatchRetryDelay(retries, "load")
+                            .thenCompose(ignored -> batchLoad(response.unprocessedKeys(), retries + 1, results));
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+        return dynamoDb.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(toItem(whiteboard))
+                .conditionExpression("attribute_not_exists(identifier)")
+                .build())
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return null;
+                    }
+                    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof ConditionalCheckFailedException) {
+                        throw new WhiteboardVersionExistsException(String.format(
+                                "identifier %s version %s already exists",
+                                whiteboard.getIdentifier(), whiteboard.getVersion()), cause);
+                    }
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+        checkArgument(whiteboards.size() <= 25, "at most 25 items in a batch, not %s", whiteboards.size());
+        final List<WriteRequest> writeRequests = whiteboards.stream()
+                .map(whiteboard -> WriteRequest.builder()
+                        .putRequest(PutRequest.builder().item(toItem(whiteboard)).build())
+                        .build())
+                .collect(Collectors.toList());
+        return batchWrite(ImmutableMap.of(tableName, writeRequests), "save", 0);
+    }
+
+    @Override
+    public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys in a batch, not %s", keys.size());
+        final List<WriteRequest> writeRequests = keys.stream()
+                .map(key -> WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(key(key.getIdentifier(), key.getVersion())).build())
+                        .build())
+                .collect(Collectors.toList());
+        return batchWrite(ImmutableMap.of(tableName, writeRequests), "delete", 0);
+    }
+
+    private CompletableFuture<Void> batchWrite(final Map<String, List<WriteRequest>> requestItems,
+                                               final String operation,
+                                               final int retries) {
+        return dynamoDb.batchWriteItem(BatchWriteItemRequest.builder().requestItems(requestItems).build())
+                .thenCompose(response -> {
+                    if (!response.hasUnprocessedItems() || response.unprocessedItems().isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return afterBatchRetryDelay(retries, operation)
+                            .thenCompose(ignored -> batchWrite(response.unprocessedItems(), operation, retries + 1));
+                });
+    }
+
+    /**
+     * Unprocessed items mean the table is being throttled, so back off before trying them again, without holding a
+     * thread while waiting.
+     */
+    private static CompletableFuture<Void> afterBatchRetryDelay(final int retries, final String operation) {
+        if (retries >= MAX_BATCH_RETRIES) {
+            throw new IllegalStateException(String.format(
+                    "failed to %s batch, items still unprocessed after %s retries", operation, retries));
+        }
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(BATCH_RETRY_DELAY_MILLIS << retries, TimeUnit.MILLISECONDS));
+    }
+
+    private static Map<String, AttributeValue> key(final String identifier, final long version) {
+        return ImmutableMap.of(
+                IDENTIFIER, AttributeValue.fromS(identifier),
+                VERSION, AttributeValue.fromN(Long.toString(version)));
+    }
+
+    /**
+     * Unset attributes are left out, as the v1 mapper does.
+     */
+    private static Map<String, AttributeValue> toItem(final Whiteboard whiteboard) {
+        final Map<String, AttributeValue> item = new HashMap<>();
+        item.put(IDENTIFIER, AttributeValue.fromS(whiteboard.getIdentifier()));
+        item.put(VERSION, AttributeValue.fromN(whiteboard.getVersion().toString()));
+        if (whiteboard.getContent() != null) {
+            item.put(CONTENT, AttributeValue.fromS(whiteboard.getContent()));
+        }
+        if (whiteboard.getCompressedContent() != null) {
+            item.put(COMPRESSED_CONTENT, AttributeValue.fromB(
+                    SdkBytes.fromByteArrayUnsafe(whiteboard.getCompressedContent())));
+        }
+        if (whiteboard.getDelta() != null) {
+            item.put(DELTA, AttributeValue.fromS(whiteboard.getDelta()));
+        }
+        if (whiteboard.getSnapshotVersion() != null) {
+            item.put(SNAPSHOT_VERSION, AttributeValue.fromN(whiteboard.getSnapshotVersion().toString()));
+        }
+        if (whiteboard.getChunkKey() != null) {
+            item.put(CHUNK_KEY, AttributeValue.fromS(whiteboard.getChunkKey()));
+        }
+        if (whiteboard.getChunkCount() != null) {
+            item.put(CHUNK_COUNT, AttributeValue.fromN(whiteboard.getChunkCount().toString()));
+        }
+        return item;
+    }
+
+    private static Whiteboard fromItem(final Map<String, AttributeValue> item) {
+        final Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setIdentifier(item.get(IDENTIFIER).s());
+        whiteboard.setVersion(Long.parseLong(item.get(VERSION).n()));
+        if (item.containsKey(CONTENT)) {
+            whiteboard.setContent(item.get(CONTENT).s());
+        }
+        if (item.containsKey(COMPRESSED_CONTENT)) {
+            whiteboard.setCompressedContent(item.get(COMPRESSED_CONTENT).b().asByteArrayUnsafe());
+        }
+        if (item.containsKey(DELTA)) {
+            whiteboard.setDelta(item.get(DELTA).s());
+        }
+        if (item.containsKey(SNAPSHOT_VERSION)) {
+            whiteboard.setSnapshotVersion(Long.parseLong(item.get(SNAPSHOT_VERSION).n()));
+        }
+        if (item.containsKey(CHUNK_KEY)) {
+            whiteboard.setChunkKey(item.get(CHUNK_KEY).s());
+        }
+        if (item.containsKey(CHUNK_COUNT)) {
+            whiteboard.setChunkCount(Integer.parseInt(item.get(CHUNK_COUNT).n()));
+        }
+        return whiteboard;
+    }
+}
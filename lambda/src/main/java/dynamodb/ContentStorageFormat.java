@@ -0,0 +1,11 @@
+package dynamodb;
+
+/**
+ * Converts whiteboard content between the base64 form clients send and receive, and the binary form stored in
+ * {@link Whiteboard#getCompressedContent()}.
+ */
+public interface ContentStorageFormat {
+    byte[] toStored(String content);
+
+    String fromStored(byte[] stored);
+}
@@ -0,0 +1,53 @@
+package dynamodb;
+
+import metrics.Metric;
+import metrics.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads in flight by key, so that concurrent loads of the same key share one. What a Guava cache's get does for
+ * blocking loaders, for loaders that return futures. The cache never sees these loads, so its stats have no load
+ * times; each load's time, from starting it until it completes, is recorded as a metric instead.
+ */
+class InFlightLoads<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+    private final Metric loadTime;
+
+    InFlightLoads(final Metric loadTime) {
+        this.loadTime = checkNotNull(loadTime);
+    }
+
+    /**
+     * @param loader Starts the load, if there isn't one in flight for the key already. Whatever the load caches should
+     *               be cached by the time its future completes, so that there is no gap between the two.
+     */
+    CompletableFuture<V> load(final K key, final Supplier<CompletableFuture<V>> loader) {
+        final CompletableFuture<V> load = new CompletableFuture<>();
+        final CompletableFuture<V> existingLoad = loads.putIfAbsent(key, load);
+        if (existingLoad != null) {
+            return existingLoad;
+        }
+        final long startNanos = System.nanoTime();
+        try {
+            loader.get().whenComplete((value, e) -> {
+                Metrics.get().recordTime(loadTime, startNanos);
+                loads.remove(key, load);
+                if (e != null) {
+                    load.completeExceptionally(e);
+                } else {
+                    load.complete(value);
+                }
+            });
+        } catch (final RuntimeException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+        return load;
+    }
+}
@@ -0,0 +1,128 @@
+package dynamodb;
+
+import com.google.common.collect.ImmutableList;
+import exception.WhiteboardVersionExistsException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The whiteboard table in memory, for running without AWS, see {@link lambda.LocalServer}. Every read is consistent.
+ * Items are copied in and out, so that nothing outside can change what is stored.
+ */
+public class InMemoryWhiteboardTable implements WhiteboardTable {
+    private final Map<String, NavigableMap<Long, Whiteboard>> versionsByIdentifier = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+        return CompletableFuture.completedFuture(
+                Optional.ofNullable(getVersions(identifier).get(version)).map(InMemoryWhiteboardTable::copy));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier, final boolean consistentRead) {
+        return CompletableFuture.completedFuture(Optional.ofNullable(getVersions(identifier).lastEntry())
+                .map(entry -> copy(entry.getValue())));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                          final boolean consistentRead) {
+        return CompletableFuture.completedFuture(Optional.ofNullable(getVersions(identifier).lastEntry())
+                .map(entry -> {
+                    final Whiteboard keysAndDelta = new Whiteboard();
+                    keysAndDelta.setIdentifier(entry.getValue().getIdentifier());
+                    keysAndDelta.setVersion(entry.getValue().getVersion());
+                    keysAndDelta.setSnapshotVersion(entry.getValue().getSnapshotVersion());
+                    keysAndDelta.setDelta(entry.getValue().getDelta());
+                    return keysAndDelta;
+                }));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                            final long fromVersion,
+                                                            final long toVersion,
+                                                            final boolean consistentRead) {
+        return CompletableFuture.completedFuture(getVersions(identifier)
+                .subMap(fromVersion, true, toVersion, true)
+                .values()
+                .stream()
+                .map(InMemoryWhiteboardTable::copy)
+                .collect(ImmutableList.toImmutableList()));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys, not %s", keys.size());
+        return CompletableFuture.completedFuture(keys.stream()
+                .map(key -> getVersions(key.getIdentifier()).get(key.getVersion()))
+                .filter(Objects::nonNull)
+                .map(InMemoryWhiteboardTable::copy)
+                .collect(ImmutableList.toImmutableList()));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+        final Whiteboard existing = versionsByIdentifier
+                .computeIfAbsent(whiteboard.getIdentifier(), identifier -> new ConcurrentSkipListMap<>())
+                .putIfAbsent(whiteboard.getVersion(), copy(whiteboard));
+        if (existing != null) {
+            return CompletableFuture.failedFuture(new WhiteboardVersionExistsException(String.format(
+                    "identifier %s version %s already exists", whiteboard.getIdentifier(), whiteboard.getVersion()),
+                    null));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+        checkArgument(whiteboards.size() <= 25, "at most 25 items, not %s", whiteboards.size());
+        for (final Whiteboard whiteboard : whiteboards) {
+            versionsByIdentifier
+                    .computeIfAbsent(whiteboard.getIdentifier(), identifier -> new ConcurrentSkipListMap<>())
+                    .put(whiteboard.getVersion(), copy(whiteboard));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys, not %s", keys.size());
+        for (final Whiteboard key : keys) {
+            versionsByIdentifier.computeIfPresent(key.getIdentifier(), (identifier, versions) -> {
+                versions.remove(key.getVersion());
+                return versions.isEmpty() ? null : versions;
+            });
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private NavigableMap<Long, Whiteboard> getVersions(final String identifier) {
+        return versionsByIdentifier.getOrDefault(identifier, Collections.emptyNavigableMap());
+    }
+
+    private static Whiteboard copy(final Whiteboard whiteboard) {
+        final Whiteboard copy = new Whiteboard();
+        copy.setIdentifier(whiteboard.getIdentifier());
+        copy.setVersion(whiteboard.getVersion());
+        copy.setContent(whiteboard.getContent());
+        copy.setCompressedContent(whiteboard.getCompressedContent() == null
+                ? null
+                : whiteboard.getCompressedContent().clone());
+        copy.setDelta(whiteboard.getDelta());
+        copy.setSnapshotVersion(whiteboard.getSnapshotVersion());
+        copy.setChunkKey(whiteboard.getChunkKey());
+        copy.setChunkCount(whiteboard.getChunkCount());
+        return copy;
+    }
+}
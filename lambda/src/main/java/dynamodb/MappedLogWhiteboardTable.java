@@ -0,0 +1,415 @@
+package dynamodb;
+
+import com.google.common.collect.ImmutableList;
+import exception.WhiteboardVersionExistsException;
+import lombok.SneakyThrows;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The whiteboard table as files on local disk, for self-hosting, load tests and integration tests that shouldn't need
+ * DynamoDB, see {@link lambda.LocalServer}. Every read is consistent.
+ *
+ * Each whiteboard is an append-only log of its versions in its own file, memory-mapped, with an index in memory from
+ * version to where the version is in the file. Saving a version appends it, and reading one decodes it straight from
+ * the mapped file, so neither makes a system call. Overwriting a version appends it again, and the index points at the
+ * newest copy. Deleting a version appends a tombstone, a record of just the version, and takes it out of the index, so
+ * the log never shrinks. A whiteboard's file is opened, and its index built by reading it through, the first time it
+ * is used.
+ *
+ * Each record is the length of its payload, a CRC-32 of it, then the payload, and the last record is followed by a zero
+ * length. A record whose checksum doesn't match is taken to have been torn by a crash, and the log ends before it. A
+ * saved version is in the page cache, so it survives the process crashing, but it is only certain to survive the
+ * machine crashing if the table syncs each save to disk, which is much slower.
+ *
+ * A whiteboard's file is at most 2 GiB, the most one mapping can be. A file that outgrows its mapping is mapped again,
+ * twice as big, and only the new mapping is used from then on. Java can't unmap the old one, which is only released
+ * when the garbage collector collects it, so until then the process holds both.
+ */
+public class MappedLogWhiteboardTable implements WhiteboardTable, Closeable {
+    private static final int INITIAL_FILE_BYTES = 1 << 20;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+    /**
+     * A version's payload always has more than its version in it.
+     */
+    private static final int TOMBSTONE_BYTES = Long.BYTES;
+    private static final String FILE_SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean syncWrites;
+    private final Map<String, BoardLog> boardLogs = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory Where the whiteboards' files are, created if it doesn't exist.
+     * @param syncWrites Whether each save is synced to disk before it completes.
+     */
+    @SneakyThrows(IOException.class)
+    public MappedLogWhiteboardTable(final Path directory, final boolean syncWrites) {
+        this.directory = Files.createDirectories(checkNotNull(directory));
+        this.syncWrites = syncWrites;
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+        final BoardLog boardLog = getBoardLog(identifier, false /*create*/);
+        return CompletableFuture.completedFuture(boardLog == null
+                ? Optional.empty()
+                : Optional.ofNullable(boardLog.read(version, true /*withContent*/)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier, final boolean consistentRead) {
+        return CompletableFuture.completedFuture(readNewest(identifier, true /*withContent*/));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                          final boolean consistentRead) {
+        return CompletableFuture.completedFuture(readNewest(identifier, false /*withContent*/));
+    }
+
+    private Optional<Whiteboard> readNewest(final String identifier, final boolean withContent) {
+        final BoardLog boardLog = getBoardLog(identifier, false /*create*/);
+        if (boardLog == null) {
+            return Optional.empty();
+        }
+        final Map.Entry<Long, Integer> newest = boardLog.index.lastEntry();
+        return newest == null
+                ? Optional.empty()
+                : Optional.of(boardLog.decode(newest.getValue(), withContent));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                            final long fromVersion,
+                                                            final long toVersion,
+                                                            final boolean consistentRead) {
+        final BoardLog boardLog = getBoardLog(identifier, false /*create*/);
+        if (boardLog == null) {
+            return CompletableFuture.completedFuture(ImmutableList.of());
+        }
+        final List<Whiteboard> versions = new ArrayList<>();
+        boardLog.index.subMap(fromVersion, true, toVersion, true).values()
+                .forEach(offset -> versions.add(boardLog.decode(offset, true /*withContent*/)));
+        return CompletableFuture.completedFuture(versions);
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys, not %s", keys.size());
+        final List<Whiteboard> whiteboards = new ArrayList<>();
+        for (final Whiteboard key : keys) {
+            final BoardLog boardLog = getBoardLog(key.getIdentifier(), false /*create*/);
+            final Whiteboard whiteboard = boardLog == null
+                    ? null
+                    : boardLog.read(key.getVersion(), true /*withContent*/);
+            if (whiteboard != null) {
+                whiteboards.add(whiteboard);
+            }
+        }
+        return CompletableFuture.completedFuture(whiteboards);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+        try {
+            getBoardLog(whiteboard.getIdentifier(), true /*create*/).append(whiteboard, true /*ifNotExists*/);
+            return CompletableFuture.completedFuture(null);
+        } catch (final RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+        checkArgument(whiteboards.size() <= 25, "at most 25 items, not %s", whiteboards.size());
+        try {
+            for (final Whiteboard whiteboard : whiteboards) {
+                getBoardLog(whiteboard.getIdentifier(), true /*create*/).append(whiteboard, false /*ifNotExists*/);
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (final RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+        checkArgument(keys.size() <= 25, "at most 25 keys, not %s", keys.size());
+        try {
+            for (final Whiteboard key : keys) {
+                final BoardLog boardLog = getBoardLog(key.getIdentifier(), false /*create*/);
+                if (boardLog != null) {
+                    boardLog.delete(key.getVersion());
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (final RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Syncs every open whiteboard's file to disk and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        for (final BoardLog boardLog : boardLogs.values()) {
+            boardLog.close();
+        }
+        boardLogs.clear();
+    }
+
+    /**
+     * @return the whiteboard's log, or null if it has none and create is false.
+     */
+    @Nullable
+    private BoardLog getBoardLog(final String identifier, final boolean create) {
+        final BoardLog boardLog = boardLogs.get(identifier);
+        if (boardLog != null) {
+            return boardLog;
+        }
+        // File names can't hold every identifier as it is.
+        final Path path = directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(identifier.getBytes(StandardCharsets.UTF_8)) + FILE_SUFFIX);
+        if (!create && !Files.exists(path)) {
+            return null;
+        }
+        return boardLogs.computeIfAbsent(identifier, key -> new BoardLog(key, path, syncWrites));
+    }
+
+    /**
+     * One whiteboard's log. Saves are serialised by the log's lock, reads take none: a version is only in the index
+     * once it has been written, and the mapping it was written to is published before the index is.
+     */
+    private static final class BoardLog {
+        private final String identifier;
+        private final FileChannel channel;
+        private final boolean syncWrites;
+        private final NavigableMap<Long, Integer> index = new ConcurrentSkipListMap<>();
+        private volatile MappedByteBuffer mapped;
+        private int end;
+
+        @SneakyThrows(IOException.class)
+        private BoardLog(final String identifier, final Path path, final boolean syncWrites) {
+            this.identifier = identifier;
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.syncWrites = syncWrites;
+            this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(INITIAL_FILE_BYTES, Math.min(channel.size(), Integer.MAX_VALUE)));
+            recover();
+        }
+
+        /**
+         * Builds the index by reading the log through to the zero length after its last record, or to a torn one.
+         */
+        private void recover() {
+            final MappedByteBuffer buffer = mapped;
+            int offset = 0;
+            while (offset + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                final int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.capacity() - offset - RECORD_HEADER_BYTES
+                        || buffer.getInt(offset + Integer.BYTES) != checksum(buffer, offset, length)) {
+                    break;
+                }
+                final long version = buffer.getLong(offset + RECORD_HEADER_BYTES);
+                if (length == TOMBSTONE_BYTES) {
+                    index.remove(version);
+                } else {
+                    index.put(version, offset);
+                }
+                offset += RECORD_HEADER_BYTES + length;
+            }
+            end = offset;
+        }
+
+        @Nullable
+        private Whiteboard read(final long version, final boolean withContent) {
+            final Integer offset = index.get(version);
+            return offset == null ? null : decode(offset, withContent);
+        }
+
+        /**
+         * Fails with {@link WhiteboardVersionExistsException} if ifNotExists and the version is already stored.
+         */
+        private synchronized void append(final Whiteboard whiteboard, final boolean ifNotExists) {
+            if (ifNotExists && index.containsKey(whiteboard.getVersion())) {
+                throw new WhiteboardVersionExistsException(String.format("identifier %s version %s already exists",
+                        whiteboard.getIdentifier(), whiteboard.getVersion()), null);
+            }
+            index.put(whiteboard.getVersion(), appendRecord(encode(whiteboard)));
+        }
+
+        private synchronized void delete(final long version) {
+            if (index.containsKey(version)) {
+                appendRecord(ByteBuffer.allocate(TOMBSTONE_BYTES).putLong(version).array());
+                index.remove(version);
+            }
+        }
+
+        /**
+         * @return where the record starts.
+         */
+        private int appendRecord(final byte[] payload) {
+            final int recordBytes = RECORD_HEADER_BYTES + payload.length;
+            // Room for the zero length that follows the last record.
+            ensureCapacity((long) end + recordBytes + Integer.BYTES);
+            final MappedByteBuffer buffer = mapped;
+            final ByteBuffer record = buffer.duplicate();
+            record.position(end + RECORD_HEADER_BYTES);
+            record.put(payload);
+            buffer.putInt(end + recordBytes, 0);
+            buffer.putInt(end + Integer.BYTES, checksum(buffer, end, payload.length));
+            // The length goes last, so that until it is written the log still ends before this record.
+            buffer.putInt(end, payload.length);
+            if (syncWrites) {
+                buffer.force();
+            }
+            final int offset = end;
+            end += recordBytes;
+            return offset;
+        }
+
+        /**
+         * Doubles the mapping until the bytes fit. A file that has grown to N bytes has then been mapped about
+         * log2(N / {@link #INITIAL_FILE_BYTES}) times, and the mappings waiting for the garbage collector add up to less
+         * than the one in use. They can't be unmapped any sooner: readers take no lock, so one may still be decoding
+         * from an old mapping.
+         */
+        @SneakyThrows(IOException.class)
+        private void ensureCapacity(final long bytes) {
+            final int capacity = mapped.capacity();
+            if (bytes <= capacity) {
+                return;
+            }
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException(String.format("log of identifier %s is full", identifier));
+            }
+            long newCapacity = capacity;
+            while (newCapacity < bytes) {
+                newCapacity *= 2;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, newCapacity));
+        }
+
+        private synchronized void close() throws IOException {
+            mapped.force();
+            channel.close();
+        }
+
+        private static int checksum(final ByteBuffer buffer, final int offset, final int length) {
+            final ByteBuffer payload = buffer.duplicate();
+            payload.position(offset + RECORD_HEADER_BYTES);
+            payload.limit(offset + RECORD_HEADER_BYTES + length);
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue();
+        }
+
+        /**
+         * The keys and delta come before the content, so that a read without the content stops before it.
+         */
+        @SneakyThrows(IOException.class)
+        private static byte[] encode(final Whiteboard whiteboard) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(whiteboard.getVersion());
+            writeNullableLong(out, whiteboard.getSnapshotVersion());
+            writeNullableBytes(out, toBytes(whiteboard.getDelta()));
+            writeNullableBytes(out, toBytes(whiteboard.getChunkKey()));
+            writeNullableLong(out, whiteboard.getChunkCount() == null ? null : (long) whiteboard.getChunkCount());
+            writeNullableBytes(out, toBytes(whiteboard.getContent()));
+            writeNullableBytes(out, whiteboard.getCompressedContent());
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private Whiteboard decode(final int offset, final boolean withContent) {
+            final ByteBuffer in = mapped.duplicate();
+            in.position(offset + RECORD_HEADER_BYTES);
+            final Whiteboard whiteboard = new Whiteboard();
+            whiteboard.setIdentifier(identifier);
+            whiteboard.setVersion(in.getLong());
+            whiteboard.setSnapshotVersion(readNullableLong(in));
+            whiteboard.setDelta(toString(readNullableBytes(in)));
+            if (withContent) {
+                whiteboard.setChunkKey(toString(readNullableBytes(in)));
+                final Long chunkCount = readNullableLong(in);
+                whiteboard.setChunkCount(chunkCount == null ? null : chunkCount.intValue());
+                whiteboard.setContent(toString(readNullableBytes(in)));
+                whiteboard.setCompressedContent(readNullableBytes(in));
+            }
+            return whiteboard;
+        }
+
+        private static void writeNullableLong(final DataOutputStream out, @Nullable final Long value)
+                throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeLong(value);
+            }
+        }
+
+        @Nullable
+        private static Long readNullableLong(final ByteBuffer in) {
+            return in.get() != 0 ? in.getLong() : null;
+        }
+
+        /**
+         * Null is a length of -1.
+         */
+        private static void writeNullableBytes(final DataOutputStream out, @Nullable final byte[] value)
+                throws IOException {
+            out.writeInt(value == null ? -1 : value.length);
+            if (value != null) {
+                out.write(value);
+            }
+        }
+
+        @Nullable
+        private static byte[] readNullableBytes(final ByteBuffer in) {
+            final int length = in.getInt();
+            if (length < 0) {
+                return null;
+            }
+            final byte[] value = new byte[length];
+            in.get(value);
+            return value;
+        }
+
+        @Nullable
+        private static byte[] toBytes(@Nullable final String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Nullable
+        private static String toString(@Nullable final byte[] value) {
+            return value == null ? null : new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package dynamodb;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTableMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import exception.WhiteboardVersionExistsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The whiteboard table through the blocking SDK v1 mapper. Calls run on a thread pool of their own, so they still
+ * overlap, at the cost of a thread each.
+ */
+public class MapperWhiteboardTable implements WhiteboardTable {
+    private static final int THREADS = 8;
+
+    private final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable;
+    private final ExecutorService executor;
+
+    public MapperWhiteboardTable(final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable) {
+        this(dynamoDbTable, Executors.newFixedThreadPool(THREADS, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("whiteboard-table-%d")
+                .build()));
+    }
+
+    public MapperWhiteboardTable(final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable,
+                                 final ExecutorService executor) {
+        this.dynamoDbTable = checkNotNull(dynamoDbTable);
+        this.executor = checkNotNull(executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+        return async(() -> Optional.ofNullable(dynamoDbTable.load(identifier, version)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier, final boolean consistentRead) {
+        return async(() -> queryNewest(newestQuery(identifier, consistentRead)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                          final boolean consistentRead) {
+        return async(() -> queryNewest(newestQuery(identifier, consistentRead)
+                .withProjectionExpression("identifier, #version, snapshotVersion, delta")
+                .withExpressionAttributeNames(ImmutableMap.of("#version", "version"))));
+    }
+
+    private static DynamoDBQueryExpression<Whiteboard> newestQuery(final String identifier,
+                                                                   final boolean consistentRead) {
+        final Whiteboard whiteboardForSearch = new Whiteboard();
+        whiteboardForSearch.setIdentifier(identifier);
+        return new DynamoDBQueryExpression<Whiteboard>()
+                .withHashKeyValues(whiteboardForSearch)
+                .withScanIndexForward(false)
+                .withLimit(1)
+                .withConsistentRead(consistentRead);
+    }
+
+    private Optional<Whiteboard> queryNewest(final DynamoDBQueryExpression<Whiteboard> queryExpression) {
+        final QueryResultPage<Whiteboard> results = dynamoDbTable.queryPage(queryExpression);
+        return results.getCount() == 0 ? Optional.empty() : Optional.of(results.getResults().get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                            final long fromVersion,
+                                                            final long toVersion,
+                                                            final boolean consistentRead) {
+        return async(() -> {
+            final Whiteboard whiteboardForSearch = new Whiteboard();
+            whiteboardForSearch.setIdentifier(identifier);
+            final Condition versionRangeKeyCondition = new Condition()
+                    .withComparisonOperator(ComparisonOperator.BETWEEN)
+                    .withAttributeValueList(
+                            new AttributeValue().withN(Long.toString(fromVersion)),
+                            new AttributeValue().withN(Long.toString(toVersion)));
+            final DynamoDBQueryExpression<Whiteboard> queryExpression = new DynamoDBQueryExpression<Whiteboard>()
+                    .withHashKeyValues(whiteboardForSearch)
+                    .withRangeKeyCondition("version", versionRangeKeyCondition)
+                    .withConsistentRead(consistentRead);
+            // The mapper's list loads pages lazily, copying it loads them all here rather than wherever it is read.
+            return new ArrayList<>(dynamoDbTable.query(queryExpression));
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+        return async(() -> dynamoDbTable.batchLoad(keys));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+        return async(() -> {
+            try {
+                dynamoDbTable.saveIfNotExists(whiteboard);
+            } catch (final ConditionalCheckFailedException e) {
+                throw new WhiteboardVersionExistsException(String.format("identifier %s version %s already exists",
+                        whiteboard.getIdentifier(), whiteboard.getVersion()), e);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+        return async(() -> {
+            final List<DynamoDBMapper.FailedBatch> failedBatches = dynamoDbTable.batchSave(whiteboards);
+            if (!failedBatches.isEmpty()) {
+                throw new IllegalStateException("failed to save batch", failedBatches.get(0).getException());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+        return async(() -> {
+            final List<DynamoDBMapper.FailedBatch> failedBatches = dynamoDbTable.batchDelete(keys);
+            if (!failedBatches.isEmpty()) {
+                throw new IllegalStateException("failed to delete batch", failedBatches.get(0).getException());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The current X-Ray trace is carried over to the executor's thread so the DynamoDB call shows up in it, and is
+     * still set for whatever runs when the future completes.
+     */
+    private <T> CompletableFuture<T> async(final Supplier<T> call) {
+        final Entity traceEntity = AWSXRay.getTraceEntity();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            AWSXRay.setTraceEntity(traceEntity);
+            try {
+                future.complete(call.get());
+            } catch (final RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                AWSXRay.clearTraceEntity();
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,17 @@
+package dynamodb;
+
+/**
+ * How {@link WhiteboardDao} stores new versions. Either way it can read versions stored in both modes.
+ */
+public enum StorageMode {
+    /**
+     * Every version is a full copy of the document.
+     */
+    FULL_COPY,
+
+    /**
+     * Every so often a version is a full snapshot of the document, and the versions in between are only the cell
+     * operations that change the version before them.
+     */
+    SNAPSHOT_AND_DELTA,
+}
@@ -0,0 +1,53 @@
+package dynamodb;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+/**
+ * A WebSocket connection that wants to hear about new versions of a whiteboard.
+ */
+@DynamoDBTable(tableName = "overrideMe")
+public class Subscription {
+    public static final String CONNECTION_ID_INDEX = "connectionId";
+
+    private String identifier;
+    private String connectionId;
+    private Long expiresAt;
+
+    @DynamoDBHashKey
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * Also the hash key of an index, to find every whiteboard a connection subscribed to when it disconnects.
+     */
+    @DynamoDBRangeKey
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = CONNECTION_ID_INDEX)
+    public String getConnectionId() {
+        return connectionId;
+    }
+
+    public void setConnectionId(String connectionId) {
+        this.connectionId = connectionId;
+    }
+
+    /**
+     * Epoch seconds after which the table's TTL deletes the subscription, in case the disconnect was never handled.
+     */
+    @DynamoDBAttribute
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
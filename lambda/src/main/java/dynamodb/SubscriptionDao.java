@@ -0,0 +1,92 @@
+package dynamodb;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTableMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public class SubscriptionDao implements WhiteboardSubscriptions {
+    private static final Logger log = LogManager.getLogger(SubscriptionDao.class);
+
+    /**
+     * API Gateway closes WebSocket connections after two hours, so no subscription outlives that.
+     */
+    private static final Duration SUBSCRIPTION_TTL = Duration.ofHours(2);
+
+    private final DynamoDBTableMapper<Subscription, String, String> dynamoDbTable;
+    private final Clock clock;
+
+    public SubscriptionDao(final DynamoDBTableMapper<Subscription, String, String> dynamoDbTable) {
+        this(dynamoDbTable, Clock.systemUTC());
+    }
+
+    public SubscriptionDao(final DynamoDBTableMapper<Subscription, String, String> dynamoDbTable,
+                           final Clock clock) {
+        this.dynamoDbTable = checkNotNull(dynamoDbTable);
+        this.clock = checkNotNull(clock);
+    }
+
+    @Override
+    public void subscribe(final String identifier, final String connectionId) {
+        log.info("subscribe identifier {} connectionId {}", identifier, connectionId);
+        final Subscription subscription = newSubscription(identifier, connectionId);
+        subscription.setExpiresAt(clock.instant().plus(SUBSCRIPTION_TTL).getEpochSecond());
+        dynamoDbTable.save(subscription);
+    }
+
+    @Override
+    public void unsubscribe(final String identifier, final String connectionId) {
+        log.info("unsubscribe identifier {} connectionId {}", identifier, connectionId);
+        dynamoDbTable.delete(newSubscription(identifier, connectionId));
+    }
+
+    @Override
+    public void unsubscribeAll(final String connectionId) {
+        final Subscription subscriptionForSearch = new Subscription();
+        subscriptionForSearch.setConnectionId(connectionId);
+        final DynamoDBQueryExpression<Subscription> queryExpression = new DynamoDBQueryExpression<Subscription>()
+                .withIndexName(Subscription.CONNECTION_ID_INDEX)
+                .withHashKeyValues(subscriptionForSearch)
+                .withConsistentRead(false);
+        final List<Subscription> subscriptions = dynamoDbTable.query(queryExpression);
+        log.info("unsubscribeAll connectionId {} subscriptions {}", connectionId, subscriptions.size());
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        final List<DynamoDBMapper.FailedBatch> failedBatches = dynamoDbTable.batchDelete(subscriptions);
+        if (!failedBatches.isEmpty()) {
+            // Not worth failing the disconnect for, the TTL will catch them.
+            log.warn("unsubscribeAll connectionId {} failed to delete subscriptions",
+                    connectionId, failedBatches.get(0).getException());
+        }
+    }
+
+    @Override
+    public List<String> getConnectionIds(final String identifier) {
+        final Subscription subscriptionForSearch = new Subscription();
+        subscriptionForSearch.setIdentifier(identifier);
+        final DynamoDBQueryExpression<Subscription> queryExpression = new DynamoDBQueryExpression<Subscription>()
+                .withHashKeyValues(subscriptionForSearch);
+        final long now = clock.instant().getEpochSecond();
+        // The TTL deletes expired items eventually, not straight away.
+        return dynamoDbTable.query(queryExpression).stream()
+                .filter(subscription -> subscription.getExpiresAt() == null || subscription.getExpiresAt() > now)
+                .map(Subscription::getConnectionId)
+                .collect(Collectors.toList());
+    }
+
+    private static Subscription newSubscription(final String identifier, final String connectionId) {
+        final Subscription subscription = new Subscription();
+        subscription.setIdentifier(identifier);
+        subscription.setConnectionId(connectionId);
+        return subscription;
+    }
+}
@@ -0,0 +1,78 @@
+package dynamodb;
+
+import metrics.Metric;
+import metrics.Metrics;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records how long each call to a table takes, from the call until its future completes, successfully or not, as
+ * {@link Metric#TABLE_READ_TIME} or {@link Metric#TABLE_WRITE_TIME}. Reads the cache answers never get here.
+ */
+public class TimedWhiteboardTable implements WhiteboardTable {
+    private final WhiteboardTable table;
+
+    public TimedWhiteboardTable(final WhiteboardTable table) {
+        this.table = checkNotNull(table);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+        return timed(Metric.TABLE_READ_TIME, System.nanoTime(), table.load(identifier, version));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier, final boolean consistentRead) {
+        return timed(Metric.TABLE_READ_TIME, System.nanoTime(), table.loadNewest(identifier, consistentRead));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                          final boolean consistentRead) {
+        return timed(Metric.TABLE_READ_TIME, System.nanoTime(),
+                table.loadNewestKeysAndDelta(identifier, consistentRead));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                            final long fromVersion,
+                                                            final long toVersion,
+                                                            final boolean consistentRead) {
+        return timed(Metric.TABLE_READ_TIME, System.nanoTime(),
+                table.loadVersions(identifier, fromVersion, toVersion, consistentRead));
+    }
+
+    @Override
+    public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+        return timed(Metric.TABLE_READ_TIME, System.nanoTime(), table.batchLoad(keys));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+        return timed(Metric.TABLE_WRITE_TIME, System.nanoTime(), table.saveIfNotExists(whiteboard));
+    }
+
+    @Override
+    public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+        return timed(Metric.TABLE_WRITE_TIME, System.nanoTime(), table.batchSave(whiteboards));
+    }
+
+    @Override
+    public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+        return timed(Metric.TABLE_WRITE_TIME, System.nanoTime(), table.batchDelete(keys));
+    }
+
+    /**
+     * @param startNanos Taken before the call, since a call may do its work before returning.
+     */
+    private static <T> CompletableFuture<T> timed(final Metric metric,
+                                                  final long startNanos,
+                                                  final CompletableFuture<T> future) {
+        future.whenComplete((result, failure) -> Metrics.get().recordTime(metric, startNanos));
+        return future;
+    }
+}
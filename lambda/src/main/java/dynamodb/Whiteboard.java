@@ -11,6 +11,11 @@ public class Whiteboard {
     private String identifier;
     private Long version;
     private String content;
+    private byte[] compressedContent;
+    private String delta;
+    private Long snapshotVersion;
+    private String chunkKey;
+    private Integer chunkCount;
 
     @DynamoDBHashKey
     public String getIdentifier() {
@@ -38,4 +43,65 @@ public class Whiteboard {
     public void setContent(String content) {
         this.content = content;
     }
+
+    /**
+     * The content in binary, starting with a header byte that says how it is compressed. Set instead of the content
+     * when saved, the content is only used for versions saved before this was.
+     */
+    @DynamoDBAttribute
+    public byte[] getCompressedContent() {
+        return compressedContent;
+    }
+
+    public void setCompressedContent(byte[] compressedContent) {
+        this.compressedContent = compressedContent;
+    }
+
+    /**
+     * Cell operations that turn the previous version into this one, set instead of the content when this version is
+     * stored as a delta. See {@link WhiteboardDeltas}.
+     */
+    @DynamoDBAttribute
+    public String getDelta() {
+        return delta;
+    }
+
+    public void setDelta(String delta) {
+        this.delta = delta;
+    }
+
+    /**
+     * The version holding the full snapshot this version is built on, which is this version itself if it is a
+     * snapshot. Not stored for versions saved before deltas were.
+     */
+    @DynamoDBAttribute
+    public Long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(Long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+
+    /**
+     * Set instead of the content when the content is too big for one item. The content is then split across
+     * {@link #getChunkCount()} items, whose identifier is this key and whose versions count up from zero.
+     */
+    @DynamoDBAttribute
+    public String getChunkKey() {
+        return chunkKey;
+    }
+
+    public void setChunkKey(String chunkKey) {
+        this.chunkKey = chunkKey;
+    }
+
+    @DynamoDBAttribute
+    public Integer getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(Integer chunkCount) {
+        this.chunkCount = chunkCount;
+    }
 }
@@ -1,109 +1,650 @@
 package dynamodb;
 
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTableMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
-import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import exception.WhiteboardVersionExistsException;
+import logic.CellOperation;
+import metrics.Metric;
 import lombok.Value;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * Whiteboards returned by this DAO always have their full content, and their snapshot version set, however they were
+ * stored. See {@link StorageMode}.
+ *
+ * Reads are asynchronous underneath, so the reads a whiteboard takes that don't depend on each other, such as its
+ * chunks, are in flight at the same time, and so are reads of different whiteboards started one after the other
+ * through the async methods. Rebuilding content from what was read, decompressing it and replaying deltas, is CPU work
+ * and runs on a decode executor of its own, not on the table's threads, which other reads in flight are waiting on.
+ */
 public class WhiteboardDao {
     private static final Logger log = LogManager.getLogger(WhiteboardDao.class);
 
-    private final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable;
+    /**
+     * In {@link StorageMode#SNAPSHOT_AND_DELTA}, the most deltas we will replay to get a version. The version after
+     * that is saved as a new snapshot, which folds the deltas before it away.
+     */
+    private static final int MAX_DELTAS_PER_SNAPSHOT = 50;
+
+    /**
+     * Stored content longer than this many bytes is split into chunks, well under DynamoDB's 400KB item limit. Deltas
+     * are base64, so for them one character is one byte.
+     */
+    private static final int MAX_CHUNK_LENGTH = 350_000;
+
+    /**
+     * Chunks are read and written in parallel batches of this many. A batch write takes at most 25 items, and 25
+     * chunks are well under the 16MB a batch get returns in one go, so each batch is normally one round trip.
+     */
+    private static final int CHUNKS_PER_BATCH = 25;
+
+    private final WhiteboardTable dynamoDbTable;
+    private final WhiteboardDeltas whiteboardDeltas;
+    private final ContentStorageFormat contentStorageFormat;
+    private final StorageMode storageMode;
+    private final ExecutorService decodeExecutor;
 
     @Value
     private static class WhiteboardCacheKey {
         String identifier;
         Long version;
     }
+
+    /**
+     * Whiteboards by version, weighed by the bytes they take so that a few big ones can't fill the heap. With
+     * compressCachedContent they are kept as their stored bytes instead of as the content String. That is smaller,
+     * three quarters of the size for deflate storage, but costs converting to and from the stored form on every put
+     * and hit.
+     */
     private final Cache<WhiteboardCacheKey, Whiteboard> whiteboardCache;
+    private final InFlightLoads<WhiteboardCacheKey, Whiteboard> whiteboardLoads =
+            new InFlightLoads<>(Metric.WHITEBOARD_LOAD_TIME);
+    private final boolean compressCachedContent;
+
+    /**
+     * Roughly what a cached whiteboard takes on top of its content and delta.
+     */
+    private static final int CACHE_ENTRY_OVERHEAD_BYTES = 256;
+
+    /**
+     * The newest version of each whiteboard, or empty if there is none, as of at most {@link #NEWEST_WHITEBOARD_TTL}
+     * ago. Versions saved through this DAO go straight in. Versions saved by other containers show up once the entry
+     * expires, which is no worse than the eventually consistent reads it saves.
+     */
+    private final Cache<String, Optional<Whiteboard>> newestWhiteboardCache;
+    private final InFlightLoads<String, Whiteboard> newestWhiteboardLoads =
+            new InFlightLoads<>(Metric.NEWEST_WHITEBOARD_LOAD_TIME);
+    private static final Duration NEWEST_WHITEBOARD_TTL = Duration.ofSeconds(1);
 
-    public WhiteboardDao(final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable) {
+    public WhiteboardDao(final WhiteboardTable dynamoDbTable,
+                         final WhiteboardDeltas whiteboardDeltas,
+                         final ContentStorageFormat contentStorageFormat,
+                         final StorageMode storageMode) {
         this(dynamoDbTable,
+                whiteboardDeltas,
+                contentStorageFormat,
+                storageMode,
+                getDefaultCacheBytes(),
+                false /*compressCachedContent*/);
+    }
+
+    /**
+     * @param cacheBytes Roughly the most heap the cached whiteboards take. The newest whiteboard cache gets a quarter
+     *                   of this on top.
+     */
+    public WhiteboardDao(final WhiteboardTable dynamoDbTable,
+                         final WhiteboardDeltas whiteboardDeltas,
+                         final ContentStorageFormat contentStorageFormat,
+                         final StorageMode storageMode,
+                         final long cacheBytes,
+                         final boolean compressCachedContent) {
+        this(dynamoDbTable,
+                whiteboardDeltas,
+                contentStorageFormat,
+                storageMode,
                 CacheBuilder.newBuilder()
-                        .maximumSize(100_000)
+                        .maximumWeight(cacheBytes)
+                        .weigher((final WhiteboardCacheKey key, final Whiteboard whiteboard) -> weigh(whiteboard))
                         .expireAfterAccess(Duration.ofMinutes(1))
-                        .build());
+                        .recordStats()
+                        .build(),
+                CacheBuilder.newBuilder()
+                        .maximumWeight(cacheBytes / 4)
+                        .weigher((final String identifier, final Optional<Whiteboard> whiteboard) ->
+                                whiteboard.map(WhiteboardDao::weigh).orElse(CACHE_ENTRY_OVERHEAD_BYTES))
+                        .expireAfterWrite(NEWEST_WHITEBOARD_TTL)
+                        .recordStats()
+                        .build(),
+                compressCachedContent,
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("whiteboard-decode-%d")
+                        .build()));
+    }
+
+    /**
+     * A quarter of the heap.
+     */
+    public static long getDefaultCacheBytes() {
+        return Runtime.getRuntime().maxMemory() / 4;
     }
 
-    public WhiteboardDao(final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable,
-                         final Cache<WhiteboardCacheKey, Whiteboard> whiteboardCache) {
+    public WhiteboardDao(final WhiteboardTable dynamoDbTable,
+                         final WhiteboardDeltas whiteboardDeltas,
+                         final ContentStorageFormat contentStorageFormat,
+                         final StorageMode storageMode,
+                         final Cache<WhiteboardCacheKey, Whiteboard> whiteboardCache,
+                         final Cache<String, Optional<Whiteboard>> newestWhiteboardCache,
+                         final boolean compressCachedContent,
+                         final ExecutorService decodeExecutor) {
         this.dynamoDbTable = checkNotNull(dynamoDbTable);
+        this.whiteboardDeltas = checkNotNull(whiteboardDeltas);
+        this.contentStorageFormat = checkNotNull(contentStorageFormat);
+        this.storageMode = checkNotNull(storageMode);
         this.whiteboardCache = checkNotNull(whiteboardCache);
+        this.newestWhiteboardCache = checkNotNull(newestWhiteboardCache);
+        this.compressCachedContent = compressCachedContent;
+        this.decodeExecutor = checkNotNull(decodeExecutor);
+    }
+
+    /**
+     * Base64 content and deltas are Latin-1 Strings, so one byte per character.
+     */
+    private static int weigh(final Whiteboard whiteboard) {
+        long bytes = CACHE_ENTRY_OVERHEAD_BYTES;
+        if (whiteboard.getContent() != null) {
+            bytes += whiteboard.getContent().length();
+        }
+        if (whiteboard.getCompressedContent() != null) {
+            bytes += whiteboard.getCompressedContent().length;
+        }
+        if (whiteboard.getDelta() != null) {
+            bytes += whiteboard.getDelta().length();
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Hit rate and evictions of each cache, by name. Loads go around the caches, so their times are metrics instead, see
+     * {@link InFlightLoads}.
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        return ImmutableMap.of(
+                "whiteboard", whiteboardCache.stats(),
+                "newestWhiteboard", newestWhiteboardCache.stats());
+    }
+
+    /**
+     * Wait for a future from this DAO. What failed it is thrown as it is rather than wrapped, so that callers can catch
+     * {@link WhiteboardVersionExistsException}.
+     */
+    public static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
     }
 
     @Nullable
     public Whiteboard getWhiteboardAtVersion(final String identifier, final Long version) {
-        log.info("getWhiteboardAtVersion identifier {} version {}", identifier, version);
+        return join(getWhiteboardAtVersionAsync(identifier, version));
+    }
 
-        final WhiteboardCacheKey whiteboardCacheKey = new WhiteboardCacheKey(identifier, version);
-        final Whiteboard cachedWhiteboard = whiteboardCache.getIfPresent(whiteboardCacheKey);
+    /**
+     * Concurrent reads of a version that isn't cached wait for the same read.
+     *
+     * @return the version, or null if it isn't stored.
+     */
+    public CompletableFuture<Whiteboard> getWhiteboardAtVersionAsync(final String identifier, final Long version) {
+        log.debug("getWhiteboardAtVersion identifier {} version {}", identifier, version);
+        final WhiteboardCacheKey key = new WhiteboardCacheKey(identifier, version);
+        final Whiteboard cachedWhiteboard = whiteboardCache.getIfPresent(key);
         if (cachedWhiteboard != null) {
-            log.info("returning cached whiteboard identifier {} version {}",
-                    cachedWhiteboard.getIdentifier(), cachedWhiteboard.getVersion());
-            return cachedWhiteboard;
-        }
-
-        final Whiteboard whiteboardForSearch = new Whiteboard();
-        whiteboardForSearch.setIdentifier(identifier);
-        final Condition versionRangeKeyCondition = new Condition()
-                        .withComparisonOperator(ComparisonOperator.EQ)
-                        .withAttributeValueList(new AttributeValue().withN(version.toString()));
-
-        final DynamoDBQueryExpression<Whiteboard> queryExpression = new DynamoDBQueryExpression<Whiteboard>()
-                .withHashKeyValues(whiteboardForSearch)
-                .withRangeKeyCondition("version", versionRangeKeyCondition)
-                .withLimit(1);
-        final QueryResultPage<Whiteboard> results = dynamoDbTable.queryPage(queryExpression);
-        if (results.getCount() == 0) {
-            log.info("getWhiteboardAtVersion no whiteboard found for identifier {} version {}",
-                    identifier, version);
-            return null;
+            return CompletableFuture.completedFuture(fromCached(cachedWhiteboard));
         }
-        final Whiteboard result = results.getResults().get(0);
-        log.info("getWhiteboardAtVersion identifier {} found with version {}", identifier, result.getVersion());
-        whiteboardCache.put(new WhiteboardCacheKey(identifier, result.getVersion()), result);
-        return result;
+        return whiteboardLoads.load(key, () -> readWhiteboardAtVersion(identifier, version)
+                .thenApply(whiteboard -> {
+                    if (whiteboard != null) {
+                        whiteboardCache.put(key, toCached(whiteboard));
+                    }
+                    return whiteboard;
+                }));
+    }
+
+    private CompletableFuture<Whiteboard> readWhiteboardAtVersion(final String identifier, final Long version) {
+        return dynamoDbTable.load(identifier, version).thenCompose(stored -> {
+            if (stored.isEmpty()) {
+                log.debug("getWhiteboardAtVersion no whiteboard found for identifier {} version {}",
+                        identifier, version);
+                return CompletableFuture.completedFuture(null);
+            }
+            return withContent(stored.get(), false /*consistentRead*/).thenApply(result -> {
+                log.debug("getWhiteboardAtVersion identifier {} found with version {}",
+                        identifier, result.getVersion());
+                return result;
+            });
+        });
     }
 
     @Nullable
     public Whiteboard getNewestWhiteboard(final String identifier, final boolean consistentRead) {
-        log.info("getNewestWhiteboard identifier {}, consistentRead {}", identifier, consistentRead);
-        final Whiteboard whiteboardForSearch = new Whiteboard();
-        whiteboardForSearch.setIdentifier(identifier);
-        final DynamoDBQueryExpression<Whiteboard> queryExpression = new DynamoDBQueryExpression<Whiteboard>()
-                .withHashKeyValues(whiteboardForSearch)
-                .withScanIndexForward(false)
-                .withLimit(1)
-                .withConsistentRead(consistentRead);
-        final QueryResultPage<Whiteboard> results = dynamoDbTable.queryPage(queryExpression);
-        if (results.getCount() == 0) {
-            log.info("getNewestWhiteboard no whiteboard found for identifier {}", identifier);
+        return join(getNewestWhiteboardAsync(identifier, consistentRead));
+    }
+
+    /**
+     * Eventually consistent reads come from the newest whiteboard cache. Concurrent reads of a whiteboard that isn't
+     * in it wait for the same read, so a hot whiteboard costs one read per {@link #NEWEST_WHITEBOARD_TTL} however
+     * many reads there are. Consistent reads always read the table, and update the cache.
+     *
+     * @return the newest version, or null if there is none.
+     */
+    public CompletableFuture<Whiteboard> getNewestWhiteboardAsync(final String identifier,
+                                                                  final boolean consistentRead) {
+        log.debug("getNewestWhiteboard identifier {}, consistentRead {}", identifier, consistentRead);
+        if (!consistentRead) {
+            final Optional<Whiteboard> cachedWhiteboard = newestWhiteboardCache.getIfPresent(identifier);
+            if (cachedWhiteboard != null) {
+                return CompletableFuture.completedFuture(cachedWhiteboard.orElse(null));
+            }
+        }
+        final Supplier<CompletableFuture<Whiteboard>> read = () -> readNewestWhiteboard(identifier, consistentRead);
+        return consistentRead ? read.get() : newestWhiteboardLoads.load(identifier, read);
+    }
+
+    private CompletableFuture<Whiteboard> readNewestWhiteboard(final String identifier, final boolean consistentRead) {
+        return dynamoDbTable.loadNewest(identifier, consistentRead).thenCompose(stored -> {
+            if (stored.isEmpty()) {
+                log.debug("getNewestWhiteboard no whiteboard found for identifier {}", identifier);
+                newestWhiteboardCache.asMap().putIfAbsent(identifier, Optional.empty());
+                return CompletableFuture.completedFuture(null);
+            }
+            return withContent(stored.get(), consistentRead).thenApply(result -> {
+                log.debug("getNewestWhiteboard identifier {} found with version {}", identifier, result.getVersion());
+                whiteboardCache.put(new WhiteboardCacheKey(identifier, result.getVersion()), toCached(result));
+                cacheNewestWhiteboard(result);
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Only the newest version's version, snapshot version and delta are set, and its content is only loaded if it is
+     * cached anyway. For when only its version matters.
+     */
+    @Nullable
+    public Whiteboard getNewestStoredWhiteboard(final String identifier, final boolean consistentRead) {
+        if (!consistentRead) {
+            final Optional<Whiteboard> cachedWhiteboard = newestWhiteboardCache.getIfPresent(identifier);
+            if (cachedWhiteboard != null) {
+                return cachedWhiteboard.orElse(null);
+            }
+        }
+        final Optional<Whiteboard> result = join(dynamoDbTable.loadNewestKeysAndDelta(identifier, consistentRead));
+        if (result.isEmpty()) {
+            log.debug("getNewestStoredWhiteboard no whiteboard found for identifier {}", identifier);
+        }
+        return result.orElse(null);
+    }
+
+    /**
+     * The operations since a version, from the deltas of every version after it. That works for versions since the
+     * snapshot the newest version is built on, which are all stored as deltas, as long as the versions are stored in
+     * {@link StorageMode#SNAPSHOT_AND_DELTA}.
+     *
+     * @param newestWhiteboard The newest version, as returned by this DAO.
+     * @return the operations that turn {@code fromVersion} into {@code newestWhiteboard}, or null if they aren't all
+     * stored.
+     */
+    @Nullable
+    public List<CellOperation> getOperationsSince(final Whiteboard newestWhiteboard, final long fromVersion) {
+        final Long snapshotVersion = newestWhiteboard.getSnapshotVersion();
+        if (newestWhiteboard.getDelta() == null
+                || snapshotVersion == null
+                || fromVersion < snapshotVersion
+                || fromVersion >= newestWhiteboard.getVersion()) {
             return null;
         }
-        final Whiteboard result = results.getResults().get(0);
-        log.info("getNewestWhiteboard identifier {} found with version {}", identifier, result.getVersion());
-        whiteboardCache.put(new WhiteboardCacheKey(identifier, result.getVersion()), result);
-        return result;
+        final List<String> deltas = new ArrayList<>();
+        if (fromVersion + 1 < newestWhiteboard.getVersion()) {
+            for (final Whiteboard version : join(dynamoDbTable.loadVersions(newestWhiteboard.getIdentifier(),
+                    fromVersion + 1, newestWhiteboard.getVersion() - 1, false /*consistentRead*/))) {
+                if (version.getDelta() == null) {
+                    return null;
+                }
+                deltas.add(version.getDelta());
+            }
+        }
+        deltas.add(newestWhiteboard.getDelta());
+        if (deltas.size() != newestWhiteboard.getVersion() - fromVersion) {
+            return null;
+        }
+        log.debug("getOperationsSince identifier {} from version {} to version {}",
+                newestWhiteboard.getIdentifier(), fromVersion, newestWhiteboard.getVersion());
+        final List<CellOperation> operations = new ArrayList<>();
+        for (final String delta : deltas) {
+            operations.addAll(whiteboardDeltas.decode(delta));
+        }
+        return operations;
+    }
+
+    /**
+     * If the whiteboard was stored as a delta, rebuild its content from the snapshot it is built on and every delta
+     * since. All of those are read with one query.
+     */
+    private CompletableFuture<Whiteboard> withContent(final Whiteboard whiteboard, final boolean consistentRead) {
+        if (whiteboard.getDelta() == null) {
+            return loadContent(whiteboard, ImmutableList.of()).thenApply(content -> {
+                whiteboard.setSnapshotVersion(whiteboard.getVersion());
+                return whiteboard;
+            });
+        }
+        log.debug("withContent identifier {} version {} replaying deltas since snapshot version {}",
+                whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getSnapshotVersion());
+
+        return dynamoDbTable.loadVersions(whiteboard.getIdentifier(),
+                whiteboard.getSnapshotVersion(),
+                whiteboard.getVersion() - 1,
+                consistentRead).thenCompose(previousVersions -> {
+                    checkState(!previousVersions.isEmpty()
+                                    && previousVersions.get(0).getVersion().equals(whiteboard.getSnapshotVersion())
+                                    && previousVersions.get(0).getDelta() == null,
+                            "identifier %s version %s has no snapshot at version %s",
+                            whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getSnapshotVersion());
+                    final List<String> deltas = new ArrayList<>();
+                    for (final Whiteboard previousVersion : previousVersions.subList(1, previousVersions.size())) {
+                        deltas.add(previousVersion.getDelta());
+                    }
+                    deltas.add(whiteboard.getDelta());
+                    checkState(deltas.size() == whiteboard.getVersion() - whiteboard.getSnapshotVersion(),
+                            "identifier %s version %s is missing deltas since snapshot version %s",
+                            whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getSnapshotVersion());
+                    return loadContent(previousVersions.get(0), deltas).thenApply(content -> {
+                        whiteboard.setContent(content);
+                        return whiteboard;
+                    });
+                });
+    }
+
+    /**
+     * Content is either in the item, in the legacy base64 String attribute or the binary one, or in chunks. Once it is
+     * all read, it is decompressed and the deltas applied to it on the decode executor.
+     *
+     * @param snapshot A whiteboard stored with its content.
+     * @param deltas The deltas to apply to the snapshot's content, if any.
+     */
+    private CompletableFuture<String> loadContent(final Whiteboard snapshot, final List<String> deltas) {
+        final CompletableFuture<Void> chunks = snapshot.getChunkKey() != null
+                ? loadChunks(snapshot)
+                : CompletableFuture.completedFuture(null);
+        return chunks.thenApplyAsync(ignored -> {
+            if (snapshot.getCompressedContent() != null) {
+                snapshot.setContent(contentStorageFormat.fromStored(snapshot.getCompressedContent()));
+                snapshot.setCompressedContent(null);
+            }
+            return deltas.isEmpty() ? snapshot.getContent() : whiteboardDeltas.apply(snapshot.getContent(), deltas);
+        }, decodeExecutor);
     }
 
     public void saveCompletelyNewWhiteboard(final Whiteboard whiteboard) {
-        dynamoDbTable.saveIfNotExists(whiteboard);
+        whiteboard.setSnapshotVersion(whiteboard.getVersion());
+        saveIfNotExists(toSnapshot(whiteboard));
+        cacheNewestWhiteboard(whiteboard);
+    }
+
+    /**
+     * Make the whiteboard the cached newest version, unless a newer one already is.
+     */
+    private void cacheNewestWhiteboard(final Whiteboard whiteboard) {
+        final Optional<Whiteboard> newest = Optional.of(whiteboard);
+        newestWhiteboardCache.asMap().merge(whiteboard.getIdentifier(), newest,
+                (cached, saved) -> cached.isPresent() && cached.get().getVersion() > whiteboard.getVersion()
+                        ? cached
+                        : saved);
+    }
+
+    /**
+     * Save the version after {@code previousWhiteboard}. In {@link StorageMode#SNAPSHOT_AND_DELTA} this stores only the
+     * cell operations between the two, unless it's time for a new snapshot or the delta isn't much smaller than the
+     * document.
+     *
+     * @param previousWhiteboard The version this one replaces, as returned by this DAO.
+     * @param whiteboard The new version, with its full content.
+     * @param operations The cell operations between the two versions if known, otherwise they are worked out from the
+     *                   content when needed.
+     */
+    public void saveNewWhiteboardVersion(final Whiteboard previousWhiteboard,
+                                         final Whiteboard whiteboard,
+                                         @Nullable final List<CellOperation> operations) {
+        checkArgument(whiteboard.getVersion() == previousWhiteboard.getVersion() + 1,
+                "version %s does not follow version %s", whiteboard.getVersion(), previousWhiteboard.getVersion());
+        final Whiteboard storedWhiteboard = toStoredWhiteboard(previousWhiteboard, whiteboard, operations);
+        saveIfNotExists(storedWhiteboard);
+        log.debug("saveNewWhiteboardVersion identifier {} version {} snapshot version {}",
+                whiteboard.getIdentifier(), whiteboard.getVersion(), storedWhiteboard.getSnapshotVersion());
+
+        whiteboard.setSnapshotVersion(storedWhiteboard.getSnapshotVersion());
+        whiteboard.setDelta(storedWhiteboard.getDelta());
+        whiteboardCache.put(new WhiteboardCacheKey(whiteboard.getIdentifier(), whiteboard.getVersion()),
+                toCached(whiteboard));
+        cacheNewestWhiteboard(whiteboard);
     }
 
-    public void saveNewWhiteboardVersion(final Whiteboard whiteboard) {
-        dynamoDbTable.saveIfNotExists(whiteboard);
+    private Whiteboard toCached(final Whiteboard whiteboard) {
+        if (!compressCachedContent || whiteboard.getContent() == null) {
+            return whiteboard;
+        }
+        final Whiteboard cached = copyWithoutContent(whiteboard);
+        cached.setCompressedContent(contentStorageFormat.toStored(whiteboard.getContent()));
+        return cached;
+    }
+
+    /**
+     * Cached whiteboards are shared, so one with compressed content is copied rather than decompressed in place.
+     */
+    private Whiteboard fromCached(final Whiteboard cached) {
+        if (cached.getContent() != null || cached.getCompressedContent() == null) {
+            return cached;
+        }
+        final Whiteboard whiteboard = copyWithoutContent(cached);
+        whiteboard.setContent(contentStorageFormat.fromStored(cached.getCompressedContent()));
+        return whiteboard;
+    }
+
+    private static Whiteboard copyWithoutContent(final Whiteboard whiteboard) {
+        final Whiteboard copy = new Whiteboard();
+        copy.setIdentifier(whiteboard.getIdentifier());
+        copy.setVersion(whiteboard.getVersion());
+        copy.setSnapshotVersion(whiteboard.getSnapshotVersion());
+        copy.setDelta(whiteboard.getDelta());
+        return copy;
+    }
+
+    private Whiteboard toStoredWhiteboard(final Whiteboard previousWhiteboard,
+                                         final Whiteboard whiteboard,
+                                         @Nullable final List<CellOperation> operations) {
+        final Whiteboard snapshot = toSnapshot(whiteboard);
+        if (storageMode == StorageMode.FULL_COPY
+                || whiteboard.getVersion() - previousWhiteboard.getSnapshotVersion() > MAX_DELTAS_PER_SNAPSHOT) {
+            return snapshot;
+        }
+
+        final String delta = operations != null
+                ? whiteboardDeltas.encode(operations)
+                : whiteboardDeltas.diff(previousWhiteboard.getContent(), whiteboard.getContent());
+        if (delta == null
+                || delta.length() * 2 > whiteboard.getContent().length()
+                || delta.length() > MAX_CHUNK_LENGTH) {
+            return snapshot;
+        }
+        final Whiteboard deltaWhiteboard = new Whiteboard();
+        deltaWhiteboard.setIdentifier(whiteboard.getIdentifier());
+        deltaWhiteboard.setVersion(whiteboard.getVersion());
+        deltaWhiteboard.setDelta(delta);
+        deltaWhiteboard.setSnapshotVersion(previousWhiteboard.getSnapshotVersion());
+        return deltaWhiteboard;
     }
 
+    private Whiteboard toSnapshot(final Whiteboard whiteboard) {
+        final Whiteboard snapshot = new Whiteboard();
+        snapshot.setIdentifier(whiteboard.getIdentifier());
+        snapshot.setVersion(whiteboard.getVersion());
+        snapshot.setCompressedContent(contentStorageFormat.toStored(whiteboard.getContent()));
+        snapshot.setSnapshotVersion(whiteboard.getVersion());
+        return snapshot;
+    }
+
+    /**
+     * Save the whiteboard, in chunks if it is too big for one item. If another writer saved the version first, the
+     * chunks saved for this one are deleted again, so that a board whose saves are contended doesn't leave a copy of
+     * its content behind for every lost attempt. A save that fails any other way may still have been stored, so its
+     * chunks are kept.
+     */
+    private void saveIfNotExists(final Whiteboard whiteboard) {
+        final Whiteboard storedWhiteboard = withChunks(whiteboard);
+        try {
+            join(dynamoDbTable.saveIfNotExists(storedWhiteboard));
+        } catch (final WhiteboardVersionExistsException e) {
+            if (storedWhiteboard.getChunkKey() != null) {
+                deleteChunks(storedWhiteboard);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * If the content is too big for one item, save it in chunks and return a copy of the whiteboard that refers to them
+     * instead. The chunks are saved under a new random key before the whiteboard itself, so that a writer who loses the
+     * race to save a version can't overwrite the winner's chunks.
+     */
+    private Whiteboard withChunks(final Whiteboard whiteboard) {
+        final byte[] content = whiteboard.getCompressedContent();
+        if (content == null || content.length <= MAX_CHUNK_LENGTH) {
+            return whiteboard;
+        }
+        final String chunkKey = String.format("%s#chunks#%s", whiteboard.getIdentifier(), UUID.randomUUID());
+        final List<Whiteboard> chunks = new ArrayList<>();
+        for (int start = 0; start < content.length; start += MAX_CHUNK_LENGTH) {
+            final Whiteboard chunk = new Whiteboard();
+            chunk.setIdentifier(chunkKey);
+            chunk.setVersion((long) chunks.size());
+            chunk.setCompressedContent(
+                    Arrays.copyOfRange(content, start, Math.min(start + MAX_CHUNK_LENGTH, content.length)));
+            chunks.add(chunk);
+        }
+        log.debug("withChunks identifier {} version {} saving {} chunks",
+                whiteboard.getIdentifier(), whiteboard.getVersion(), chunks.size());
+        join(inParallelBatches(chunks,
+                batch -> dynamoDbTable.batchSave(batch).thenApply(ignored -> ImmutableList.of())));
+
+        final Whiteboard chunkedWhiteboard = new Whiteboard();
+        chunkedWhiteboard.setIdentifier(whiteboard.getIdentifier());
+        chunkedWhiteboard.setVersion(whiteboard.getVersion());
+        chunkedWhiteboard.setSnapshotVersion(whiteboard.getSnapshotVersion());
+        chunkedWhiteboard.setChunkKey(chunkKey);
+        chunkedWhiteboard.setChunkCount(chunks.size());
+        return chunkedWhiteboard;
+    }
+
+    /**
+     * Put the chunks back together into the whiteboard's content. Chunks are binary, apart from those saved before
+     * content was stored in binary.
+     */
+    private CompletableFuture<Void> loadChunks(final Whiteboard whiteboard) {
+        log.debug("loadChunks identifier {} version {} loading {} chunks",
+                whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getChunkCount());
+        return inParallelBatches(chunkKeys(whiteboard), dynamoDbTable::batchLoad).thenAccept(chunks -> {
+            checkState(chunks.size() == whiteboard.getChunkCount(),
+                    "identifier %s version %s has %s of %s chunks",
+                    whiteboard.getIdentifier(), whiteboard.getVersion(), chunks.size(), whiteboard.getChunkCount());
+
+            // A batch get returns items in no particular order.
+            chunks.sort(Comparator.comparing(Whiteboard::getVersion));
+            if (chunks.get(0).getCompressedContent() == null) {
+                whiteboard.setContent(chunks.stream().map(Whiteboard::getContent).collect(Collectors.joining()));
+                return;
+            }
+            final ByteArrayOutputStream content =
+                    new ByteArrayOutputStream(whiteboard.getChunkCount() * MAX_CHUNK_LENGTH);
+            for (final Whiteboard chunk : chunks) {
+                content.writeBytes(chunk.getCompressedContent());
+            }
+            whiteboard.setCompressedContent(content.toByteArray());
+        });
+    }
+
+    /**
+     * Best effort, since the chunks are only wasted space. Failing to delete them doesn't fail the save.
+     */
+    private void deleteChunks(final Whiteboard whiteboard) {
+        log.debug("deleteChunks identifier {} version {} deleting {} chunks",
+                whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getChunkCount());
+        try {
+            join(inParallelBatches(chunkKeys(whiteboard),
+                    batch -> dynamoDbTable.batchDelete(batch).thenApply(ignored -> ImmutableList.of())));
+        } catch (final RuntimeException e) {
+            log.warn("deleteChunks identifier {} version {} failed to delete chunks {}",
+                    whiteboard.getIdentifier(), whiteboard.getVersion(), whiteboard.getChunkKey(), e);
+        }
+    }
+
+    private static List<Whiteboard> chunkKeys(final Whiteboard whiteboard) {
+        final List<Whiteboard> keys = new ArrayList<>(whiteboard.getChunkCount());
+        for (int i = 0; i < whiteboard.getChunkCount(); i++) {
+            final Whiteboard key = new Whiteboard();
+            key.setIdentifier(whiteboard.getChunkKey());
+            key.setVersion((long) i);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Start the function on batches of the items all at once, and collect the results.
+     */
+    private static CompletableFuture<List<Whiteboard>> inParallelBatches(
+            final List<Whiteboard> items,
+            final Function<List<Whiteboard>, CompletableFuture<List<Whiteboard>>> function) {
+        final List<CompletableFuture<List<Whiteboard>>> futures = new ArrayList<>();
+        for (final List<Whiteboard> batch : Lists.partition(items, CHUNKS_PER_BATCH)) {
+            futures.add(function.apply(batch));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            final List<Whiteboard> results = new ArrayList<>(items.size());
+            for (final CompletableFuture<List<Whiteboard>> future : futures) {
+                results.addAll(future.join());
+            }
+            return results;
+        });
+    }
 }
@@ -0,0 +1,34 @@
+package dynamodb;
+
+import logic.CellOperation;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Turns cell operations into the delta attribute of a {@link Whiteboard} and back. Content and deltas are both in
+ * their encoded form, as stored.
+ */
+public interface WhiteboardDeltas {
+    /**
+     * @return the delta for operations a client sent.
+     */
+    String encode(List<CellOperation> operations);
+
+    /**
+     * @return the operations in a delta.
+     */
+    List<CellOperation> decode(String delta);
+
+    /**
+     * @return a delta that turns {@code fromContent} into {@code toContent}, or null if the change can't be expressed
+     * as one.
+     */
+    @Nullable
+    String diff(String fromContent, String toContent);
+
+    /**
+     * @return {@code content} with each of the deltas applied to it in turn.
+     */
+    String apply(String content, List<String> deltas);
+}
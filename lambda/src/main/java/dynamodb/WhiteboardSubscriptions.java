@@ -0,0 +1,19 @@
+package dynamodb;
+
+import java.util.List;
+
+/**
+ * Which realtime connections are subscribed to which whiteboards.
+ */
+public interface WhiteboardSubscriptions {
+    void subscribe(String identifier, String connectionId);
+
+    void unsubscribe(String identifier, String connectionId);
+
+    /**
+     * Remove every subscription of a connection, when it has gone.
+     */
+    void unsubscribeAll(String connectionId);
+
+    List<String> getConnectionIds(String identifier);
+}
@@ -0,0 +1,56 @@
+package dynamodb;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The whiteboard table, as {@link WhiteboardDao} uses it. Every call returns straight away, so that reads that don't
+ * depend on each other are in flight at the same time. Futures may complete on a client's own threads, so whatever is
+ * chained onto them shouldn't block.
+ */
+public interface WhiteboardTable {
+    /**
+     * @return the version, read eventually consistently, or empty if it isn't stored.
+     */
+    CompletableFuture<Optional<Whiteboard>> load(String identifier, long version);
+
+    /**
+     * @return the newest version, or empty if there is none.
+     */
+    CompletableFuture<Optional<Whiteboard>> loadNewest(String identifier, boolean consistentRead);
+
+    /**
+     * @return the newest version with only its identifier, version, snapshot version and delta, or empty if there is
+     * none.
+     */
+    CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(String identifier, boolean consistentRead);
+
+    /**
+     * @return the versions from {@code fromVersion} to {@code toVersion} inclusive that are stored, in order.
+     */
+    CompletableFuture<List<Whiteboard>> loadVersions(String identifier,
+                                                     long fromVersion,
+                                                     long toVersion,
+                                                     boolean consistentRead);
+
+    /**
+     * @return the items with the keys, in no particular order. At most 25 keys.
+     */
+    CompletableFuture<List<Whiteboard>> batchLoad(List<Whiteboard> keys);
+
+    /**
+     * Fails with {@link exception.WhiteboardVersionExistsException} if the version is already stored.
+     */
+    CompletableFuture<Void> saveIfNotExists(Whiteboard whiteboard);
+
+    /**
+     * Saves, or overwrites, at most 25 items.
+     */
+    CompletableFuture<Void> batchSave(List<Whiteboard> whiteboards);
+
+    /**
+     * Deletes the items with the keys, if they are stored. At most 25 keys.
+     */
+    CompletableFuture<Void> batchDelete(List<Whiteboard> keys);
+}
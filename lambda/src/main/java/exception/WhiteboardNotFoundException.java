@@ -0,0 +1,10 @@
+package exception;
+
+/**
+ * The whiteboard, or the version of it, isn't stored, or an eventually consistent read didn't see it yet.
+ */
+public class WhiteboardNotFoundException extends RuntimeException {
+    public WhiteboardNotFoundException(final String message) {
+        super(message);
+    }
+}
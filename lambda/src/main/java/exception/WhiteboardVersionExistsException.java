@@ -0,0 +1,10 @@
+package exception;
+
+/**
+ * Someone else saved the version first. Thrown whichever DynamoDB client reported the conditional check failure.
+ */
+public class WhiteboardVersionExistsException extends RuntimeException {
+    public WhiteboardVersionExistsException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,33 @@
+package lambda;
+
+import com.amazonaws.services.apigatewaymanagementapi.AmazonApiGatewayManagementApi;
+import com.amazonaws.services.apigatewaymanagementapi.model.GoneException;
+import com.amazonaws.services.apigatewaymanagementapi.model.PostToConnectionRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Posts to connections of the API Gateway WebSocket API, through its management API.
+ */
+public class ApiGatewayConnectionGateway implements ConnectionGateway {
+    private final AmazonApiGatewayManagementApi managementApi;
+
+    public ApiGatewayConnectionGateway(final AmazonApiGatewayManagementApi managementApi) {
+        this.managementApi = checkNotNull(managementApi);
+    }
+
+    @Override
+    public boolean postToConnection(final String connectionId, final String message) {
+        try {
+            managementApi.postToConnection(new PostToConnectionRequest()
+                    .withConnectionId(connectionId)
+                    .withData(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8))));
+            return true;
+        } catch (final GoneException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package lambda;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads API Gateway proxy events and writes proxy responses a token at a time, so that neither the event nor the
+ * response is ever held as a map, and the body, which is JSON inside a JSON string, is never a string of its own.
+ *
+ * The request is bound from the event's body as the body is parsed, straight from the parser's buffer, if the resource
+ * came before it, as it does in the events API Gateway sends. The response is serialised once, to UTF-8, and escaped
+ * from there straight into the output as the response's body.
+ */
+final class ApiGatewayEventCodec {
+    private static final String RESOURCE = "resource";
+    private static final String HEADERS = "headers";
+    private static final String PATH_PARAMETERS = "pathParameters";
+    private static final String BODY = "body";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * The parts of an event the handler uses.
+     */
+    static final class Request {
+        private final String resource;
+        @Nullable
+        private final Map<String, String> headers;
+        @Nullable
+        private final Map<String, String> pathParameters;
+        @Nullable
+        private final Object body;
+        @Nullable
+        private final Exception bodyFailure;
+
+        private Request(final String resource,
+                        @Nullable final Map<String, String> headers,
+                        @Nullable final Map<String, String> pathParameters,
+                        @Nullable final Object body,
+                        @Nullable final Exception bodyFailure) {
+            this.resource = resource;
+            this.headers = headers;
+            this.pathParameters = pathParameters;
+            this.body = body;
+            this.bodyFailure = bodyFailure;
+        }
+
+        String getResource() {
+            return resource;
+        }
+
+        @Nullable
+        Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * The values of the resource's path parameters, such as {@code {identifier}}, for a GET, which has no body.
+         */
+        @Nullable
+        Map<String, String> getPathParameters() {
+            return pathParameters;
+        }
+
+        /**
+         * @throws IOException or a runtime exception if the body couldn't be bound, which is left until now so that
+         *                     the handler can answer with an error response rather than failing the invocation.
+         */
+        Object getBody() throws IOException {
+            if (bodyFailure != null) {
+                Throwables.throwIfInstanceOf(bodyFailure, IOException.class);
+                Throwables.throwIfUnchecked(bodyFailure);
+                throw new IllegalStateException(bodyFailure);
+            }
+            if (body == null) {
+                throw new IllegalArgumentException("request has no body");
+            }
+            return body;
+        }
+    }
+
+    /**
+     * @param bodyReaders The reader for the body of a request to the resource, or null if the resource is unknown, in
+     *                    which case the body is skipped.
+     */
+    Request readRequest(final InputStream input, final Function<String, ObjectReader> bodyReaders)
+            throws IOException {
+        try (final JsonParser parser = jsonFactory.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("event is not an object", parser.getCurrentLocation());
+            }
+            String resource = null;
+            Map<String, String> headers = null;
+            Map<String, String> pathParameters = null;
+            Object body = null;
+            String unboundBody = null;
+            Exception bodyFailure = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (RESOURCE.equals(name)) {
+                    resource = parser.getValueAsString();
+                } else if (HEADERS.equals(name) && value == JsonToken.START_OBJECT) {
+                    headers = readStringMap(parser);
+                } else if (PATH_PARAMETERS.equals(name) && value == JsonToken.START_OBJECT) {
+                    pathParameters = readStringMap(parser);
+                } else if (BODY.equals(name) && value == JsonToken.VALUE_STRING) {
+                    if (resource == null) {
+                        unboundBody = parser.getText();
+                    } else {
+                        final ObjectReader bodyReader = bodyReaders.apply(resource);
+                        if (bodyReader != null) {
+                            try {
+                                body = bind(bodyReader, jsonFactory.createParser(
+                                        parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                            } catch (final IOException | RuntimeException e) {
+                                bodyFailure = e;
+                            }
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (resource == null) {
+                throw new JsonParseException("event has no resource", parser.getCurrentLocation());
+            }
+            final ObjectReader bodyReader = unboundBody == null ? null : bodyReaders.apply(resource);
+            if (bodyReader != null) {
+                try {
+                    body = bind(bodyReader, jsonFactory.createParser(unboundBody));
+                } catch (final IOException | RuntimeException e) {
+                    bodyFailure = e;
+                }
+            }
+            return new Request(resource, headers, pathParameters, body, bodyFailure);
+        }
+    }
+
+    private static Object bind(final ObjectReader reader, final JsonParser bodyParser) throws IOException {
+        try (final JsonParser parser = bodyParser) {
+            return reader.readValue(parser);
+        }
+    }
+
+    private static Map<String, String> readStringMap(final JsonParser parser) throws IOException {
+        final Map<String, String> values = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            values.put(name, parser.getValueAsString());
+            parser.skipChildren();
+        }
+        return values;
+    }
+
+    /**
+     * Closes the output.
+     *
+     * @param body Null for an empty body.
+     * @param bodyWriter Null if the body is.
+     */
+    void writeResponse(final OutputStream output,
+                       final int statusCode,
+                       final Map<String, String> headers,
+                       @Nullable final Object body,
+                       @Nullable final ObjectWriter bodyWriter) throws IOException {
+        try (final JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("isBase64Encoded", false);
+            generator.writeNumberField("statusCode", statusCode);
+            generator.writeObjectFieldStart(HEADERS);
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                generator.writeStringField(header.getKey(), header.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeFieldName(BODY);
+            if (body == null) {
+                generator.writeString("");
+            } else {
+                final byte[] bodyBytes = bodyWriter.writeValueAsBytes(body);
+                generator.writeUTF8String(bodyBytes, 0, bodyBytes.length);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -3,4 +3,13 @@ package lambda;
 public enum ApiType {
     GetWhiteboard,
     SetWhiteboard,
+    PatchWhiteboard,
+    /**
+     * GET of one version's content. A version never changes, so the response can be cached for good.
+     */
+    GetWhiteboardVersion,
+    /**
+     * GET of the newest version's number, cached for a second.
+     */
+    GetWhiteboardHead,
 }
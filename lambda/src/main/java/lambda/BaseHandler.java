@@ -2,125 +2,210 @@ package lambda;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.google.common.collect.ImmutableMap;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import exception.UnrecognizedApiResourceException;
+import exception.WhiteboardNotFoundException;
 import lombok.SneakyThrows;
+import metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import tracing.Tracing;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 
 public abstract class BaseHandler implements RequestStreamHandler {
     private static final Logger log = LogManager.getLogger(BaseHandler.class);
 
     private static final int OK_STATUS_CODE = 200;
+    private static final int NOT_MODIFIED_STATUS_CODE = 304;
+    private static final int NOT_FOUND_STATUS_CODE = 404;
     private static final int SERVER_ERROR_STATUS_CODE = 500;
-    private static final String STATUS_CODE = "statusCode";
-    private static final String BODY = "body";
-    private static final String HEADERS = "headers";
 
-    private final ObjectReader stringObjectMapObjectReader;
-    private final ObjectWriter stringObjectMapObjectWriter;
+    /**
+     * The GET resources, as API Gateway names them in the event, with the path parameters it passes on in braces.
+     */
+    static final String WHITEBOARD_VERSION_RESOURCE = "/api/board/{identifier}/v/{version}";
+    static final String WHITEBOARD_HEAD_RESOURCE = "/api/board/{identifier}/head";
+    /**
+     * Not found may only be for now, such as a version an eventually consistent read didn't see yet, so it is cached
+     * for no longer than the newest version is.
+     */
+    private static final String NOT_FOUND_CACHE_CONTROL = "public, max-age=1";
+
+    static {
+        // Before a subclass creates any clients.
+        Tracing.configure();
+    }
+
+    private final ApiGatewayEventCodec eventCodec;
 
     BaseHandler() {
-        final TypeReference<Map<String, Object>> stringObjectMapTypeReference =
-                new TypeReference<>() {};
-        final ObjectMapper objectMapper = new ObjectMapper();
-        this.stringObjectMapObjectReader = objectMapper.readerFor(stringObjectMapTypeReference);
-        this.stringObjectMapObjectWriter = objectMapper.writerFor(stringObjectMapTypeReference);
+        this.eventCodec = new ApiGatewayEventCodec();
     }
 
     /**
-     * Handle the request.
+     * Handle the request. Everything logged while handling it carries its ID, see {@link RequestLogging}, which is
+     * also sent back in the X-Request-Id header.
      */
     @SneakyThrows(IOException.class)
-    @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED",
-            justification = "Spotbugs doesn't support @CanIgnoreReturnValue")
-    @SuppressWarnings("unchecked")
     @Override
     public void handleRequest(final InputStream input,
                               final OutputStream output,
                               final Context context) {
-        final Map<String, Object> inputMap;
-        try (final BufferedInputStream bis = new BufferedInputStream(input)) {
-            inputMap = stringObjectMapObjectReader.readValue(bis);
+        final ApiGatewayEventCodec.Request request = eventCodec.readRequest(input, resource -> {
+            final ApiType apiType = toApiType(resource);
+            return apiType == null ? null : getRequestReader(apiType);
+        });
+        final String requestId = RequestLogging.begin(context,
+                getHeader(request.getHeaders(), RequestLogging.REQUEST_ID_HEADER));
+        try {
+            handleRequest(request, requestId, output);
+        } finally {
+            Metrics.get().flushIfDue();
+            RequestLogging.end();
         }
-        log.info("entry. input: {}", Objects.toString(inputMap));
-        final ImmutableMap.Builder<String, String> outputHeaders = ImmutableMap.<String, String>builder()
-                .put("Content-Type", "application/json")
-                .put("Access-Control-Allow-Origin", "*")
-                .put("Access-Control-Allow-Methods", "POST, OPTIONS")
-                .put("Access-Control-Allow-Credentials", "true")
-                .put("Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token,X-Amz-User-Agent")
-                .put("Access-Control-Max-Age", "86400");
-        final ImmutableMap.Builder<String, Object> responseBuilder = ImmutableMap.<String, Object>builder()
-                .put("isBase64Encoded", false);
-        final Map<String, String> inputHeaders = getHeaders(inputMap);
-        log.info("inputHeaders: {}", Objects.toString(inputHeaders));
-
-        final String resource = (String) inputMap.get("resource");
-        final ApiType apiType;
-        switch (resource) {
-            case "/api/get":
-                apiType = ApiType.GetWhiteboard;
-                break;
-            case "/api/set":
-                apiType = ApiType.SetWhiteboard;
-                break;
-            default:
-                final String message = String.format("Unrecognized API resource: %s", resource);
-                throw new UnrecognizedApiResourceException(message);
+    }
+
+    private void handleRequest(final ApiGatewayEventCodec.Request request,
+                               final String requestId,
+                               final OutputStream output) throws IOException {
+        final long startNanos = System.nanoTime();
+        final String resource = request.getResource();
+        final Map<String, String> inputHeaders = request.getHeaders();
+        log.debug("entry. resource: {}, inputHeaders: {}",
+                () -> resource, () -> RequestLogging.redactHeaders(inputHeaders));
+        final Map<String, String> outputHeaders = new LinkedHashMap<>();
+        outputHeaders.put("Content-Type", "application/json");
+        outputHeaders.put("Access-Control-Allow-Origin", "*");
+        outputHeaders.put("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        outputHeaders.put("Access-Control-Allow-Credentials", "true");
+        outputHeaders.put("Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token,X-Amz-User-Agent,If-None-Match,"
+                + RequestLogging.REQUEST_ID_HEADER);
+        outputHeaders.put("Access-Control-Expose-Headers", "ETag," + RequestLogging.REQUEST_ID_HEADER);
+        outputHeaders.put("Access-Control-Max-Age", "86400");
+        outputHeaders.put(RequestLogging.REQUEST_ID_HEADER, requestId);
+
+        final ApiType apiType = toApiType(resource);
+        if (apiType == null) {
+            final String message = String.format("Unrecognized API resource: %s", resource);
+            throw new UnrecognizedApiResourceException(message);
         }
 
-        String outputBody = "";
-        final String inputBody = (String) inputMap.get(BODY);
+        int statusCode;
+        Object outputBody = null;
+        final String ifNoneMatch = getHeader(inputHeaders, "If-None-Match");
         try {
-            outputBody = handleRequestInternal(apiType, inputBody);
-            responseBuilder.put(STATUS_CODE, OK_STATUS_CODE);
+            // A GET has no body, only what API Gateway took out of the path.
+            final Object requestObject = isGet(apiType) ? request.getPathParameters() : request.getBody();
+            final HandlerResponse handlerResponse = handleRequestInternal(apiType, requestObject, ifNoneMatch);
+            if (handlerResponse.getETag() != null) {
+                outputHeaders.put("ETag", handlerResponse.getETag());
+            }
+            if (handlerResponse.getCacheControl() != null) {
+                outputHeaders.put("Cache-Control", handlerResponse.getCacheControl());
+            }
+            if (handlerResponse.getETag() != null && handlerResponse.getETag().equals(ifNoneMatch)) {
+                statusCode = NOT_MODIFIED_STATUS_CODE;
+            } else {
+                outputBody = handlerResponse.getBody();
+                statusCode = OK_STATUS_CODE;
+            }
+        } catch (final WhiteboardNotFoundException e) {
+            log.debug("not found: {}", e.getMessage());
+            outputHeaders.put("Cache-Control", NOT_FOUND_CACHE_CONTROL);
+            statusCode = NOT_FOUND_STATUS_CODE;
         } catch (final Exception e) {
             log.error("Uncaught exception: ", e);
             log.error("Exception message: {}", e.getMessage());
-            responseBuilder.put(STATUS_CODE, SERVER_ERROR_STATUS_CODE);
+            statusCode = SERVER_ERROR_STATUS_CODE;
         }
-        finishHandleRequest(outputHeaders, outputBody, responseBuilder, output);
+        eventCodec.writeResponse(output, statusCode, outputHeaders, outputBody,
+                outputBody == null ? null : getResponseWriter(apiType));
+        log.info("resource {} statusCode {} millis {}",
+                resource, statusCode, (System.nanoTime() - startNanos) / 1_000_000);
     }
 
-    @SneakyThrows({JsonProcessingException.class, IOException.class})
-    @SuppressFBWarnings(value = "RV_RETURN_VALUE_IGNORED",
-            justification = "Spotbugs doesn't support @CanIgnoreReturnValue")
-    private void finishHandleRequest(
-            final ImmutableMap.Builder<String, String> outputHeaders,
-            final String body,
-            final ImmutableMap.Builder<String, Object> responseBuilder,
-            final OutputStream output) {
-        responseBuilder.put(HEADERS, outputHeaders.build());
-        responseBuilder.put(BODY, body);
-        final Map<String, Object> responseMap = responseBuilder.build();
-        log.info("Returning response: {}", Objects.toString(responseMap));
-        try (final OutputStreamWriter osw = new OutputStreamWriter(output, StandardCharsets.UTF_8);
-             final BufferedWriter bw = new BufferedWriter(osw)) {
-            bw.write(stringObjectMapObjectWriter.writeValueAsString(responseMap));
+    @Nullable
+    private static ApiType toApiType(final String resource) {
+        switch (resource) {
+            case "/api/get":
+                return ApiType.GetWhiteboard;
+            case "/api/set":
+                return ApiType.SetWhiteboard;
+            case "/api/patch":
+                return ApiType.PatchWhiteboard;
+            case WHITEBOARD_VERSION_RESOURCE:
+                return ApiType.GetWhiteboardVersion;
+            case WHITEBOARD_HEAD_RESOURCE:
+                return ApiType.GetWhiteboardHead;
+            default:
+                return null;
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, String> getHeaders(final Map<String, Object> inputMap) {
-        return (Map<String, String>) inputMap.get("headers");
+    private static boolean isGet(final ApiType apiType) {
+        return apiType == ApiType.GetWhiteboardVersion || apiType == ApiType.GetWhiteboardHead;
     }
 
-    public abstract String handleRequestInternal(final ApiType apiType, final String input);
-}
\ No newline at end of file
+    /**
+     * Read and write an event like the ones API Gateway sends, to load what the first request would need for that.
+     */
+    @SneakyThrows(IOException.class)
+    void primeEventJson() {
+        final ApiGatewayEventCodec.Request request = eventCodec.readRequest(new ByteArrayInputStream(
+                "{\"resource\": \"/api/get\", \"headers\": {\"If-None-Match\": \"x\"}, \"body\": \"{}\"}"
+                        .getBytes(StandardCharsets.UTF_8)),
+                resource -> getRequestReader(ApiType.GetWhiteboard));
+        request.getBody();
+        eventCodec.writeResponse(new ByteArrayOutputStream(), OK_STATUS_CODE, request.getHeaders(), null /*body*/,
+                null /*bodyWriter*/);
+    }
+
+    /**
+     * Header names are case insensitive, and API Gateway passes them on as the client sent them.
+     */
+    @Nullable
+    private static String getHeader(@Nullable final Map<String, String> headers, final String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return what binds the body of a request to the API, as passed to {@link #handleRequestInternal}, or null for a
+     * GET, which has none.
+     */
+    @Nullable
+    protected abstract ObjectReader getRequestReader(ApiType apiType);
+
+    /**
+     * @return what writes the body of a response from the API, as returned by {@link #handleRequestInternal}.
+     */
+    protected abstract ObjectWriter getResponseWriter(ApiType apiType);
+
+    /**
+     * @param request The request's body, bound by the API's {@link #getRequestReader}, or for a GET the values of
+     *                the resource's path parameters, by name.
+     * @param ifNoneMatch The request's If-None-Match header, if any. If the response has the same ETag, only a 304
+     *                    with no body is sent, so the handler can skip the work of making a body when it knows that
+     *                    will happen.
+     */
+    public abstract HandlerResponse handleRequestInternal(final ApiType apiType,
+                                                          final Object request,
+                                                          @Nullable final String ifNoneMatch);
+}
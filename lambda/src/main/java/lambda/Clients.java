@@ -1,5 +1,8 @@
 package lambda;
 
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.apigatewaymanagementapi.AmazonApiGatewayManagementApi;
+import com.amazonaws.services.apigatewaymanagementapi.AmazonApiGatewayManagementApiClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.ConversionSchemas;
@@ -14,38 +17,132 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTableMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverterFactory;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.handlers.TracingHandler;
+import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import dynamodb.Subscription;
 import dynamodb.Whiteboard;
+import dynamodb.WhiteboardDao;
+import dynamodb.WhiteboardTable;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+
+import java.net.URI;
 
 public class Clients {
-    private static final AmazonDynamoDB dynamoDb = AmazonDynamoDBClientBuilder.standard()
-            .withRequestHandlers(new TracingHandler(AWSXRay.getGlobalRecorder()))
-            .build();
+    /**
+     * Clients are created on first use, so that each handler only pays for the ones it uses. See {@link #prime()} for
+     * warming one up.
+     */
+    private static final Supplier<AmazonDynamoDB> dynamoDb = Suppliers.memoize(Clients::createDynamoDb);
+    private static final Supplier<DynamoDbAsyncClient> dynamoDbAsync =
+            Suppliers.memoize(Clients::createDynamoDbAsync);
     private static final String WHITEBOARD_TABLE_NAME = System.getenv("WHITEBOARD_TABLE_NAME");
-    private static final DynamoDBTableMapper<Whiteboard, String, Long> whiteboardDynamoDbMapper
-            = Clients.createWhiteboardDynamoDbMapper();
-    static {
-        whiteboardDynamoDbMapper.load("12345", -1L);
+    private static final Supplier<DynamoDBTableMapper<Whiteboard, String, Long>> whiteboardDynamoDbMapper =
+            Suppliers.memoize(Clients::createWhiteboardDynamoDbMapper);
+
+    private static final String SUBSCRIPTION_TABLE_NAME = System.getenv("SUBSCRIPTION_TABLE_NAME");
+    private static final Supplier<DynamoDBTableMapper<Subscription, String, String>> subscriptionDynamoDbMapper =
+            Suppliers.memoize(() -> createDynamoDbMapper(SUBSCRIPTION_TABLE_NAME).newTableMapper(Subscription.class));
+    private static final Supplier<AmazonApiGatewayManagementApi> realtimeManagementApi =
+            Suppliers.memoize(Clients::createRealtimeManagementApi);
+
+    /**
+     * DYNAMODB_ENDPOINT points both DynamoDB clients somewhere else, such as DynamoDB Local on http://localhost:8000.
+     */
+    private static String getDynamoDbEndpoint() {
+        return System.getenv("DYNAMODB_ENDPOINT");
+    }
+
+    private static AmazonDynamoDB createDynamoDb() {
+        final AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+                .withRequestHandlers(new TracingHandler(AWSXRay.getGlobalRecorder()));
+        if (!StringUtils.isBlank(getDynamoDbEndpoint())) {
+            builder.withEndpointConfiguration(
+                    new EndpointConfiguration(getDynamoDbEndpoint(), System.getenv("AWS_REGION")));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The CRT HTTP client starts faster and takes less memory than the SDK's Netty one, and is non-blocking too.
+     */
+    private static DynamoDbAsyncClient createDynamoDbAsync() {
+        final DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .httpClientBuilder(AwsCrtAsyncHttpClient.builder())
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .build());
+        if (!StringUtils.isBlank(getDynamoDbEndpoint())) {
+            builder.endpointOverride(URI.create(getDynamoDbEndpoint()));
+        }
+        return builder.build();
     }
 
     private static DynamoDBTableMapper<Whiteboard, String, Long> createWhiteboardDynamoDbMapper() {
+        return createDynamoDbMapper(WHITEBOARD_TABLE_NAME).newTableMapper(Whiteboard.class);
+    }
+
+    private static DynamoDBMapper createDynamoDbMapper(final String tableName) {
         final DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
                 .withSaveBehavior(SaveBehavior.UPDATE)
                 .withConsistentReads(ConsistentReads.EVENTUAL)
                 .withPaginationLoadingStrategy(PaginationLoadingStrategy.LAZY_LOADING)
                 .withTableNameOverride(
-                        DynamoDBMapperConfig.TableNameOverride.withTableNameReplacement(WHITEBOARD_TABLE_NAME))
+                        DynamoDBMapperConfig.TableNameOverride.withTableNameReplacement(tableName))
                 .withBatchWriteRetryStrategy(DefaultBatchWriteRetryStrategy.INSTANCE)
                 .withBatchLoadRetryStrategy(DefaultBatchLoadRetryStrategy.INSTANCE)
                 .withTypeConverterFactory(DynamoDBTypeConverterFactory.standard())
                 .withConversionSchema(ConversionSchemas.V2)
                 .build();
 
-        final DynamoDBMapper dynamoDbMapper = new DynamoDBMapper(dynamoDb, config);
-        return dynamoDbMapper.newTableMapper(Whiteboard.class);
+        return new DynamoDBMapper(dynamoDb.get(), config);
+    }
+
+    /**
+     * REALTIME_ENDPOINT is the https:// URL of the WebSocket API's stage, which is where its connections are managed.
+     */
+    private static AmazonApiGatewayManagementApi createRealtimeManagementApi() {
+        return AmazonApiGatewayManagementApiClientBuilder.standard()
+                .withEndpointConfiguration(
+                        new EndpointConfiguration(getRealtimeEndpoint(), System.getenv("AWS_REGION")))
+                .withRequestHandlers(new TracingHandler(AWSXRay.getGlobalRecorder()))
+                .build();
+    }
+
+    public static String getRealtimeEndpoint() {
+        return System.getenv("REALTIME_ENDPOINT");
     }
 
     public static DynamoDBTableMapper<Whiteboard, String, Long> getWhiteboardDynamoDbMapper() {
-        return whiteboardDynamoDbMapper;
+        return whiteboardDynamoDbMapper.get();
+    }
+
+    public static DynamoDbAsyncClient getDynamoDbAsyncClient() {
+        return dynamoDbAsync.get();
+    }
+
+    public static String getWhiteboardTableName() {
+        return WHITEBOARD_TABLE_NAME;
+    }
+
+    /**
+     * The first request a client makes loads and initialises most of the SDK, opens a connection and does a TLS
+     * handshake, so make a cheap one during initialisation rather than in the first real request.
+     */
+    public static void prime(final WhiteboardTable whiteboardTable) {
+        WhiteboardDao.join(whiteboardTable.load("12345", -1L));
+    }
+
+    public static DynamoDBTableMapper<Subscription, String, String> getSubscriptionDynamoDbMapper() {
+        return subscriptionDynamoDbMapper.get();
+    }
+
+    public static AmazonApiGatewayManagementApi getRealtimeManagementApi() {
+        return realtimeManagementApi.get();
     }
 
 
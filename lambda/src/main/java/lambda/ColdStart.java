@@ -0,0 +1,105 @@
+package lambda;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures cold starts of {@link WhiteboardHandler} locally: how long from a new JVM starting until the handler is
+ * created, as Lambda does during initialisation, over a number of new JVMs.
+ *
+ * {@code java -cp <classpath> lambda.ColdStart [runs] [JVM options...]}, for example with
+ * {@code -Xshare:auto -XX:SharedArchiveFile=build/appcds/whiteboard.jsa} to compare against the AppCDS archive. Runs
+ * use STARTUP_PRIMING from the environment, or CODE if it isn't set, since FULL calls DynamoDB, and a placeholder
+ * WHITEBOARD_TABLE_NAME if that isn't set.
+ *
+ * {@code lambda.ColdStart --once} creates the handler once in this JVM and prints how long that took. That is what each
+ * run does, and what the AppCDS class list is made from.
+ */
+public final class ColdStart {
+    private static final String RESULT_PREFIX = "coldStart ";
+    private static final int DEFAULT_RUNS = 10;
+
+    private ColdStart() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && "--once".equals(args[0])) {
+            once();
+            return;
+        }
+        final int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+        final List<String> jvmOptions = args.length > 1
+                ? Arrays.asList(args).subList(1, args.length)
+                : ImmutableList.of();
+
+        final List<Long> totalMillis = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) {
+            final String result = run(jvmOptions);
+            System.out.println(result);
+            totalMillis.add(Long.parseLong(result.split(" ")[1]));
+        }
+        Collections.sort(totalMillis);
+        System.out.printf("cold start over %d runs, JVM start to handler created: min %d ms, median %d ms, "
+                        + "p90 %d ms, max %d ms%n",
+                runs, totalMillis.get(0), percentile(totalMillis, 0.5), percentile(totalMillis, 0.9),
+                totalMillis.get(runs - 1));
+    }
+
+    private static void once() {
+        final long startNanos = System.nanoTime();
+        new WhiteboardHandler();
+        final long handlerMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        System.out.printf("%s%d handler %d ms: %s%n",
+                RESULT_PREFIX, StartupTimer.getMillisSinceJvmStart(), handlerMillis,
+                WhiteboardHandler.startupTimer.report());
+    }
+
+    /**
+     * @return the result line of a new JVM creating the handler once.
+     */
+    private static String run(final List<String> jvmOptions) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        // The SDK needs a region to create clients, though nothing here calls AWS.
+        command.add("-Daws.region=us-east-1");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ColdStart.class.getName());
+        command.add("--once");
+        final ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        processBuilder.environment().putIfAbsent("STARTUP_PRIMING", PrimingMode.CODE.name());
+        processBuilder.environment().putIfAbsent("WHITEBOARD_TABLE_NAME", "whiteboard");
+
+        final Process process = processBuilder.start();
+        String result = null;
+        final List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line;
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("cold start run failed:\n" + String.join("\n", output));
+        }
+        return result;
+    }
+
+    private static long percentile(final List<Long> sorted, final double percentile) {
+        return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+    }
+}
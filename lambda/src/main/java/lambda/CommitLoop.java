@@ -0,0 +1,158 @@
+package lambda;
+
+import exception.WhiteboardVersionExistsException;
+import lombok.SneakyThrows;
+import metrics.Metric;
+import metrics.Metrics;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Optimistic concurrency for saving a new version of a whiteboard. Each attempt reads the newest version, merges onto
+ * it and saves the version after it. If someone else saved that version first, back off and try again, so that the
+ * next attempt merges onto theirs instead. The first attempt reads eventually consistently, which is cheaper and
+ * usually right, and the retries read consistently, since they know they are behind.
+ *
+ * Backoff is full jitter: a random delay up to a cap that doubles with each retry, so writers that collided spread out
+ * rather than colliding again in step.
+ *
+ * Each commit's number of attempts and total time are recorded in {@link Metrics}. A contended commit, one that took
+ * more than one attempt, is also logged with the whiteboard's identifier: the number of attempts, the time each
+ * attempt spent merging, and the time spent backing off.
+ */
+public class CommitLoop {
+    private static final Logger log = LogManager.getLogger(CommitLoop.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(25);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(1);
+
+    private final int maxAttempts;
+    private final Duration baseBackoff;
+    private final LongConsumer sleepMillis;
+
+    public CommitLoop(final int maxAttempts, final Duration baseBackoff) {
+        this(maxAttempts, baseBackoff, CommitLoop::sleep);
+    }
+
+    public CommitLoop(final int maxAttempts, final Duration baseBackoff, final LongConsumer sleepMillis) {
+        checkArgument(maxAttempts >= 1, "maxAttempts must be at least 1, not %s", maxAttempts);
+        this.maxAttempts = maxAttempts;
+        this.baseBackoff = checkNotNull(baseBackoff);
+        this.sleepMillis = checkNotNull(sleepMillis);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static void sleep(final long millis) {
+        Thread.sleep(millis);
+    }
+
+    /**
+     * One attempt at a commit.
+     */
+    public static final class Attempt {
+        private final int number;
+        private long mergeNanos;
+
+        private Attempt(final int number) {
+            this.number = number;
+        }
+
+        /**
+         * Counting from 1.
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        public boolean isConsistentRead() {
+            return number > 1;
+        }
+
+        /**
+         * Run the merge, or whatever else works out the new version's content, timing it for the contention log.
+         */
+        public <T> T timeMerge(final Supplier<T> merge) {
+            final long start = System.nanoTime();
+            try {
+                return merge.get();
+            } finally {
+                mergeNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * @param identifier The whiteboard, for the contention log.
+     * @param operation What the commit is for, for the contention log.
+     * @param attempt Reads the newest version, merges onto it and saves the version after it. Throws
+     *                {@link WhiteboardVersionExistsException} if that version has been saved already.
+     * @return what the successful attempt returned.
+     * @throws WhiteboardVersionExistsException if every attempt lost.
+     */
+    public <T> T commit(final String identifier, final String operation, final Function<Attempt, T> attempt) {
+        final long start = System.nanoTime();
+        final List<Long> mergeMillis = new ArrayList<>();
+        long backoffMillis = 0;
+        for (int number = 1; ; number++) {
+            final Attempt currentAttempt = new Attempt(number);
+            try {
+                final T result = attempt.apply(currentAttempt);
+                mergeMillis.add(TimeUnit.NANOSECONDS.toMillis(currentAttempt.mergeNanos));
+                logContention(identifier, operation, "committed", mergeMillis, backoffMillis, start);
+                return result;
+            } catch (final WhiteboardVersionExistsException e) {
+                mergeMillis.add(TimeUnit.NANOSECONDS.toMillis(currentAttempt.mergeNanos));
+                if (number >= maxAttempts) {
+                    Metrics.get().count(Metric.COMMITS_GIVEN_UP);
+                    logContention(identifier, operation, "gave up", mergeMillis, backoffMillis, start);
+                    throw e;
+                }
+                final long delayMillis = getBackoffMillis(number);
+                log.info("commit identifier {} attempt {} lost to another writer, retrying in {} ms. {}",
+                        identifier, number, delayMillis, e.getMessage());
+                sleepMillis.accept(delayMillis);
+                backoffMillis += delayMillis;
+            }
+        }
+    }
+
+    /**
+     * @return a random delay of up to the base backoff doubled for each attempt lost so far but the first, capped.
+     */
+    long getBackoffMillis(final int lostAttempts) {
+        final long capMillis = Math.min(MAX_BACKOFF.toMillis(),
+                baseBackoff.toMillis() << Math.min(lostAttempts - 1, 20));
+        return ThreadLocalRandom.current().nextLong(capMillis + 1);
+    }
+
+    private static void logContention(final String identifier,
+                                      final String operation,
+                                      final String outcome,
+                                      final List<Long> mergeMillis,
+                                      final long backoffMillis,
+                                      final long startNanos) {
+        Metrics.get().record(Metric.COMMIT_ATTEMPTS, mergeMillis.size());
+        Metrics.get().recordTime(Metric.COMMIT_TIME, startNanos);
+        final Level level = mergeMillis.size() > 1 ? Level.INFO : Level.DEBUG;
+        if (log.isEnabled(level)) {
+            log.log(level, "commit contention identifier {} operation {} {} attempts {} merge ms per attempt {} "
+                            + "backoff ms {} total ms {}",
+                    identifier, operation, outcome, mergeMillis.size(), mergeMillis, backoffMillis,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package lambda;
+
+/**
+ * Sends messages down realtime WebSocket connections.
+ */
+public interface ConnectionGateway {
+    /**
+     * @return false if the connection has gone, true if the message was sent.
+     */
+    boolean postToConnection(String connectionId, String message);
+}
@@ -0,0 +1,110 @@
+package lambda;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Entity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dynamodb.WhiteboardSubscriptions;
+import logic.CellOperation;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Publishes {@link WhiteboardUpdate}s to every connection subscribed to the whiteboard, at once. Connections that have
+ * gone without disconnecting are unsubscribed.
+ */
+public class ConnectionPublisher implements WhiteboardPublisher {
+    private static final Logger log = LogManager.getLogger(ConnectionPublisher.class);
+    private static final ObjectWriter whiteboardUpdateWriter = new ObjectMapper().writerFor(WhiteboardUpdate.class);
+
+    /**
+     * API Gateway's limit on a WebSocket message. Updates with more operations than fit are sent without them.
+     */
+    private static final int MAX_MESSAGE_LENGTH = 128 * 1024;
+    private static final int PUBLISH_THREADS = 8;
+
+    private final WhiteboardSubscriptions subscriptions;
+    private final ConnectionGateway connectionGateway;
+    private final ExecutorService publishExecutor;
+
+    public ConnectionPublisher(final WhiteboardSubscriptions subscriptions,
+                               final ConnectionGateway connectionGateway) {
+        this(subscriptions,
+                connectionGateway,
+                Executors.newFixedThreadPool(PUBLISH_THREADS, new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("whiteboard-publish-%d")
+                        .build()));
+    }
+
+    public ConnectionPublisher(final WhiteboardSubscriptions subscriptions,
+                               final ConnectionGateway connectionGateway,
+                               final ExecutorService publishExecutor) {
+        this.subscriptions = checkNotNull(subscriptions);
+        this.connectionGateway = checkNotNull(connectionGateway);
+        this.publishExecutor = checkNotNull(publishExecutor);
+    }
+
+    @Override
+    public void publish(final String identifier,
+                        final Long previousVersion,
+                        final Long version,
+                        final Supplier<List<CellOperation>> operations) {
+        try {
+            final List<String> connectionIds = subscriptions.getConnectionIds(identifier);
+            log.debug("publish identifier {} version {} subscribers {}", identifier, version, connectionIds.size());
+            if (connectionIds.isEmpty()) {
+                return;
+            }
+            String message = toMessage(new WhiteboardUpdate(identifier, previousVersion, version, operations.get()));
+            if (message.getBytes(StandardCharsets.UTF_8).length > MAX_MESSAGE_LENGTH) {
+                log.info("publish identifier {} version {} operations too long, sending without them",
+                        identifier, version);
+                message = toMessage(new WhiteboardUpdate(identifier, previousVersion, version, null));
+            }
+            postToConnections(connectionIds, message);
+        } catch (final RuntimeException e) {
+            log.warn("publish identifier {} version {} failed", identifier, version, e);
+        }
+    }
+
+    @SneakyThrows(JsonProcessingException.class)
+    private static String toMessage(final WhiteboardUpdate update) {
+        return whiteboardUpdateWriter.writeValueAsString(update);
+    }
+
+    /**
+     * The current X-Ray trace is carried over to the executor's threads, as in the DAO.
+     */
+    private void postToConnections(final List<String> connectionIds, final String message) {
+        final Entity traceEntity = AWSXRay.getTraceEntity();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(connectionIds.size());
+        for (final String connectionId : connectionIds) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                AWSXRay.setTraceEntity(traceEntity);
+                try {
+                    if (!connectionGateway.postToConnection(connectionId, message)) {
+                        log.info("postToConnections connectionId {} has gone", connectionId);
+                        subscriptions.unsubscribeAll(connectionId);
+                    }
+                } finally {
+                    AWSXRay.clearTraceEntity();
+                }
+            }, publishExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
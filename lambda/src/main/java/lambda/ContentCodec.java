@@ -0,0 +1,13 @@
+package lambda;
+
+/**
+ * A compression format for whiteboard content. Stored content starts with the format's header byte, so that content
+ * stored with any codec stays readable whichever one new content is stored with.
+ */
+public interface ContentCodec {
+    byte getFormat();
+
+    byte[] compress(byte[] uncompressed);
+
+    byte[] decompress(byte[] compressed, int offset, int length);
+}
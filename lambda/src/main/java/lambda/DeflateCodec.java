@@ -0,0 +1,74 @@
+package lambda;
+
+import lombok.SneakyThrows;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib-wrapped deflate, which is what the web client sends and expects. Level 1 is fastest and level 9 smallest, and the
+ * output of any level can be read by everyone.
+ */
+public class DeflateCodec implements ContentCodec {
+    public static final byte FORMAT = 1;
+
+    private final int level;
+
+    public DeflateCodec(final int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    /**
+     * Deflate straight from the input array into an output array, with no streams or intermediate copies.
+     */
+    @Override
+    public byte[] compress(final byte[] uncompressed) {
+        final Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, uncompressed.length / 4)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @SneakyThrows(DataFormatException.class)
+    @Override
+    public byte[] decompress(final byte[] compressed, final int offset, final int length) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, offset, length);
+            byte[] buffer = new byte[Math.max(64, length * 4)];
+            int inflatedLength = 0;
+            while (!inflater.finished()) {
+                if (inflatedLength == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                final int inflated = inflater.inflate(buffer, inflatedLength, buffer.length - inflatedLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated deflate stream");
+                }
+                inflatedLength += inflated;
+            }
+            return Arrays.copyOf(buffer, inflatedLength);
+        } finally {
+            inflater.end();
+        }
+    }
+}
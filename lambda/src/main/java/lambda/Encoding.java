@@ -1,42 +1,93 @@
 package lambda;
 
-import lombok.SneakyThrows;
-import org.apache.commons.io.IOUtils;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
+import com.google.common.collect.ImmutableMap;
+import dynamodb.ContentStorageFormat;
+import metrics.Metric;
+import metrics.Metrics;
+import tracing.Tracing;
+
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.zip.DeflaterInputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.Map;
+import java.util.zip.Deflater;
 
-public class Encoding {
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
-    @SneakyThrows(IOException.class)
-    public String decode(final String encoded) {
-        final Base64.Decoder base64Decoder = Base64.getDecoder();
-        final byte[] compressed = base64Decoder.decode(encoded);
+/**
+ * Content is exchanged with clients as base64 of deflated XML, and stored as a header byte followed by the XML compressed
+ * with the storage codec.
+ *
+ * When the storage codec is deflate too, content goes between the two forms with no compression work at all, only
+ * base64. Content from clients is stored exactly as they compressed it.
+ */
+public class Encoding implements ContentStorageFormat {
+    private static final Map<Byte, ContentCodec> codecsByFormat = ImmutableMap.of(
+            DeflateCodec.FORMAT, new DeflateCodec(Deflater.DEFAULT_COMPRESSION),
+            Lz4Codec.FORMAT, new Lz4Codec());
+
+    private final DeflateCodec deflateCodec;
+    private final ContentCodec storageCodec;
 
-        final StringWriter writer = new StringWriter();
-        try (final ByteArrayInputStream bais = new ByteArrayInputStream(compressed);
-             final InflaterInputStream iis = new InflaterInputStream(bais)) {
-            IOUtils.copy(iis, writer, StandardCharsets.UTF_8);
+    public Encoding() {
+        this(new DeflateCodec(Deflater.DEFAULT_COMPRESSION), new DeflateCodec(Deflater.DEFAULT_COMPRESSION));
+    }
+
+    /**
+     * @param deflateCodec Compresses content sent to clients.
+     * @param storageCodec Compresses content that is stored. Content stored with any codec can be read.
+     */
+    public Encoding(final DeflateCodec deflateCodec, final ContentCodec storageCodec) {
+        this.deflateCodec = checkNotNull(deflateCodec);
+        this.storageCodec = checkNotNull(storageCodec);
+    }
+
+    public String decode(final String encoded) {
+        try (final Tracing.Span span = Tracing.begin("decode")) {
+            final long startNanos = System.nanoTime();
+            final byte[] compressed = Base64.getDecoder().decode(encoded);
+            final byte[] decompressed = deflateCodec.decompress(compressed, 0, compressed.length);
+            final String decoded = new String(decompressed, StandardCharsets.UTF_8);
+            Metrics.get().recordTime(Metric.DECODE_TIME, startNanos);
+            Metrics.get().record(Metric.DOCUMENT_BYTES, decompressed.length);
+            span.annotate("bytes", decompressed.length);
+            return decoded;
         }
-        return writer.toString();
     }
 
-    @SneakyThrows(IOException.class)
     public String encode(final String unencoded) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final InputStream is = IOUtils.toInputStream(unencoded, StandardCharsets.UTF_8);
-        try (final DeflaterInputStream dis = new DeflaterInputStream(is)) {
-            IOUtils.copy(dis, baos);
+        try (final Tracing.Span span = Tracing.begin("encode")) {
+            final long startNanos = System.nanoTime();
+            final byte[] uncompressed = unencoded.getBytes(StandardCharsets.UTF_8);
+            final String encoded = Base64.getEncoder().encodeToString(deflateCodec.compress(uncompressed));
+            Metrics.get().recordTime(Metric.ENCODE_TIME, startNanos);
+            span.annotate("bytes", uncompressed.length);
+            return encoded;
         }
+    }
+
+    @Override
+    public byte[] toStored(final String content) {
+        final byte[] deflated = Base64.getDecoder().decode(content);
+        // Blank content, for a new whiteboard, is the one thing clients send that isn't deflated.
+        final byte[] compressed = storageCodec.getFormat() == DeflateCodec.FORMAT || deflated.length == 0
+                ? deflated
+                : storageCodec.compress(deflateCodec.decompress(deflated, 0, deflated.length));
+        final byte[] stored = new byte[compressed.length + 1];
+        stored[0] = storageCodec.getFormat();
+        System.arraycopy(compressed, 0, stored, 1, compressed.length);
+        return stored;
+    }
 
-        final Base64.Encoder base64Encoder = Base64.getEncoder();
-        return base64Encoder.encodeToString(baos.toByteArray());
+    @Override
+    public String fromStored(final byte[] stored) {
+        checkArgument(stored.length > 0, "stored content has no header");
+        final ContentCodec codec = codecsByFormat.get(stored[0]);
+        checkArgument(codec != null, "stored content has unknown format %s", stored[0]);
+        final byte[] deflated = codec.getFormat() == DeflateCodec.FORMAT || stored.length == 1
+                ? Arrays.copyOfRange(stored, 1, stored.length)
+                : deflateCodec.compress(codec.decompress(stored, 1, stored.length - 1));
+        return Base64.getEncoder().encodeToString(deflated);
     }
 }
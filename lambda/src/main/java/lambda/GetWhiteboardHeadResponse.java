@@ -0,0 +1,20 @@
+package lambda;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The newest version's number, whose content is then a cacheable GET of its own.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class GetWhiteboardHeadResponse {
+    private String identifier;
+    private Long whiteboardVersion;
+}
@@ -6,6 +6,11 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 
+/**
+ * knownWhiteboardVersion is the version the client already has, if any, so that it only gets what changed since. The
+ * If-None-Match header does the same with an ETag from an earlier response. Set acceptOperations if the client can
+ * apply cell operations to its version, otherwise it gets the whole whiteboard when there is a newer version.
+ */
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
@@ -14,4 +19,6 @@ import lombok.ToString;
 public class GetWhiteboardRequest {
     private Integer apiVersion;
     private String identifier;
+    private Long knownWhiteboardVersion;
+    private Boolean acceptOperations;
 }
@@ -1,11 +1,20 @@
 package lambda;
 
+import logic.CellOperation;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 
+import java.util.List;
+
+/**
+ * Exactly one of these, depending on the version the client said it has:
+ * - notModified: the client has whiteboardVersion already.
+ * - operations: cell operations that turn the client's version into whiteboardVersion.
+ * - content: the whole of whiteboardVersion.
+ */
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
@@ -13,6 +22,10 @@ import lombok.ToString;
 @ToString
 public class GetWhiteboardResponse {
     private String identifier;
+    @ToString.Exclude
     private String content;
     private Long whiteboardVersion;
+    private boolean notModified;
+    @ToString.Exclude
+    private List<CellOperation> operations;
 }
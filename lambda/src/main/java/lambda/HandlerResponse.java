@@ -0,0 +1,22 @@
+package lambda;
+
+import lombok.Value;
+
+import javax.annotation.Nullable;
+
+/**
+ * The body of a response, written by the API's {@link BaseHandler#getResponseWriter}, its ETag if it has one, and its
+ * Cache-Control header if it can be cached.
+ */
+@Value
+public class HandlerResponse {
+    Object body;
+    @Nullable
+    String eTag;
+    @Nullable
+    String cacheControl;
+
+    public static HandlerResponse of(final Object body) {
+        return new HandlerResponse(body, null, null);
+    }
+}
@@ -0,0 +1,122 @@
+package lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableList;
+import dynamodb.WhiteboardSubscriptions;
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Stands in for the API Gateway WebSocket API in-process, for tests and running locally. Clients connect, send and
+ * disconnect through it, which routes their messages to a {@link RealtimeHandler} the way API Gateway does, and
+ * whatever is posted to a connection is kept for its client to read. Subscriptions are kept in memory.
+ */
+public class LocalRealtimeServer implements ConnectionGateway {
+    private static final ObjectReader realtimeRequestObjectReader =
+            new ObjectMapper().readerFor(RealtimeRequest.class);
+
+    private final InMemorySubscriptions subscriptions = new InMemorySubscriptions();
+    private final RealtimeHandler realtimeHandler = new RealtimeHandler(subscriptions);
+    private final Map<String, List<String>> messagesByConnectionId = new ConcurrentHashMap<>();
+
+    public WhiteboardSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * @return the new connection's ID.
+     */
+    public String connect() {
+        final String connectionId = UUID.randomUUID().toString();
+        messagesByConnectionId.put(connectionId, new ArrayList<>());
+        realtimeHandler.handleEvent(RealtimeHandler.CONNECT_ROUTE, connectionId, null);
+        return connectionId;
+    }
+
+    /**
+     * Send a message from the client, routed by its action like API Gateway's {@code $request.body.action}.
+     */
+    @SneakyThrows(IOException.class)
+    public void send(final String connectionId, final String body) {
+        checkArgument(messagesByConnectionId.containsKey(connectionId), "not connected: %s", connectionId);
+        final String action = realtimeRequestObjectReader.<RealtimeRequest>readValue(body).getAction();
+        final String routeKey = RealtimeHandler.SUBSCRIBE_ROUTE.equals(action)
+                || RealtimeHandler.UNSUBSCRIBE_ROUTE.equals(action)
+                ? action
+                : RealtimeHandler.DEFAULT_ROUTE;
+        realtimeHandler.handleEvent(routeKey, connectionId, body);
+    }
+
+    public void disconnect(final String connectionId) {
+        messagesByConnectionId.remove(connectionId);
+        realtimeHandler.handleEvent(RealtimeHandler.DISCONNECT_ROUTE, connectionId, null);
+    }
+
+    /**
+     * Drop the connection without telling the handler, as when a client goes away abruptly.
+     */
+    public void drop(final String connectionId) {
+        messagesByConnectionId.remove(connectionId);
+    }
+
+    /**
+     * @return the messages posted to the connection so far, in order.
+     */
+    public List<String> getMessages(final String connectionId) {
+        final List<String> messages = messagesByConnectionId.get(connectionId);
+        checkArgument(messages != null, "not connected: %s", connectionId);
+        synchronized (messages) {
+            return ImmutableList.copyOf(messages);
+        }
+    }
+
+    @Override
+    public boolean postToConnection(final String connectionId, final String message) {
+        final List<String> messages = messagesByConnectionId.get(connectionId);
+        if (messages == null) {
+            return false;
+        }
+        synchronized (messages) {
+            messages.add(message);
+        }
+        return true;
+    }
+
+    private static class InMemorySubscriptions implements WhiteboardSubscriptions {
+        private final Map<String, Set<String>> connectionIdsByIdentifier = new ConcurrentHashMap<>();
+
+        @Override
+        public void subscribe(final String identifier, final String connectionId) {
+            connectionIdsByIdentifier.computeIfAbsent(identifier, key -> ConcurrentHashMap.newKeySet())
+                    .add(connectionId);
+        }
+
+        @Override
+        public void unsubscribe(final String identifier, final String connectionId) {
+            final Set<String> connectionIds = connectionIdsByIdentifier.get(identifier);
+            if (connectionIds != null) {
+                connectionIds.remove(connectionId);
+            }
+        }
+
+        @Override
+        public void unsubscribeAll(final String connectionId) {
+            connectionIdsByIdentifier.values().forEach(connectionIds -> connectionIds.remove(connectionId));
+        }
+
+        @Override
+        public List<String> getConnectionIds(final String identifier) {
+            return ImmutableList.copyOf(connectionIdsByIdentifier.getOrDefault(identifier, Set.of()));
+        }
+    }
+}
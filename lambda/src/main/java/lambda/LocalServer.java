@@ -0,0 +1,286 @@
+package lambda;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dynamodb.InMemoryWhiteboardTable;
+import dynamodb.MappedLogWhiteboardTable;
+import dynamodb.WhiteboardTable;
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tracing.Tracing;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serves the whiteboard API over plain HTTP, outside Lambda, for self-hosting and for load testing without AWS. Each
+ * request is turned into the event API Gateway would send and handled by {@link BaseHandler#handleRequest} as it is in
+ * Lambda, so the two can't drift apart.
+ *
+ * Requests are handled on virtual threads on a JVM that has them, which is Java 21 or later, and otherwise on a pool
+ * of platform threads. Either way a request waiting on storage doesn't stop others being served, and with
+ * WHITEBOARD_WRITE_COALESCING_MS set concurrent sets of the same whiteboard are saved together, see
+ * {@link WriteCoalescer}.
+ *
+ * Run with {@code ./gradlew run}. PORT sets the port, 8080 by default, and WHITEBOARD_STORE where whiteboards are
+ * stored, see {@link Store}. Requests are only traced if WHITEBOARD_TRACE_EXPORTER is set, such as to FILE for a trace
+ * per request in a file, see {@link Tracing}. Everything else is configured the same as in Lambda.
+ */
+public class LocalServer {
+    private static final Logger log = LogManager.getLogger(LocalServer.class);
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final List<String> RESOURCES = ImmutableList.of("/api/get", "/api/set", "/api/patch");
+    /**
+     * The GET resources are under here, with their path parameters in the path, which API Gateway would take out.
+     */
+    private static final String BOARD_PATH = "/api/board/";
+    private static final Pattern WHITEBOARD_VERSION_PATH = Pattern.compile("/api/board/([^/]+)/v/([^/]+)");
+    private static final Pattern WHITEBOARD_HEAD_PATH = Pattern.compile("/api/board/([^/]+)/head");
+    private static final int NO_CONTENT_STATUS_CODE = 204;
+    private static final int NOT_FOUND_STATUS_CODE = 404;
+    private static final int METHOD_NOT_ALLOWED_STATUS_CODE = 405;
+    private static final int NO_BODY = -1;
+
+    private static final TypeReference<Map<String, Object>> stringObjectMapTypeReference = new TypeReference<>() {};
+    private static final ObjectReader eventObjectReader =
+            new ObjectMapper().readerFor(stringObjectMapTypeReference);
+    private static final ObjectWriter eventObjectWriter =
+            new ObjectMapper().writerFor(stringObjectMapTypeReference);
+
+    /**
+     * Where whiteboards are stored.
+     */
+    public enum Store {
+        /**
+         * In memory, for as long as the server runs.
+         */
+        MEMORY,
+        /**
+         * In files in WHITEBOARD_STORE_DIR, {@code whiteboards} by default, see {@link MappedLogWhiteboardTable}. Set
+         * WHITEBOARD_STORE_SYNC=true to sync each save to disk.
+         */
+        LOG,
+        /**
+         * In the DynamoDB table, configured the same as in Lambda.
+         */
+        DYNAMODB,
+    }
+
+    private final BaseHandler handler;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    @SneakyThrows(IOException.class)
+    public LocalServer(final BaseHandler handler, final InetSocketAddress address) {
+        this.handler = checkNotNull(handler);
+        this.server = HttpServer.create(address, 0 /*backlog, the system default*/);
+        for (final String resource : RESOURCES) {
+            server.createContext(resource, this::handle);
+        }
+        server.createContext(BOARD_PATH, this::handleGet);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+    }
+
+    public static void main(final String[] args) {
+        final String port = System.getenv("PORT");
+        final String store = System.getenv("WHITEBOARD_STORE");
+        final Store storeType = StringUtils.isBlank(store) ? Store.MEMORY : Store.valueOf(store);
+        final WhiteboardTable table = getWhiteboardTable(storeType);
+        final LocalServer server = new LocalServer(
+                table == null ? new WhiteboardHandler() : new WhiteboardHandler(table),
+                new InetSocketAddress(StringUtils.isBlank(port) ? DEFAULT_PORT : Integer.parseInt(port)));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (table instanceof Closeable) {
+                closeQuietly((Closeable) table);
+            }
+        }));
+        log.info("serving {} and GET {} on port {} with whiteboards stored in {}",
+                RESOURCES, BOARD_PATH, server.getPort(), storeType);
+    }
+
+    /**
+     * @return null for the table the handler uses in Lambda.
+     */
+    @Nullable
+    private static WhiteboardTable getWhiteboardTable(final Store storeType) {
+        switch (storeType) {
+            case MEMORY:
+                return new InMemoryWhiteboardTable();
+            case LOG:
+                final String directory = System.getenv("WHITEBOARD_STORE_DIR");
+                return new MappedLogWhiteboardTable(
+                        Paths.get(StringUtils.isBlank(directory) ? "whiteboards" : directory),
+                        "true".equals(System.getenv("WHITEBOARD_STORE_SYNC")));
+            default:
+                return null;
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            log.warn("closing {} failed", closeable, e);
+        }
+    }
+
+    /**
+     * Virtual threads are looked up reflectively, since this is compiled for Java 11.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            log.info("virtual threads are not available, handling requests on platform threads");
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("whiteboard-http-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops taking requests, and waits a second for those in progress to finish.
+     */
+    public void stop() {
+        server.stop(1 /*delay in seconds*/);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            // Read even when it isn't used, otherwise the connection can't be kept alive for the next request.
+            final String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            final String resource = exchange.getHttpContext().getPath();
+            if (!resource.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(NOT_FOUND_STATUS_CODE, NO_BODY);
+            } else if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                sendPreflight(exchange);
+            } else if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(METHOD_NOT_ALLOWED_STATUS_CODE, NO_BODY);
+            } else {
+                handleApiRequest(resource, null /*pathParameters*/, requestBody, exchange);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleGet(final HttpExchange exchange) throws IOException {
+        try {
+            exchange.getRequestBody().readAllBytes();
+            final String path = exchange.getRequestURI().getPath();
+            final Matcher version = WHITEBOARD_VERSION_PATH.matcher(path);
+            final Matcher head = WHITEBOARD_HEAD_PATH.matcher(path);
+            if (!version.matches() && !head.matches()) {
+                exchange.sendResponseHeaders(NOT_FOUND_STATUS_CODE, NO_BODY);
+            } else if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                sendPreflight(exchange);
+            } else if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(METHOD_NOT_ALLOWED_STATUS_CODE, NO_BODY);
+            } else if (version.matches()) {
+                handleApiRequest(BaseHandler.WHITEBOARD_VERSION_RESOURCE,
+                        ImmutableMap.of("identifier", version.group(1), "version", version.group(2)),
+                        null /*requestBody*/, exchange);
+            } else {
+                handleApiRequest(BaseHandler.WHITEBOARD_HEAD_RESOURCE,
+                        ImmutableMap.of("identifier", head.group(1)),
+                        null /*requestBody*/, exchange);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * API Gateway answers CORS preflight requests itself, without calling the handler.
+     */
+    private static void sendPreflight(final HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type,If-None-Match,X-Request-Id");
+        exchange.getResponseHeaders().add("Access-Control-Max-Age", "86400");
+        exchange.sendResponseHeaders(NO_CONTENT_STATUS_CODE, NO_BODY);
+    }
+
+    /**
+     * @param pathParameters For a GET, which has no body.
+     * @param requestBody For a POST.
+     */
+    @SuppressWarnings("unchecked")
+    private void handleApiRequest(final String resource,
+                                  @Nullable final Map<String, String> pathParameters,
+                                  @Nullable final String requestBody,
+                                  final HttpExchange exchange) throws IOException {
+        final Map<String, String> requestHeaders = new HashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> requestHeaders.put(name, values.get(0)));
+        // Resource first, as API Gateway sends it, so the body is bound as it is read.
+        final Map<String, Object> event = new LinkedHashMap<>();
+        event.put("resource", resource);
+        event.put("headers", requestHeaders);
+        event.put("pathParameters", pathParameters);
+        event.put("body", requestBody);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (final Tracing.Span span = Tracing.beginLocalTrace("whiteboard")) {
+            span.annotate("resource", resource);
+            handler.handleRequest(new ByteArrayInputStream(eventObjectWriter.writeValueAsBytes(event)), output,
+                    null /*context, so the request ID comes from its header or is generated*/);
+        }
+        final Map<String, Object> response = eventObjectReader.readValue(output.toByteArray());
+
+        ((Map<String, String>) response.get("headers")).forEach(exchange.getResponseHeaders()::add);
+        final byte[] responseBody = ((String) response.get("body")).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(((Number) response.get("statusCode")).intValue(),
+                responseBody.length == 0 ? NO_BODY : responseBody.length);
+        if (responseBody.length > 0) {
+            try (final OutputStream responseOutput = exchange.getResponseBody()) {
+                responseOutput.write(responseBody);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package lambda;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An LZ4 block, preceded by the uncompressed length. Several times faster than deflate both ways, at the cost of a
+ * bigger result. Clients can't read it, so it is only ever used for storage.
+ */
+public class Lz4Codec implements ContentCodec {
+    public static final byte FORMAT = 2;
+
+    private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor compressor = lz4Factory.fastCompressor();
+    private static final LZ4SafeDecompressor decompressor = lz4Factory.safeDecompressor();
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] compress(final byte[] uncompressed) {
+        final byte[] compressed = new byte[Integer.BYTES + compressor.maxCompressedLength(uncompressed.length)];
+        ByteBuffer.wrap(compressed).putInt(uncompressed.length);
+        final int length = compressor.compress(uncompressed, 0, uncompressed.length,
+                compressed, Integer.BYTES, compressed.length - Integer.BYTES);
+        return Arrays.copyOf(compressed, Integer.BYTES + length);
+    }
+
+    @Override
+    public byte[] decompress(final byte[] compressed, final int offset, final int length) {
+        final byte[] uncompressed = new byte[ByteBuffer.wrap(compressed, offset, length).getInt()];
+        final int uncompressedLength = decompressor.decompress(compressed, offset + Integer.BYTES,
+                length - Integer.BYTES, uncompressed, 0, uncompressed.length);
+        checkArgument(uncompressedLength == uncompressed.length, "truncated LZ4 block");
+        return uncompressed;
+    }
+}
@@ -0,0 +1,23 @@
+package lambda;
+
+import logic.CellOperation;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class PatchWhiteboardRequest {
+    private Integer apiVersion;
+    private String identifier;
+    private Long sourceWhiteboardVersion;
+    @ToString.Exclude
+    private List<CellOperation> operations;
+}
@@ -0,0 +1,27 @@
+package lambda;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Unlike {@link SetWhiteboardResponse} this doesn't echo the document back. If existingNewestWhiteboardVersion is not
+ * the version the client started from, other edits were made in between and the client should get the whiteboard to
+ * pick them up.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class PatchWhiteboardResponse {
+    private String identifier;
+    private Long requestSourceWhiteboardVersion;
+    private Long existingNewestWhiteboardVersion;
+    private Long currentNewestWhiteboardVersion;
+    private List<String> conflictingCellIds;
+}
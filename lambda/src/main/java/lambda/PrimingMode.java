@@ -0,0 +1,21 @@
+package lambda;
+
+/**
+ * What a handler does during initialisation so that its first request isn't slow. See {@link WhiteboardHandler}.
+ */
+public enum PrimingMode {
+    /**
+     * Nothing, everything is loaded by the first request.
+     */
+    NONE,
+
+    /**
+     * Run the XML, merge, patch, diff, encoding and JSON paths on a small sample whiteboard, without calling AWS.
+     */
+    CODE,
+
+    /**
+     * CODE, and make a cheap DynamoDB request to warm up the client.
+     */
+    FULL,
+}
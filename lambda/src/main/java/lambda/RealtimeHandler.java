@@ -0,0 +1,123 @@
+package lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import dynamodb.SubscriptionDao;
+import dynamodb.WhiteboardSubscriptions;
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Handles the routes of the realtime WebSocket API. A client connects, then subscribes to a whiteboard by sending
+ * {"action": "subscribe", "identifier": "..."}, and from then on gets a {@link WhiteboardUpdate} for every new version
+ * of it, instead of polling /api/get. It should get the whiteboard once after subscribing, so it doesn't miss a version
+ * saved in between.
+ */
+public class RealtimeHandler implements RequestStreamHandler {
+    private static final Logger log = LogManager.getLogger(RealtimeHandler.class);
+
+    public static final String CONNECT_ROUTE = "$connect";
+    public static final String DISCONNECT_ROUTE = "$disconnect";
+    public static final String DEFAULT_ROUTE = "$default";
+    public static final String SUBSCRIBE_ROUTE = "subscribe";
+    public static final String UNSUBSCRIBE_ROUTE = "unsubscribe";
+
+    private static final int OK_STATUS_CODE = 200;
+    private static final int CLIENT_ERROR_STATUS_CODE = 400;
+    private static final int SERVER_ERROR_STATUS_CODE = 500;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectReader stringObjectMapObjectReader =
+            objectMapper.readerFor(new TypeReference<Map<String, Object>>() {});
+    private static final ObjectWriter stringObjectMapObjectWriter =
+            objectMapper.writerFor(new TypeReference<Map<String, Object>>() {});
+    private static final ObjectReader realtimeRequestObjectReader = objectMapper.readerFor(RealtimeRequest.class);
+
+    private final WhiteboardSubscriptions subscriptions;
+
+    public RealtimeHandler() {
+        this(new SubscriptionDao(Clients.getSubscriptionDynamoDbMapper()));
+    }
+
+    public RealtimeHandler(final WhiteboardSubscriptions subscriptions) {
+        this.subscriptions = checkNotNull(subscriptions);
+    }
+
+    @SneakyThrows(IOException.class)
+    @SuppressWarnings("unchecked")
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) {
+        final Map<String, Object> inputMap;
+        try (final BufferedInputStream bis = new BufferedInputStream(input)) {
+            inputMap = stringObjectMapObjectReader.readValue(bis);
+        }
+        final Map<String, Object> requestContext = (Map<String, Object>) inputMap.get("requestContext");
+        final String routeKey = (String) requestContext.get("routeKey");
+        final String connectionId = (String) requestContext.get("connectionId");
+
+        int statusCode;
+        RequestLogging.begin(context, null /*requestIdHeader*/);
+        try {
+            handleEvent(routeKey, connectionId, (String) inputMap.get("body"));
+            statusCode = OK_STATUS_CODE;
+        } catch (final IllegalArgumentException e) {
+            log.info("Bad realtime request: {}", e.getMessage());
+            statusCode = CLIENT_ERROR_STATUS_CODE;
+        } catch (final Exception e) {
+            log.error("Uncaught exception: ", e);
+            statusCode = SERVER_ERROR_STATUS_CODE;
+        } finally {
+            RequestLogging.end();
+        }
+        try (final OutputStream os = output) {
+            stringObjectMapObjectWriter.writeValue(os, ImmutableMap.of("statusCode", statusCode));
+        }
+    }
+
+    /**
+     * @param routeKey The route API Gateway selected, from the action in the body.
+     */
+    public void handleEvent(final String routeKey, final String connectionId, @Nullable final String body) {
+        log.info("handleEvent routeKey {} connectionId {}", routeKey, connectionId);
+        switch (routeKey) {
+            case CONNECT_ROUTE:
+                break;
+            case DISCONNECT_ROUTE:
+                subscriptions.unsubscribeAll(connectionId);
+                break;
+            case SUBSCRIBE_ROUTE:
+                subscriptions.subscribe(getIdentifier(body), connectionId);
+                break;
+            case UNSUBSCRIBE_ROUTE:
+                subscriptions.unsubscribe(getIdentifier(body), connectionId);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unrecognized realtime route: %s", routeKey));
+        }
+    }
+
+    @SneakyThrows(IOException.class)
+    private static String getIdentifier(@Nullable final String body) {
+        Preconditions.checkArgument(body != null, "request has no body");
+        final RealtimeRequest request = realtimeRequestObjectReader.readValue(body);
+        Preconditions.checkArgument(StringUtils.isNotBlank(request.getIdentifier()), "request has no identifier");
+        return request.getIdentifier();
+    }
+}
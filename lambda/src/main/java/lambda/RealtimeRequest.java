@@ -0,0 +1,20 @@
+package lambda;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A message from a client on a realtime connection. API Gateway routes it by its action.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class RealtimeRequest {
+    private String action;
+    private String identifier;
+}
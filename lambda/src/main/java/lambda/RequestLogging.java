@@ -0,0 +1,89 @@
+package lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.ThreadContext;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * What a request's log lines carry, in log4j's thread context, for as long as the request is handled on the thread.
+ *
+ * Each line has the request's ID, so the lines of one request can be found together however they are interleaved with
+ * others. In Lambda this is the invocation's request ID, and otherwise the client's X-Request-Id header, if it is a
+ * plausible ID, or a new one.
+ *
+ * A sample of requests, WHITEBOARD_LOG_SAMPLE_RATE of them, 0.01 by default, are marked to log at DEBUG, which is where
+ * the step by step trace of handling a request is logged. log4j2.xml lets those lines through for marked requests only,
+ * so the rest pay for neither formatting nor shipping them.
+ */
+final class RequestLogging {
+    static final String REQUEST_ID_KEY = "requestId";
+    static final String SAMPLED_KEY = "sampled";
+    static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private static final double DEFAULT_SAMPLE_RATE = 0.01;
+    private static final String REDACTED = "<redacted>";
+    private static final Set<String> redactedHeaders = ImmutableSet.of(
+            "authorization", "cookie", "x-api-key", "x-amz-security-token");
+
+    /**
+     * A client's request ID is only used if it can't be mistaken for anything else in a log line.
+     */
+    private static final Pattern requestIdPattern = Pattern.compile("[A-Za-z0-9._:-]{1,128}");
+
+    private static final double sampleRate = getSampleRate();
+
+    private RequestLogging() {
+    }
+
+    private static double getSampleRate() {
+        final String sampleRate = System.getenv("WHITEBOARD_LOG_SAMPLE_RATE");
+        return StringUtils.isBlank(sampleRate) ? DEFAULT_SAMPLE_RATE : Double.parseDouble(sampleRate);
+    }
+
+    /**
+     * Call {@link #end} when the request is done, since threads are reused.
+     *
+     * @return the request's ID.
+     */
+    static String begin(@Nullable final Context context, @Nullable final String requestIdHeader) {
+        final String requestId;
+        if (context != null && context.getAwsRequestId() != null) {
+            requestId = context.getAwsRequestId();
+        } else if (requestIdHeader != null && requestIdPattern.matcher(requestIdHeader).matches()) {
+            requestId = requestIdHeader;
+        } else {
+            requestId = UUID.randomUUID().toString();
+        }
+        ThreadContext.put(REQUEST_ID_KEY, requestId);
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            ThreadContext.put(SAMPLED_KEY, "true");
+        }
+        return requestId;
+    }
+
+    static void end() {
+        ThreadContext.remove(REQUEST_ID_KEY);
+        ThreadContext.remove(SAMPLED_KEY);
+    }
+
+    /**
+     * @return the headers with the values of those that carry credentials replaced, for logging.
+     */
+    static Map<String, String> redactHeaders(@Nullable final Map<String, String> headers) {
+        final Map<String, String> redacted = new LinkedHashMap<>();
+        if (headers != null) {
+            headers.forEach((name, value) ->
+                    redacted.put(name, redactedHeaders.contains(name.toLowerCase()) ? REDACTED : value));
+        }
+        return redacted;
+    }
+}
@@ -15,5 +15,6 @@ public class SetWhiteboardRequest {
     private Integer apiVersion;
     private String identifier;
     private Long sourceWhiteboardVersion;
+    @ToString.Exclude
     private String content;
 }
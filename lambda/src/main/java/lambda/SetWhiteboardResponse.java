@@ -14,6 +14,7 @@ import lombok.ToString;
 @ToString
 public class SetWhiteboardResponse {
     private String identifier;
+    @ToString.Exclude
     private String content;
     private Long requestSourceWhiteboardVersion;
     private Long existingNewestWhiteboardVersion;
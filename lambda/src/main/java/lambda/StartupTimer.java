@@ -0,0 +1,46 @@
+package lambda;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Times the phases of a cold start, for the startup timing report.
+ */
+class StartupTimer {
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    private long phaseStartNanos = System.nanoTime();
+
+    /**
+     * The first phase is from the JVM starting until this timer was created.
+     */
+    StartupTimer() {
+        phaseMillis.put("jvm", getMillisSinceJvmStart());
+    }
+
+    /**
+     * End the current phase and start the next.
+     */
+    synchronized void phase(final String name) {
+        final long now = System.nanoTime();
+        phaseMillis.put(name, (now - phaseStartNanos) / 1_000_000);
+        phaseStartNanos = now;
+    }
+
+    /**
+     * @return how long ago the JVM started, in milliseconds, or -1 if the OS doesn't say.
+     */
+    static long getMillisSinceJvmStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
+    synchronized String report() {
+        return phaseMillis.entrySet().stream()
+                .map(phase -> String.format("%s %d ms", phase.getKey(), phase.getValue()))
+                .collect(Collectors.joining(", "));
+    }
+}
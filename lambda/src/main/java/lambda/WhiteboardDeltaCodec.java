@@ -0,0 +1,79 @@
+package lambda;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.ImmutableList;
+import dynamodb.WhiteboardDeltas;
+import logic.CellOperation;
+import logic.MxCell;
+import logic.MxGraphDocumentPatcher;
+import logic.XmlUtils;
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A delta is a JSON list of {@link CellOperation}, encoded the same way as the content.
+ */
+public class WhiteboardDeltaCodec implements WhiteboardDeltas {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<List<CellOperation>> operationsTypeReference = new TypeReference<>() {};
+    private static final ObjectReader operationsReader = objectMapper.readerFor(operationsTypeReference);
+    private static final ObjectWriter operationsWriter = objectMapper.writerFor(operationsTypeReference);
+
+    private final XmlUtils xmlUtils;
+    private final MxGraphDocumentPatcher patcher;
+    private final Encoding encoding;
+
+    public WhiteboardDeltaCodec(final XmlUtils xmlUtils,
+                                final MxGraphDocumentPatcher patcher,
+                                final Encoding encoding) {
+        this.xmlUtils = checkNotNull(xmlUtils);
+        this.patcher = checkNotNull(patcher);
+        this.encoding = checkNotNull(encoding);
+    }
+
+    @SneakyThrows(JsonProcessingException.class)
+    @Override
+    public String encode(final List<CellOperation> operations) {
+        return encoding.encode(operationsWriter.writeValueAsString(operations));
+    }
+
+    @SneakyThrows(IOException.class)
+    @Override
+    public List<CellOperation> decode(final String delta) {
+        return operationsReader.readValue(encoding.decode(delta));
+    }
+
+    @Nullable
+    @Override
+    public String diff(final String fromContent, final String toContent) {
+        final List<CellOperation> operations = patcher.diff(decodeCells(fromContent), decodeCells(toContent));
+        return operations == null ? null : encode(operations);
+    }
+
+    /**
+     * The content is decoded and parsed once, and rendered and encoded once, however many deltas there are.
+     */
+    @Override
+    public String apply(final String content, final List<String> deltas) {
+        List<MxCell> cells = decodeCells(content);
+        for (final String delta : deltas) {
+            cells = patcher.patchCells(cells, decode(delta), new HashSet<>());
+        }
+        return encoding.encode(xmlUtils.renderMxGraphModel(cells));
+    }
+
+    private List<MxCell> decodeCells(final String content) {
+        return StringUtils.isBlank(content) ? ImmutableList.of() : xmlUtils.parseMxCells(encoding.decode(content));
+    }
+}
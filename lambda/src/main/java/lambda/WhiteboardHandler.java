@@ -1,30 +1,64 @@
 package lambda;
 
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTableMapper;
-import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Longs;
+import dynamodb.AsyncWhiteboardTable;
+import dynamodb.MapperWhiteboardTable;
+import dynamodb.StorageMode;
+import dynamodb.SubscriptionDao;
+import dynamodb.TimedWhiteboardTable;
 import dynamodb.Whiteboard;
 import dynamodb.WhiteboardDao;
+import dynamodb.WhiteboardTable;
+import exception.WhiteboardNotFoundException;
+import logic.CellOperation;
 import logic.MxGraphDocumentMerger;
+import logic.MxGraphDocumentPatcher;
+import logic.PatchResult;
+import logic.XmlUtils;
 import lombok.SneakyThrows;
+import metrics.Metric;
+import metrics.Metrics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xml.sax.SAXException;
+import tracing.Tracing;
 
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class WhiteboardHandler extends BaseHandler {
     private static final Logger log = LogManager.getLogger(WhiteboardHandler.class);
-    private static final DynamoDBTableMapper<Whiteboard, String, Long> dynamoDbTable =
-            Clients.getWhiteboardDynamoDbMapper();
+    static final StartupTimer startupTimer = new StartupTimer();
+
+    /**
+     * Created on first use, so that hosts outside Lambda that bring their own table don't need AWS to load the class.
+     */
+    private static final Supplier<WhiteboardTable> whiteboardTable = Suppliers.memoize(() -> {
+        final WhiteboardTable table = getWhiteboardTable();
+        startupTimer.phase("clients");
+        return table;
+    });
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -46,46 +80,356 @@ public class WhiteboardHandler extends BaseHandler {
     private static final ObjectWriter setWhiteboardResponseWriter =
             objectMapper.writerFor(setWhiteboardResponseTypeReference);
 
+    private static final TypeReference<PatchWhiteboardRequest> patchWhiteboardRequestTypeReference =
+            new TypeReference<>() {};
+    private static final ObjectReader patchWhiteboardRequestObjectReader =
+            objectMapper.readerFor(patchWhiteboardRequestTypeReference);
+    private static final TypeReference<PatchWhiteboardResponse> patchWhiteboardResponseTypeReference =
+            new TypeReference<>() {};
+    private static final ObjectWriter patchWhiteboardResponseWriter =
+            objectMapper.writerFor(patchWhiteboardResponseTypeReference);
+
+    private static final TypeReference<GetWhiteboardHeadResponse> getWhiteboardHeadResponseTypeReference =
+            new TypeReference<>() {};
+    private static final ObjectWriter getWhiteboardHeadResponseWriter =
+            objectMapper.writerFor(getWhiteboardHeadResponseTypeReference);
+    static {
+        startupTimer.phase("jackson");
+    }
+
+    /**
+     * A year, which is as long as caches keep anything, and immutable so that browsers don't revalidate on reload.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    /**
+     * As long as the DAO caches the newest version for, so that CloudFront takes no more from the Lambda than that.
+     */
+    private static final String HEAD_CACHE_CONTROL = "public, max-age=1";
+
+    /**
+     * A small whiteboard and two edits of it, one moving a cell and one adding a cell, for priming.
+     */
+    private static final String PRIMING_CELL = "<mxCell id=\"%s\" value=\"%s\" style=\"rounded=1;\" parent=\"1\" "
+            + "vertex=\"1\"><mxGeometry x=\"%d\" y=\"10\" width=\"80\" height=\"40\" as=\"geometry\"/></mxCell>";
+    private static final String PRIMING_DOCUMENT =
+            "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>%s</root></mxGraphModel>";
+
     private final WhiteboardDao whiteboardDao;
     private final MxGraphDocumentMerger merger;
+    private final MxGraphDocumentPatcher patcher;
     private final Encoding encoding;
+    private final WhiteboardPublisher publisher;
+    private final CommitLoop commitLoop;
+    @Nullable
+    private final WriteCoalescer<SetWhiteboardRequest, SetWhiteboardResponse> setCoalescer;
 
+    /**
+     * Lambda creates the handler during initialisation, so this is where cold start work goes. STARTUP_PRIMING picks
+     * how much the handler does before its first request, see {@link PrimingMode}, and the time each phase took is
+     * logged.
+     */
     public WhiteboardHandler() {
-        this(new WhiteboardDao(dynamoDbTable), new MxGraphDocumentMerger(), new Encoding());
+        this(whiteboardTable.get());
+        startupTimer.phase("handler");
+        prime(getPrimingMode());
+        // Priming's work isn't a request's.
+        Metrics.get().reset();
+        log.info("startup timing: {}", startupTimer.report());
+    }
+
+    private static PrimingMode getPrimingMode() {
+        final String primingMode = System.getenv("STARTUP_PRIMING");
+        return StringUtils.isBlank(primingMode) ? PrimingMode.FULL : PrimingMode.valueOf(primingMode);
+    }
+
+    /**
+     * Never fails, an unprimed handler still works.
+     */
+    private void prime(final PrimingMode primingMode) {
+        if (primingMode == PrimingMode.NONE) {
+            return;
+        }
+        try {
+            primeCode();
+            startupTimer.phase("priming code");
+            if (primingMode == PrimingMode.FULL) {
+                Clients.prime(whiteboardTable.get());
+                startupTimer.phase("priming DynamoDB");
+            }
+        } catch (final RuntimeException e) {
+            log.warn("priming failed", e);
+        }
+    }
+
+    /**
+     * Everything a get, set or patch does apart from calling DynamoDB, on a small whiteboard, so that the classes are
+     * loaded and initialised and the hottest methods start being compiled.
+     */
+    @SneakyThrows({JsonProcessingException.class, IOException.class})
+    private void primeCode() {
+        final String ancestor = String.format(PRIMING_DOCUMENT, String.format(PRIMING_CELL, "2", "a", 10));
+        final String oldDocument = String.format(PRIMING_DOCUMENT, String.format(PRIMING_CELL, "2", "a", 20));
+        final String newDocument = String.format(PRIMING_DOCUMENT,
+                String.format(PRIMING_CELL, "2", "a", 10) + String.format(PRIMING_CELL, "3", "b", 100));
+        final String merged = merger.merge(ancestor, oldDocument, newDocument);
+        final List<CellOperation> operations = patcher.diff(ancestor, merged);
+        patcher.patch(ancestor, operations == null ? ImmutableList.of() : operations);
+        final String encoded = encoding.encode(merged);
+        encoding.fromStored(encoding.toStored(encoding.encode(encoding.decode(encoded))));
+
+        primeEventJson();
+        getWhiteboardRequestObjectReader.readValue(
+                "{\"apiVersion\": 1, \"identifier\": \"priming\", \"knownWhiteboardVersion\": 1}");
+        getWhiteboardResponseWriter.writeValueAsString(
+                new GetWhiteboardResponse("priming", encoded, 2L, false, operations));
+        setWhiteboardRequestObjectReader.readValue(objectMapper.writeValueAsString(
+                new SetWhiteboardRequest(1, "priming", 1L, encoded)));
+        setWhiteboardResponseWriter.writeValueAsString(new SetWhiteboardResponse("priming", encoded, 1L, 1L, 2L));
+        patchWhiteboardRequestObjectReader.readValue(objectMapper.writeValueAsString(
+                new PatchWhiteboardRequest(1, "priming", 1L, operations)));
+        patchWhiteboardResponseWriter.writeValueAsString(
+                new PatchWhiteboardResponse("priming", 1L, 1L, 2L, ImmutableList.of()));
+    }
+
+    /**
+     * Configured from the environment the same as in Lambda, apart from where whiteboards are stored. For hosts outside
+     * Lambda, see {@link LocalServer}.
+     */
+    public WhiteboardHandler(final WhiteboardTable whiteboardTable) {
+        this(whiteboardTable, new XmlUtils(getXmlParserType()), getEncoding());
+    }
+
+    private WhiteboardHandler(final WhiteboardTable whiteboardTable, final XmlUtils xmlUtils, final Encoding encoding) {
+        this(new WhiteboardDao(new TimedWhiteboardTable(whiteboardTable),
+                        new WhiteboardDeltaCodec(xmlUtils, new MxGraphDocumentPatcher(xmlUtils), encoding),
+                        encoding,
+                        getStorageMode(),
+                        getCacheBytes(),
+                        "true".equals(System.getenv("WHITEBOARD_CACHE_COMPRESSED"))),
+                new MxGraphDocumentMerger(xmlUtils),
+                new MxGraphDocumentPatcher(xmlUtils),
+                encoding,
+                getPublisher(),
+                getCommitLoop(),
+                getSetCoalescer());
+    }
+
+    /**
+     * Set WHITEBOARD_TABLE_ASYNC=false to switch back to the blocking SDK v1 mapper.
+     */
+    private static WhiteboardTable getWhiteboardTable() {
+        return "false".equals(System.getenv("WHITEBOARD_TABLE_ASYNC"))
+                ? new MapperWhiteboardTable(Clients.getWhiteboardDynamoDbMapper())
+                : new AsyncWhiteboardTable(Clients.getDynamoDbAsyncClient(), Clients.getWhiteboardTableName());
+    }
+
+    /**
+     * Set REALTIME_ENDPOINT to push new versions to realtime subscribers, see {@link RealtimeHandler}.
+     */
+    private static WhiteboardPublisher getPublisher() {
+        return StringUtils.isBlank(Clients.getRealtimeEndpoint())
+                ? WhiteboardPublisher.NONE
+                : new ConnectionPublisher(new SubscriptionDao(Clients.getSubscriptionDynamoDbMapper()),
+                        new ApiGatewayConnectionGateway(Clients.getRealtimeManagementApi()));
+    }
+
+    /**
+     * Set WHITEBOARD_COMMIT_ATTEMPTS to how many times a set or patch tries to save before giving up when other writers
+     * keep saving first, and WHITEBOARD_COMMIT_BACKOFF_MS to the longest it backs off for after the first of those.
+     */
+    private static CommitLoop getCommitLoop() {
+        final String attempts = System.getenv("WHITEBOARD_COMMIT_ATTEMPTS");
+        final String backoffMillis = System.getenv("WHITEBOARD_COMMIT_BACKOFF_MS");
+        return new CommitLoop(
+                StringUtils.isBlank(attempts) ? CommitLoop.DEFAULT_MAX_ATTEMPTS : Integer.parseInt(attempts),
+                StringUtils.isBlank(backoffMillis)
+                        ? CommitLoop.DEFAULT_BASE_BACKOFF
+                        : Duration.ofMillis(Long.parseLong(backoffMillis)));
+    }
+
+    /**
+     * Set WHITEBOARD_WRITE_COALESCING_MS to have sets of the same whiteboard that arrive within that many milliseconds
+     * of each other saved together as one new version, see {@link WriteCoalescer}. Blank or 0 saves each on its own.
+     * Only worth it where one process serves concurrent requests.
+     */
+    @Nullable
+    private static WriteCoalescer<SetWhiteboardRequest, SetWhiteboardResponse> getSetCoalescer() {
+        final String windowMillis = System.getenv("WHITEBOARD_WRITE_COALESCING_MS");
+        return StringUtils.isBlank(windowMillis) || Long.parseLong(windowMillis) <= 0
+                ? null
+                : new WriteCoalescer<>(Duration.ofMillis(Long.parseLong(windowMillis)),
+                        WhiteboardHandler::isRequestSpecific);
+    }
+
+    /**
+     * Whether a set of a batch failed because of one request's content, which didn't decode, decompress or parse,
+     * rather than in a way that would fail each request in the batch alike.
+     */
+    private static boolean isRequestSpecific(final Exception e) {
+        return e instanceof IllegalArgumentException
+                || e instanceof DataFormatException
+                || e instanceof SAXException
+                || e instanceof XMLStreamException;
+    }
+
+    /**
+     * Set CONTENT_CODEC=LZ4 to store content with LZ4 rather than as it is sent to clients, and DEFLATE_LEVEL to trade
+     * the size of content compressed for clients against the time it takes.
+     */
+    private static Encoding getEncoding() {
+        final String deflateLevel = System.getenv("DEFLATE_LEVEL");
+        final DeflateCodec deflateCodec = new DeflateCodec(StringUtils.isBlank(deflateLevel)
+                ? Deflater.DEFAULT_COMPRESSION
+                : Integer.parseInt(deflateLevel));
+        final String contentCodec = System.getenv("CONTENT_CODEC");
+        return new Encoding(deflateCodec, "LZ4".equals(contentCodec) ? new Lz4Codec() : deflateCodec);
+    }
+
+    /**
+     * Set WHITEBOARD_STORAGE_MODE=SNAPSHOT_AND_DELTA to store most versions as deltas. Versions are read back however
+     * they were stored, so this can be switched either way.
+     */
+    private static StorageMode getStorageMode() {
+        final String storageMode = System.getenv("WHITEBOARD_STORAGE_MODE");
+        return StringUtils.isBlank(storageMode) ? StorageMode.FULL_COPY : StorageMode.valueOf(storageMode);
+    }
+
+    /**
+     * Set WHITEBOARD_CACHE_MB to how much heap cached whiteboards may take, and WHITEBOARD_CACHE_COMPRESSED=true to
+     * fit more of them in it by keeping them compressed.
+     */
+    private static long getCacheBytes() {
+        final String cacheMegabytes = System.getenv("WHITEBOARD_CACHE_MB");
+        return StringUtils.isBlank(cacheMegabytes)
+                ? WhiteboardDao.getDefaultCacheBytes()
+                : Long.parseLong(cacheMegabytes) * 1024 * 1024;
+    }
+
+    /**
+     * Set XML_PARSER=DOM to switch back to the DOM parser and Transformer.
+     */
+    private static XmlUtils.ParserType getXmlParserType() {
+        final String xmlParser = System.getenv("XML_PARSER");
+        return StringUtils.isBlank(xmlParser) ? XmlUtils.ParserType.STREAMING : XmlUtils.ParserType.valueOf(xmlParser);
     }
 
     public WhiteboardHandler(final WhiteboardDao whiteboardDao,
                              final MxGraphDocumentMerger merger,
-                             final Encoding encoding) {
+                             final MxGraphDocumentPatcher patcher,
+                             final Encoding encoding,
+                             final WhiteboardPublisher publisher,
+                             final CommitLoop commitLoop,
+                             @Nullable final WriteCoalescer<SetWhiteboardRequest, SetWhiteboardResponse> setCoalescer) {
         this.whiteboardDao = checkNotNull(whiteboardDao);
         this.merger = checkNotNull(merger);
+        this.patcher = checkNotNull(patcher);
         this.encoding = checkNotNull(encoding);
+        this.publisher = checkNotNull(publisher);
+        this.commitLoop = checkNotNull(commitLoop);
+        this.setCoalescer = setCoalescer;
+        Metrics.get().setCacheStats(whiteboardDao::getCacheStats);
     }
 
-    @SneakyThrows({JsonProcessingException.class, IOException.class})
     @Override
-    public String handleRequestInternal(ApiType apiType, String input) {
+    protected ObjectReader getRequestReader(final ApiType apiType) {
         switch (apiType) {
             case GetWhiteboard:
-                final GetWhiteboardRequest getWhiteboardRequest = getWhiteboardRequestObjectReader.readValue(input);
-                final GetWhiteboardResponse getWhiteboardResponse = handleGetWhiteboard(getWhiteboardRequest);
-                return getWhiteboardResponseWriter.writeValueAsString(getWhiteboardResponse);
+                return getWhiteboardRequestObjectReader;
+            case SetWhiteboard:
+                return setWhiteboardRequestObjectReader;
+            case PatchWhiteboard:
+                return patchWhiteboardRequestObjectReader;
+            case GetWhiteboardVersion:
+            case GetWhiteboardHead:
+                return null;
+        }
+        throw new IllegalArgumentException(String.valueOf(apiType));
+    }
 
+    @Override
+    protected ObjectWriter getResponseWriter(final ApiType apiType) {
+        switch (apiType) {
+            case GetWhiteboard:
+                return getWhiteboardResponseWriter;
             case SetWhiteboard:
-                final SetWhiteboardRequest setWhiteboardRequest = setWhiteboardRequestObjectReader.readValue(input);
-                final SetWhiteboardResponse setWhiteboardResponse = handleSetWhiteboard(setWhiteboardRequest);
-                return setWhiteboardResponseWriter.writeValueAsString(setWhiteboardResponse);
+                return setWhiteboardResponseWriter;
+            case PatchWhiteboard:
+                return patchWhiteboardResponseWriter;
+            case GetWhiteboardVersion:
+                return getWhiteboardResponseWriter;
+            case GetWhiteboardHead:
+                return getWhiteboardHeadResponseWriter;
+        }
+        throw new IllegalArgumentException(String.valueOf(apiType));
+    }
+
+    @Override
+    public HandlerResponse handleRequestInternal(final ApiType apiType,
+                                                 final Object request,
+                                                 @Nullable final String ifNoneMatch) {
+        try {
+            switch (apiType) {
+                case GetWhiteboard:
+                    final GetWhiteboardResponse getWhiteboardResponse =
+                            handleGetWhiteboard((GetWhiteboardRequest) request, ifNoneMatch);
+                    return new HandlerResponse(
+                            getWhiteboardResponse,
+                            toETag(getWhiteboardResponse.getIdentifier(),
+                                    getWhiteboardResponse.getWhiteboardVersion()),
+                            null /*cacheControl*/);
+
+                case SetWhiteboard:
+                    return HandlerResponse.of(handleSetWhiteboard((SetWhiteboardRequest) request));
+
+                case PatchWhiteboard:
+                    return HandlerResponse.of(handlePatchWhiteboard((PatchWhiteboardRequest) request));
+
+                case GetWhiteboardVersion:
+                    return handleGetWhiteboardVersion(getPathParameter(request, "identifier"),
+                            getPathParameter(request, "version"), ifNoneMatch);
+
+                case GetWhiteboardHead:
+                    return handleGetWhiteboardHead(getPathParameter(request, "identifier"));
+            }
+            return null;
+        } finally {
+            logCacheStats();
         }
-        return null;
     }
 
-    private GetWhiteboardResponse handleGetWhiteboard(final GetWhiteboardRequest request) {
-        log.info("handleGetWhiteboard request: {}", request);
+    /**
+     * Published with every sampled request, since a container's caches only matter for as long as it lives. How long
+     * their loads take is in {@link Metric#WHITEBOARD_LOAD_TIME} and {@link Metric#NEWEST_WHITEBOARD_LOAD_TIME}.
+     */
+    private void logCacheStats() {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        whiteboardDao.getCacheStats().forEach((name, stats) -> log.debug(
+                "cache {} hitRate {} hits {} misses {} evictions {}",
+                name, stats.hitRate(), stats.hitCount(), stats.missCount(), stats.evictionCount()));
+    }
+
+    private GetWhiteboardResponse handleGetWhiteboard(final GetWhiteboardRequest request,
+                                                      @Nullable final String ifNoneMatch) {
+        log.debug("handleGetWhiteboard request: {}, ifNoneMatch: {}", request, ifNoneMatch);
+        final Long knownWhiteboardVersion = request.getKnownWhiteboardVersion() != null
+                ? request.getKnownWhiteboardVersion()
+                : fromETag(request.getIdentifier(), ifNoneMatch);
+        if (knownWhiteboardVersion != null) {
+            final GetWhiteboardResponse changesResponse = handleGetWhiteboardChanges(request.getIdentifier(),
+                    knownWhiteboardVersion,
+                    Boolean.TRUE.equals(request.getAcceptOperations()));
+            if (changesResponse != null) {
+                return changesResponse;
+            }
+        }
+
         final Whiteboard newestWhiteboard = whiteboardDao.getNewestWhiteboard(
                 request.getIdentifier(), false /*consistentRead*/);
         final Whiteboard whiteboardResult;
         if (newestWhiteboard == null) {
-            log.info("Whiteboard does not exist");
+            log.debug("Whiteboard does not exist");
             final Whiteboard newWhiteboard = new Whiteboard();
             newWhiteboard.setIdentifier(request.getIdentifier());
             newWhiteboard.setVersion(1L);
@@ -96,80 +440,328 @@ public class WhiteboardHandler extends BaseHandler {
             whiteboardResult = newestWhiteboard;
         }
 
-        log.info("whiteboard identifier {} version {}",
+        log.debug("whiteboard identifier {} version {}",
                 whiteboardResult.getIdentifier(), whiteboardResult.getVersion());
 
         return new GetWhiteboardResponse(
                 whiteboardResult.getIdentifier(),
                 whiteboardResult.getContent(),
-                whiteboardResult.getVersion());
+                whiteboardResult.getVersion(),
+                false, /*notModified*/
+                null /*operations*/);
+    }
+
+    /**
+     * Only what changed since the version the client has, without loading the newest version's content.
+     *
+     * @return null if the client needs the whole whiteboard after all.
+     */
+    @Nullable
+    private GetWhiteboardResponse handleGetWhiteboardChanges(final String identifier,
+                                                             final long knownWhiteboardVersion,
+                                                             final boolean acceptOperations) {
+        final Whiteboard newestWhiteboard = whiteboardDao.getNewestStoredWhiteboard(
+                identifier, false /*consistentRead*/);
+        if (newestWhiteboard == null) {
+            return null;
+        }
+        // A client can have a newer version than an eventually consistent read, from its own write.
+        if (knownWhiteboardVersion >= newestWhiteboard.getVersion()) {
+            log.debug("handleGetWhiteboard identifier {} not modified since version {}",
+                    identifier, knownWhiteboardVersion);
+            return new GetWhiteboardResponse(identifier,
+                    null, /*content*/
+                    knownWhiteboardVersion,
+                    true, /*notModified*/
+                    null /*operations*/);
+        }
+        if (!acceptOperations) {
+            return null;
+        }
+        final List<CellOperation> operations =
+                whiteboardDao.getOperationsSince(newestWhiteboard, knownWhiteboardVersion);
+        if (operations == null) {
+            return null;
+        }
+        log.debug("handleGetWhiteboard identifier {} {} operations from version {} to version {}",
+                identifier, operations.size(), knownWhiteboardVersion, newestWhiteboard.getVersion());
+        return new GetWhiteboardResponse(identifier,
+                null, /*content*/
+                newestWhiteboard.getVersion(),
+                false, /*notModified*/
+                operations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getPathParameter(final Object pathParameters, final String name) {
+        final String value = pathParameters == null ? null : ((Map<String, String>) pathParameters).get(name);
+        Preconditions.checkArgument(!StringUtils.isBlank(value), "request has no %s", name);
+        return value;
+    }
+
+    /**
+     * One version's content, which never changes once it is saved, so that CloudFront and browsers can keep it for
+     * good. A client fetching the source version of its merge, or opening a whiteboard at the version the head
+     * pointer gave it, then never reaches the Lambda or DynamoDB once someone else has fetched it.
+     */
+    private HandlerResponse handleGetWhiteboardVersion(final String identifier,
+                                                       final String versionString,
+                                                       @Nullable final String ifNoneMatch) {
+        final Long version = Longs.tryParse(versionString);
+        if (version == null || version < 1) {
+            throw new WhiteboardNotFoundException(String.format("no version %s of %s", versionString, identifier));
+        }
+        final String eTag = toETag(identifier, version);
+        if (eTag.equals(ifNoneMatch)) {
+            // Whoever has the ETag has the content, which can't have changed, so there's no need to load it.
+            return new HandlerResponse(null /*body*/, eTag, IMMUTABLE_CACHE_CONTROL);
+        }
+        final Whiteboard whiteboard = whiteboardDao.getWhiteboardAtVersion(identifier, version);
+        if (whiteboard == null) {
+            throw new WhiteboardNotFoundException(String.format("no version %d of %s", version, identifier));
+        }
+        return new HandlerResponse(
+                new GetWhiteboardResponse(
+                        identifier,
+                        whiteboard.getContent(),
+                        version,
+                        false, /*notModified*/
+                        null /*operations*/),
+                eTag,
+                IMMUTABLE_CACHE_CONTROL);
+    }
+
+    /**
+     * Only the newest version's number, from the same one second cache as eventually consistent reads of it, so
+     * however many viewers poll a whiteboard there is about one read of it a second per container, and with
+     * CloudFront's copy one request a second per edge location.
+     */
+    private HandlerResponse handleGetWhiteboardHead(final String identifier) {
+        final Whiteboard newestWhiteboard = whiteboardDao.getNewestStoredWhiteboard(
+                identifier, false /*consistentRead*/);
+        if (newestWhiteboard == null) {
+            throw new WhiteboardNotFoundException(String.format("no whiteboard %s", identifier));
+        }
+        return new HandlerResponse(
+                new GetWhiteboardHeadResponse(identifier, newestWhiteboard.getVersion()),
+                toETag(identifier, newestWhiteboard.getVersion()),
+                HEAD_CACHE_CONTROL);
+    }
+
+    /**
+     * ETags are quoted, and identify the whiteboard as well as the version, since every whiteboard is at the same URL.
+     */
+    private static String toETag(final String identifier, final Long version) {
+        return String.format("\"%s@%d\"", identifier, version);
+    }
+
+    @Nullable
+    private static Long fromETag(final String identifier, @Nullable final String eTag) {
+        final String prefix = String.format("\"%s@", identifier);
+        if (eTag == null || !eTag.startsWith(prefix) || !eTag.endsWith("\"") || eTag.length() <= prefix.length() + 1) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eTag.substring(prefix.length(), eTag.length() - 1));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
     }
 
     private SetWhiteboardResponse handleSetWhiteboard(final SetWhiteboardRequest request) {
-        log.info("handleSetWhiteboard identifier: {}, sourceWhiteboardVersion: {}",
+        log.debug("handleSetWhiteboard identifier: {}, sourceWhiteboardVersion: {}",
                 request.getIdentifier(), request.getSourceWhiteboardVersion());
 
-        SetWhiteboardResponse whiteboardResponse;
-        try {
-            whiteboardResponse = handleSetWhiteboardInner(request, false /*consistentRead */);
-        } catch (final ConditionalCheckFailedException e) {
-            log.info("conditional check failed, will retry with consistent read. {}", e.getMessage());
-            whiteboardResponse = handleSetWhiteboardInner(request, true /*consistentRead */);
+        if (setCoalescer == null) {
+            return commitSetWhiteboardBatch(ImmutableList.of(request)).get(0);
         }
-        return whiteboardResponse;
+        return setCoalescer.write(request.getIdentifier(), request, this::commitSetWhiteboardBatch);
+    }
 
+    /**
+     * Each attempt is traced as a subsegment annotated with the whiteboard's identifier, so that its stages can be
+     * told apart from those of other attempts, and with the version it left newest.
+     *
+     * @param requests Sets of the same whiteboard, in the order they arrived.
+     * @return a response for each request, in the same order.
+     */
+    private List<SetWhiteboardResponse> commitSetWhiteboardBatch(final List<SetWhiteboardRequest> requests) {
+        final String identifier = requests.get(0).getIdentifier();
+        return commitLoop.commit(identifier,
+                requests.size() == 1 ? "set" : "set batch of " + requests.size(),
+                attempt -> {
+                    try (final Tracing.Span span = Tracing.begin("set")
+                            .annotate("identifier", identifier)
+                            .annotate("attempt", attempt.getNumber())
+                            .annotate("requests", requests.size())) {
+                        final List<SetWhiteboardResponse> responses = handleSetWhiteboardInner(requests, attempt);
+                        span.annotate("version", responses.get(0).getCurrentNewestWhiteboardVersion());
+                        return responses;
+                    }
+                });
     }
 
-    private SetWhiteboardResponse handleSetWhiteboardInner(final SetWhiteboardRequest request,
-                                                           final boolean consistentRead) {
-        log.info("handleSetWhiteboardInner identifier: {}, sourceWhiteboardVersion: {}, consistentRead: {}",
-                request.getIdentifier(), request.getSourceWhiteboardVersion(), consistentRead);
+    /**
+     * Each attempt merges onto the newest version again, so a retry after losing to another writer includes their
+     * changes.
+     *
+     * The requests are merged onto the newest version one after another, each with its own source version as the
+     * common ancestor, as if each had been saved in turn, but they are saved as one new version.
+     */
+    private List<SetWhiteboardResponse> handleSetWhiteboardInner(final List<SetWhiteboardRequest> requests,
+                                                                 final CommitLoop.Attempt attempt) {
+        final String identifier = requests.get(0).getIdentifier();
+        final boolean consistentRead = attempt.isConsistentRead();
+        log.debug("handleSetWhiteboardInner identifier: {}, sourceWhiteboardVersions: {}, consistentRead: {}",
+                identifier,
+                requests.stream().map(SetWhiteboardRequest::getSourceWhiteboardVersion).collect(Collectors.toList()),
+                consistentRead);
 
-        final Whiteboard newestWhiteboard = whiteboardDao.getNewestWhiteboard(request.getIdentifier(), consistentRead);
+        // None of the reads depends on another, so they are all in flight at the same time.
+        final CompletableFuture<Whiteboard> newestWhiteboardFuture =
+                whiteboardDao.getNewestWhiteboardAsync(identifier, consistentRead);
+        final List<CompletableFuture<Whiteboard>> sourceWhiteboardFutures = requests.stream()
+                .map(request -> whiteboardDao.getWhiteboardAtVersionAsync(
+                        identifier, request.getSourceWhiteboardVersion()))
+                .collect(Collectors.toList());
+
+        final Whiteboard newestWhiteboard = WhiteboardDao.join(newestWhiteboardFuture);
         Preconditions.checkState(newestWhiteboard != null);
         final Long existingNewestWhiteboardVersion = newestWhiteboard.getVersion();
 
-        final Whiteboard sourceWhiteboard = whiteboardDao.getWhiteboardAtVersion(
+        String mergedContent = newestWhiteboard.getContent();
+        boolean mergedAny = false;
+        for (int i = 0; i < requests.size(); i++) {
+            final SetWhiteboardRequest request = requests.get(i);
+            final Whiteboard sourceWhiteboard = WhiteboardDao.join(sourceWhiteboardFutures.get(i));
+            Preconditions.checkState(sourceWhiteboard != null);
+            log.debug("handleSetWhiteboard newest whiteboard version {}, source whiteboard version {}",
+                    newestWhiteboard.getVersion(), sourceWhiteboard.getVersion());
+
+            if (!mergedAny && Objects.equals(sourceWhiteboard.getVersion(), newestWhiteboard.getVersion())) {
+                // If the source whiteboard we've used is still the newest whiteboard, and no earlier request in the
+                // batch has changed it, we've won and don't need to do any merging. We get to clobber the whiteboard.
+                log.debug("handleSetWhiteboard source whiteboard is already newest, we win and can clobber");
+                Metrics.get().count(Metric.CLOBBERS);
+                mergedContent = request.getContent();
+            } else if (StringUtils.isBlank(sourceWhiteboard.getContent())) {
+                // Source whiteboard is not the newest version but we can't get the source whiteboard content for some
+                // reason. This is unusual, but we are forced to clobber.
+                log.warn("handleSetWhiteboard source whiteboard is not newest but content is not available!");
+                Metrics.get().count(Metric.LOSSY_CLOBBERS);
+                mergedContent = request.getContent();
+            } else {
+                // The source whiteboard we used is no longer the newest version. Someone else made edits while this
+                // request was in progress, or an earlier request in the batch did. If we clobber we will upset them,
+                // despite our write being newer. Let's try merging and conflict resolution!
+                log.debug("handleSetWhiteboard source whiteboard is no longer newest whiteboard, requires merging");
+                final String decodedCommonAncestor = encoding.decode(sourceWhiteboard.getContent());
+                final String decodedOldContent = encoding.decode(mergedContent);
+                final String decodedNewContent = encoding.decode(request.getContent());
+                final String decodedMergedContent = attempt.timeMerge(() -> merger.merge(
+                        decodedCommonAncestor, decodedOldContent, decodedNewContent));
+                log.debug("handleSetWhiteboard merge statistics {}", merger.getStatistics());
+                mergedContent = encoding.encode(decodedMergedContent);
+            }
+            mergedAny = true;
+        }
+
+        final Whiteboard savedWhiteboard = newWhiteboardVersion(newestWhiteboard, mergedContent);
+        whiteboardDao.saveNewWhiteboardVersion(newestWhiteboard, savedWhiteboard, null /*operations*/);
+        log.debug("whiteboard version {}", savedWhiteboard.getVersion());
+        publisher.publish(savedWhiteboard.getIdentifier(), newestWhiteboard.getVersion(), savedWhiteboard.getVersion(),
+                () -> patcher.diff(decodeContent(newestWhiteboard), decodeContent(savedWhiteboard)));
+
+        return requests.stream()
+                .map(request -> new SetWhiteboardResponse(
+                        savedWhiteboard.getIdentifier(),
+                        savedWhiteboard.getContent(),
+                        request.getSourceWhiteboardVersion(), /*requestSourceWhiteboardVersion*/
+                        existingNewestWhiteboardVersion, /*existingNewestWhiteboardVersion*/
+                        savedWhiteboard.getVersion() /*currentNewestWhiteboardVersion*/))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    private PatchWhiteboardResponse handlePatchWhiteboard(final PatchWhiteboardRequest request) {
+        log.debug("handlePatchWhiteboard identifier: {}, sourceWhiteboardVersion: {}",
                 request.getIdentifier(), request.getSourceWhiteboardVersion());
-        Preconditions.checkState(sourceWhiteboard != null);
-        log.info("handleSetWhiteboard newest whiteboard version {}, source whiteboard version {}",
-                newestWhiteboard.getVersion(), sourceWhiteboard.getVersion());
-
-        final String mergedContent;
-        if (Objects.equals(sourceWhiteboard.getVersion(), newestWhiteboard.getVersion())) {
-            // If the source whiteboard we've used is still the newest whiteboard, we've won and don't need to do any
-            // merging. We get to clobber the whiteboard.
-            log.info("handleSetWhiteboard source whiteboard is already newest, we win and can clobber");
-            mergedContent = request.getContent();
-        } else if (StringUtils.isBlank(sourceWhiteboard.getContent())) {
-            // Source whiteboard is not the newest version but we can't get the source whiteboard content for some
-            // reason. This is unusual, but we are forced to clobber.
-            log.warn("handleSetWhiteboard source whiteboard is not newest but content is not available!");
-            mergedContent = request.getContent();
-        } else {
-            // The source whiteboard we used is no longer the newest version. Someone else made edits while this request
-            // was in progress. If we clobber we will upset them, despite our write being newer. Let's try merging and
-            // conflict resolution!
-            log.info("handleSetWhiteboard source whiteboard is no longer newest whiteboard, requires merging");
-            final String decodedCommonAncestor = encoding.decode(sourceWhiteboard.getContent());
-            final String decodedOldContent = encoding.decode(newestWhiteboard.getContent());
-            final String decodedNewContent = encoding.decode(request.getContent());
-            final String decodedMergedContent = merger.merge(
-                    decodedCommonAncestor, decodedOldContent, decodedNewContent);
-            mergedContent = encoding.encode(decodedMergedContent);
-        }
-
-        newestWhiteboard.setContent(mergedContent);
-        newestWhiteboard.setVersion(newestWhiteboard.getVersion() + 1);
-        whiteboardDao.saveNewWhiteboardVersion(newestWhiteboard);
-        log.info("whiteboard version {}", newestWhiteboard.getVersion());
-
-        return new SetWhiteboardResponse(
-                newestWhiteboard.getIdentifier(),
-                newestWhiteboard.getContent(),
+        Preconditions.checkArgument(request.getOperations() != null, "request has no operations");
+
+        return commitLoop.commit(request.getIdentifier(), "patch",
+                attempt -> {
+                    try (final Tracing.Span span = Tracing.begin("patch")
+                            .annotate("identifier", request.getIdentifier())
+                            .annotate("attempt", attempt.getNumber())) {
+                        final PatchWhiteboardResponse response = handlePatchWhiteboardInner(request, attempt);
+                        span.annotate("version", response.getCurrentNewestWhiteboardVersion())
+                                .annotate("conflicts", response.getConflictingCellIds().size());
+                        return response;
+                    }
+                });
+    }
+
+    /**
+     * The operations are applied straight onto the newest version, so unlike a set there is no need to fetch the
+     * source version or decode the client's whole document.
+     */
+    private PatchWhiteboardResponse handlePatchWhiteboardInner(final PatchWhiteboardRequest request,
+                                                               final CommitLoop.Attempt attempt) {
+        final boolean consistentRead = attempt.isConsistentRead();
+        log.debug("handlePatchWhiteboardInner identifier: {}, sourceWhiteboardVersion: {}, operations: {}, "
+                        + "consistentRead: {}",
+                request.getIdentifier(), request.getSourceWhiteboardVersion(), request.getOperations().size(),
+                consistentRead);
+
+        final Whiteboard newestWhiteboard = whiteboardDao.getNewestWhiteboard(request.getIdentifier(), consistentRead);
+        Preconditions.checkState(newestWhiteboard != null);
+        final Long existingNewestWhiteboardVersion = newestWhiteboard.getVersion();
+
+        if (request.getOperations().isEmpty()) {
+            log.debug("handlePatchWhiteboard no operations, nothing to save");
+            return new PatchWhiteboardResponse(
+                    newestWhiteboard.getIdentifier(),
+                    request.getSourceWhiteboardVersion(), /*requestSourceWhiteboardVersion*/
+                    existingNewestWhiteboardVersion, /*existingNewestWhiteboardVersion*/
+                    existingNewestWhiteboardVersion, /*currentNewestWhiteboardVersion*/
+                    ImmutableList.of() /*conflictingCellIds*/
+            );
+        }
+
+        final PatchResult patchResult = attempt.timeMerge(
+                () -> patcher.patch(decodeContent(newestWhiteboard), request.getOperations()));
+        if (!patchResult.getConflictingIds().isEmpty()) {
+            log.info("handlePatchWhiteboard conflicting cell IDs {}", patchResult.getConflictingIds());
+        }
+
+        final Whiteboard savedWhiteboard = newWhiteboardVersion(
+                newestWhiteboard, encoding.encode(patchResult.getDocument()));
+        whiteboardDao.saveNewWhiteboardVersion(newestWhiteboard, savedWhiteboard, request.getOperations());
+        log.debug("whiteboard version {}", savedWhiteboard.getVersion());
+        // Applied to the same version, the client's operations give every subscriber the same result they gave here.
+        publisher.publish(savedWhiteboard.getIdentifier(), newestWhiteboard.getVersion(), savedWhiteboard.getVersion(),
+                request::getOperations);
+
+        return new PatchWhiteboardResponse(
+                savedWhiteboard.getIdentifier(),
                 request.getSourceWhiteboardVersion(), /*requestSourceWhiteboardVersion*/
                 existingNewestWhiteboardVersion, /*existingNewestWhiteboardVersion*/
-                newestWhiteboard.getVersion() /*currentNewestWhiteboardVersion*/
+                savedWhiteboard.getVersion(), /*currentNewestWhiteboardVersion*/
+                ImmutableList.copyOf(patchResult.getConflictingIds()) /*conflictingCellIds*/
         );
     }
+
+    private String decodeContent(final Whiteboard whiteboard) {
+        return StringUtils.isBlank(whiteboard.getContent()) ? "" : encoding.decode(whiteboard.getContent());
+    }
+
+    /**
+     * A new object rather than bumping the version of the newest one, which the DAO has cached under its own version.
+     */
+    private static Whiteboard newWhiteboardVersion(final Whiteboard newestWhiteboard, final String content) {
+        final Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setIdentifier(newestWhiteboard.getIdentifier());
+        whiteboard.setVersion(newestWhiteboard.getVersion() + 1);
+        whiteboard.setContent(content);
+        return whiteboard;
+    }
 }
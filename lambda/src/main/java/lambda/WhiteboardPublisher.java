@@ -0,0 +1,24 @@
+package lambda;
+
+import logic.CellOperation;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Tells realtime subscribers of a whiteboard about a new version of it.
+ */
+public interface WhiteboardPublisher {
+    WhiteboardPublisher NONE = (identifier, previousVersion, version, operations) -> { };
+
+    /**
+     * Never throws, a saved version is saved whether or not anyone heard about it.
+     *
+     * @param operations Gives the cell operations from the previous version to this one, or null if there are none.
+     *                   Only called if anyone is subscribed.
+     */
+    void publish(String identifier,
+                 Long previousVersion,
+                 Long version,
+                 Supplier<List<CellOperation>> operations);
+}
@@ -0,0 +1,28 @@
+package lambda;
+
+import logic.CellOperation;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Pushed to realtime subscribers of a whiteboard when a new version of it is saved. A client that has
+ * previousVersion applies the operations to get to version. A client that has some other version, or an update
+ * without operations, gets the whiteboard instead.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class WhiteboardUpdate {
+    private String identifier;
+    private Long previousVersion;
+    private Long version;
+    @ToString.Exclude
+    private List<CellOperation> operations;
+}
@@ -0,0 +1,171 @@
+package lambda;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Striped;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Per-whiteboard write coalescing: writes to the same whiteboard that arrive within a short window of each other are
+ * committed together, as one batch, instead of each committing on its own and all but one losing the race.
+ *
+ * The first write to arrive for a whiteboard opens a batch and becomes its writer. It waits out the window, then for
+ * the whiteboard's previous batch to finish committing, so there is a single writer per whiteboard in this process.
+ * Then it closes the batch, with every write that arrived in the meantime, and commits it. Writes that arrive after
+ * that open the next batch.
+ *
+ * This only helps where one process serves concurrent requests. A Lambda container serves one at a time, so there
+ * every batch is a batch of one that waited out the window for nothing.
+ *
+ * @param <T> A write.
+ * @param <R> The result of a write.
+ */
+public class WriteCoalescer<T, R> {
+    private static final Logger log = LogManager.getLogger(WriteCoalescer.class);
+
+    private final Duration window;
+    private final Predicate<? super Exception> isWriteSpecific;
+    private final Map<String, List<PendingWrite<T, R>>> openBatches = new HashMap<>();
+    private final Striped<Lock> writerLocks = Striped.lock(64);
+
+    /**
+     * @param window How long a batch stays open for more writes.
+     * @param isWriteSpecific Whether a failure could be down to one write in the batch, such as its content being bad,
+     *                        in which case the batch's writes are committed one at a time, so that one bad write
+     *                        can't fail the others. Any other failure, such as losing every attempt to commit, would
+     *                        fail each write alike, so it fails the whole batch.
+     */
+    public WriteCoalescer(final Duration window, final Predicate<? super Exception> isWriteSpecific) {
+        this.window = checkNotNull(window);
+        this.isWriteSpecific = checkNotNull(isWriteSpecific);
+    }
+
+    private static final class PendingWrite<T, R> {
+        private final T write;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private PendingWrite(final T write) {
+            this.write = write;
+        }
+    }
+
+    /**
+     * @param identifier The whiteboard written to.
+     * @param write The write.
+     * @param commit Commits a batch of writes to the whiteboard, in the order they arrived, and returns their results
+     *               in the same order.
+     * @return the write's result, once its batch is committed.
+     */
+    public R write(final String identifier, final T write, final Function<List<T>, List<R>> commit) {
+        final PendingWrite<T, R> pendingWrite = new PendingWrite<>(write);
+        final boolean writer;
+        synchronized (openBatches) {
+            final List<PendingWrite<T, R>> openBatch = openBatches.get(identifier);
+            writer = openBatch == null;
+            if (writer) {
+                openBatches.put(identifier, new ArrayList<>(ImmutableList.of(pendingWrite)));
+            } else {
+                openBatch.add(pendingWrite);
+            }
+        }
+        if (writer) {
+            writeBatch(identifier, commit);
+        }
+        try {
+            return pendingWrite.result.join();
+        } catch (final CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Whatever happens, interrupted in the window or failing to commit, the batch is closed and every write in it is
+     * completed, so that no write waits on it forever and the next write to the whiteboard opens a new batch.
+     */
+    private void writeBatch(final String identifier, final Function<List<T>, List<R>> commit) {
+        List<PendingWrite<T, R>> batch = null;
+        try {
+            sleep(window);
+            final Lock writerLock = writerLocks.get(identifier);
+            writerLock.lock();
+            try {
+                batch = closeBatch(identifier);
+                commitBatch(identifier, batch, commit);
+            } finally {
+                writerLock.unlock();
+            }
+        } catch (final Throwable t) {
+            if (batch == null) {
+                batch = closeBatch(identifier);
+            }
+            for (final PendingWrite<T, R> pendingWrite : batch) {
+                pendingWrite.result.completeExceptionally(t);
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Only the batch's writer closes it, so it is still open until then.
+     */
+    private List<PendingWrite<T, R>> closeBatch(final String identifier) {
+        synchronized (openBatches) {
+            return checkNotNull(openBatches.remove(identifier));
+        }
+    }
+
+    private void commitBatch(final String identifier,
+                             final List<PendingWrite<T, R>> batch,
+                             final Function<List<T>, List<R>> commit) {
+        log.debug("write identifier {} committing batch of {}", identifier, batch.size());
+        try {
+            complete(batch, commit.apply(ImmutableList.copyOf(batch.stream().map(w -> w.write).iterator())));
+            return;
+        } catch (final Exception e) {
+            if (batch.size() == 1 || !isWriteSpecific.test(e)) {
+                for (final PendingWrite<T, R> pendingWrite : batch) {
+                    pendingWrite.result.completeExceptionally(e);
+                }
+                return;
+            }
+            log.warn("write identifier {} batch of {} failed, committing its writes one at a time",
+                    identifier, batch.size(), e);
+        }
+        for (final PendingWrite<T, R> pendingWrite : batch) {
+            try {
+                complete(ImmutableList.of(pendingWrite), commit.apply(ImmutableList.of(pendingWrite.write)));
+            } catch (final Exception e) {
+                pendingWrite.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static <T, R> void complete(final List<PendingWrite<T, R>> batch, final List<R> results) {
+        checkState(results.size() == batch.size(), "%s results for %s writes", results.size(), batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results.get(i));
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static void sleep(final Duration duration) {
+        Thread.sleep(duration.toMillis());
+    }
+}
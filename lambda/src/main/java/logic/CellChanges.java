@@ -0,0 +1,115 @@
+package logic;
+
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The cells one side of a three-way merge changed relative to the common ancestor.
+ *
+ * Cells are matched by ID so this is linear in the number of cells, apart from finding moved cells which is
+ * O(n log n). A cell has "moved" if its z-order relative to the other surviving cells changed; we find the smallest
+ * such set by keeping the longest run of cells that are still in ancestor order.
+ */
+final class CellChanges {
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Set<String> modified;
+    private final Set<String> moved;
+
+    CellChanges(final CellIndex ancestor, final CellIndex side) {
+        this.added = new HashSet<>();
+        this.removed = new HashSet<>();
+        this.modified = new HashSet<>();
+
+        final int[] ancestorPositions = new int[side.size()];
+        int commonCount = 0;
+        for (int i = 0; i < side.size(); i++) {
+            final String id = side.getId(i);
+            final int ancestorPosition = ancestor.getPosition(id);
+            if (ancestorPosition < 0) {
+                added.add(id);
+                continue;
+            }
+            if (!ancestor.getCell(ancestorPosition).equals(side.getCell(i))) {
+                modified.add(id);
+            }
+            ancestorPositions[commonCount++] = ancestorPosition;
+        }
+        for (int i = 0; i < ancestor.size(); i++) {
+            final String id = ancestor.getId(i);
+            if (!side.contains(id)) {
+                removed.add(id);
+            }
+        }
+        this.moved = findMoved(ancestor, Arrays.copyOf(ancestorPositions, commonCount));
+    }
+
+    /**
+     * Cells that are not on a longest increasing subsequence of ancestor positions have moved.
+     */
+    private static Set<String> findMoved(final CellIndex ancestor, final int[] ancestorPositions) {
+        final int n = ancestorPositions.length;
+        final int[] tails = new int[n];
+        final int[] predecessors = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (ancestorPositions[tails[middle]] < ancestorPositions[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        final boolean[] inOrder = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            inOrder[i] = true;
+        }
+        final Set<String> result = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (!inOrder[i]) {
+                result.add(ancestor.getId(ancestorPositions[i]));
+            }
+        }
+        return result;
+    }
+
+    Set<String> getAdded() {
+        return added;
+    }
+
+    Set<String> getRemoved() {
+        return removed;
+    }
+
+    Set<String> getModified() {
+        return modified;
+    }
+
+    Set<String> getMoved() {
+        return moved;
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty() && moved.isEmpty();
+    }
+
+    /**
+     * @return every cell ID this side touched.
+     */
+    Set<String> getChangedIds() {
+        return Sets.union(Sets.union(added, removed), Sets.union(modified, moved));
+    }
+}
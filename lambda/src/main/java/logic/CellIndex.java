@@ -0,0 +1,67 @@
+package logic;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * mxCells of one document, indexed by their unique ID. Building the index is linear in the number of cells and
+ * lookups are constant time, which is what lets {@link IdKeyedNodeMerger} avoid a quadratic diff.
+ */
+final class CellIndex {
+    private final List<MxCell> cells;
+    private final Map<String, Integer> positionById;
+    private final boolean hasDuplicateIds;
+
+    CellIndex(final List<MxCell> cells) {
+        this.cells = cells;
+        this.positionById = new HashMap<>(cells.size() * 2);
+        boolean duplicates = false;
+        for (int i = 0; i < cells.size(); i++) {
+            if (positionById.putIfAbsent(cells.get(i).getId(), i) != null) {
+                duplicates = true;
+            }
+        }
+        this.hasDuplicateIds = duplicates;
+    }
+
+    int size() {
+        return cells.size();
+    }
+
+    String getId(final int position) {
+        return cells.get(position).getId();
+    }
+
+    MxCell getCell(final int position) {
+        return cells.get(position);
+    }
+
+    List<MxCell> getCells() {
+        return cells;
+    }
+
+    boolean contains(final String id) {
+        return positionById.containsKey(id);
+    }
+
+    /**
+     * @return position of the cell in the document, or -1 if the document does not contain it.
+     */
+    int getPosition(final String id) {
+        final Integer position = positionById.get(id);
+        return position == null ? -1 : position;
+    }
+
+    MxCell getCell(final String id) {
+        final Integer position = positionById.get(id);
+        return position == null ? null : cells.get(position);
+    }
+
+    /**
+     * mxGraph promises unique IDs, but we can't merge by ID if a client breaks that promise.
+     */
+    boolean hasDuplicateIds() {
+        return hasDuplicateIds;
+    }
+}
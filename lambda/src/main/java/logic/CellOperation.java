@@ -0,0 +1,36 @@
+package logic;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One cell-level edit sent by a client, so that it doesn't have to send the whole document for a small change.
+ *
+ * - INSERT: add {@code cell}, directly above the cell {@code afterId} in z-order, or on top if {@code afterId} is null
+ *   or not on the board.
+ * - UPDATE: replace the cell with ID {@code id} by {@code cell}, keeping its place in z-order.
+ * - DELETE: remove the cell with ID {@code id}. {@code cell} and {@code afterId} are ignored.
+ *
+ * {@code cell} is the XML of a single mxCell element, and its id attribute must equal {@code id}.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class CellOperation {
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE,
+    }
+
+    private Type type;
+    private String id;
+    @ToString.Exclude
+    private String cell;
+    private String afterId;
+}
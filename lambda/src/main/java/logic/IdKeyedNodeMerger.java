@@ -0,0 +1,149 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Three-way merge that matches mxCell nodes by their unique ID instead of diff'ing the node lists.
+ *
+ * Each side is indexed into hash maps and compared against the common ancestor to find the added, removed, modified
+ * and moved cells. This is linear in the number of cells (moves are O(n log n)), compared to the quadratic Myers
+ * diff in {@link MyersNodeMerger}.
+ *
+ * The new document is the base of the merge, so it wins z-order ties. The changes the old document made are then
+ * replayed on top of it: removed cells are dropped, modified cells are replaced, and added or moved cells are
+ * inserted after the cell that preceded them in the old document. If the old and new documents added cells at the
+ * same place, the old document's cells come first, which is what the Myers merge did.
+ *
+ * Conflicts are resolved per cell. Only a cell that both sides changed in different ways is a conflict, and for
+ * that cell the new document wins (last writer wins). Every other change from both sides is kept.
+ */
+class IdKeyedNodeMerger implements NodeMerger {
+    private static final Logger log = LogManager.getLogger(IdKeyedNodeMerger.class);
+
+    @Override
+    public NodeMergeResult mergeNodes(final List<MxCell> ancestorNodes,
+                                      final List<MxCell> oldNodes,
+                                      final List<MxCell> newNodes) {
+        log.debug("mergeNodes entry");
+        final CellIndex ancestor = new CellIndex(ancestorNodes);
+        final CellIndex oldIndex = new CellIndex(oldNodes);
+        final CellIndex newIndex = new CellIndex(newNodes);
+        if (ancestor.hasDuplicateIds() || oldIndex.hasDuplicateIds() || newIndex.hasDuplicateIds()) {
+            log.warn("mergeNodes duplicate cell IDs, new nodes will clobber old nodes");
+            return new NodeMergeResult(ImmutableList.copyOf(newNodes), ImmutableSet.of(), 0, true /*clobbered*/);
+        }
+
+        final CellChanges oldChanges = new CellChanges(ancestor, oldIndex);
+        if (oldChanges.isEmpty()) {
+            log.debug("mergeNodes old document made no changes, new nodes win");
+            return new NodeMergeResult(ImmutableList.copyOf(newNodes), ImmutableSet.of(), 0, false /*clobbered*/);
+        }
+        final CellChanges newChanges = new CellChanges(ancestor, newIndex);
+        return applyChanges(oldIndex, oldChanges, newIndex, newChanges);
+    }
+
+    /**
+     * Replay the changes the old document made on top of the new document, skipping the cells where they conflict
+     * with the new document's changes.
+     */
+    private NodeMergeResult applyChanges(final CellIndex oldIndex,
+                                         final CellChanges oldChanges,
+                                         final CellIndex newIndex,
+                                         final CellChanges newChanges) {
+        final Set<String> conflictingIds = new HashSet<>();
+
+        // Cells to leave out of the new document, either because the old document removed them or because the old
+        // document moved them and they will be inserted again at their old position.
+        final Set<String> dropped = new HashSet<>();
+        for (final String id : oldChanges.getRemoved()) {
+            if (newChanges.getModified().contains(id) || newChanges.getMoved().contains(id)) {
+                conflictingIds.add(id);
+            } else {
+                dropped.add(id);
+            }
+        }
+
+        // Cells where the old document's content wins.
+        final Set<String> replaced = new HashSet<>();
+        for (final String id : oldChanges.getModified()) {
+            if (!newIndex.contains(id)) {
+                conflictingIds.add(id);
+            } else if (!newChanges.getModified().contains(id)) {
+                replaced.add(id);
+            } else if (!oldIndex.getCell(id).equals(newIndex.getCell(id))) {
+                conflictingIds.add(id);
+            }
+        }
+
+        // Cells where the old document's z-order wins.
+        final Set<String> relocated = new HashSet<>();
+        for (final String id : oldChanges.getMoved()) {
+            if (!newIndex.contains(id) || newChanges.getMoved().contains(id)) {
+                conflictingIds.add(id);
+            } else {
+                relocated.add(id);
+                dropped.add(id);
+            }
+        }
+        for (final String id : oldChanges.getAdded()) {
+            if (!newIndex.contains(id)) {
+                relocated.add(id);
+            } else if (!oldIndex.getCell(id).equals(newIndex.getCell(id))) {
+                conflictingIds.add(id);
+            }
+        }
+
+        // Work out where the old document wants to put the cells it added or moved. Each goes after the nearest
+        // preceding cell that is kept from the new document.
+        final List<MxCell> insertsAtStart = new ArrayList<>();
+        final Map<String, List<MxCell>> insertsAfter = new HashMap<>();
+        String anchor = null;
+        for (int i = 0; i < oldIndex.size(); i++) {
+            final String id = oldIndex.getId(i);
+            if (relocated.contains(id)) {
+                final List<MxCell> inserts = anchor == null
+                        ? insertsAtStart
+                        : insertsAfter.computeIfAbsent(anchor, key -> new ArrayList<>());
+                inserts.add(replaced.contains(id) || !newIndex.contains(id) ? oldIndex.getCell(i) : newIndex.getCell(id));
+            } else if (newIndex.contains(id) && !dropped.contains(id)) {
+                anchor = id;
+            }
+        }
+
+        final List<MxCell> result = new ArrayList<>(newIndex.size() + oldChanges.getAdded().size());
+        result.addAll(insertsAtStart);
+        for (int i = 0; i < newIndex.size(); i++) {
+            final String id = newIndex.getId(i);
+            if (dropped.contains(id)) {
+                continue;
+            }
+            result.add(replaced.contains(id) ? oldIndex.getCell(id) : newIndex.getCell(i));
+            final List<MxCell> inserts = insertsAfter.get(id);
+            if (inserts != null) {
+                result.addAll(inserts);
+            }
+        }
+
+        final int keptOldChangeCount = (int) oldChanges.getChangedIds().stream()
+                .filter(id -> !conflictingIds.contains(id))
+                .count();
+        if (conflictingIds.isEmpty()) {
+            log.debug("mergeNodes no overlap in IDs, three-way merge complete");
+        } else {
+            log.debug("mergeNodes {} conflicting cells resolved in favour of new nodes, kept {} old changes",
+                    conflictingIds.size(), keptOldChangeCount);
+        }
+        return new NodeMergeResult(ImmutableList.copyOf(result), ImmutableSet.copyOf(conflictingIds),
+                keptOldChangeCount, false /*clobbered*/);
+    }
+}
@@ -0,0 +1,62 @@
+package logic;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of merge outcomes for this container.
+ *
+ * Before conflicts were resolved per cell, a single overlapping cell meant the whole old document's changes were
+ * clobbered, and each of those lost edits came back as another client retry. {@link #getKeptOldChangesDespiteConflicts}
+ * counts the cell changes that we now keep in exactly that situation.
+ */
+public class MergeStatistics {
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder clobberedMerges = new LongAdder();
+    private final LongAdder mergesWithConflicts = new LongAdder();
+    private final LongAdder conflictingCells = new LongAdder();
+    private final LongAdder keptOldChangesDespiteConflicts = new LongAdder();
+
+    void record(final NodeMergeResult result) {
+        merges.increment();
+        if (result.isClobbered()) {
+            clobberedMerges.increment();
+        } else if (!result.getConflictingIds().isEmpty()) {
+            mergesWithConflicts.increment();
+            conflictingCells.add(result.getConflictingIds().size());
+            keptOldChangesDespiteConflicts.add(result.getKeptOldChangeCount());
+        }
+    }
+
+    public long getMerges() {
+        return merges.sum();
+    }
+
+    public long getClobberedMerges() {
+        return clobberedMerges.sum();
+    }
+
+    public long getMergesWithConflicts() {
+        return mergesWithConflicts.sum();
+    }
+
+    public long getConflictingCells() {
+        return conflictingCells.sum();
+    }
+
+    public long getKeptOldChangesDespiteConflicts() {
+        return keptOldChangesDespiteConflicts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("merges", getMerges())
+                .add("clobberedMerges", getClobberedMerges())
+                .add("mergesWithConflicts", getMergesWithConflicts())
+                .add("conflictingCells", getConflictingCells())
+                .add("keptOldChangesDespiteConflicts", getKeptOldChangesDespiteConflicts())
+                .toString();
+    }
+}
@@ -0,0 +1,168 @@
+package logic;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A compact, immutable mxCell, without a backing DOM.
+ *
+ * The fields the merge cares about are pulled out when the cell is read: the ID, the parent, source and target
+ * references, the value, and the style and geometry in parsed form. A 128-bit hash of the cell's whole content is also
+ * computed once, up front, and {@link #equals} and {@link #hashCode} only look at it. That makes comparing two cells
+ * O(1) whether or not they are equal, which matters because most cells on a board are unchanged between versions.
+ * Two different cells would have to collide in all 128 bits to be considered equal.
+ *
+ * Note that part of the mxGraph contract seems to be that all the cells have a unique ID.
+ */
+public final class MxCell {
+    private static final HashFunction CONTENT_HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final XmlElement element;
+    private final String id;
+    @Nullable
+    private final String parent;
+    @Nullable
+    private final String source;
+    @Nullable
+    private final String target;
+    @Nullable
+    private final String value;
+    @Nullable
+    private final MxStyle style;
+    @Nullable
+    private final MxGeometry geometry;
+    private final long contentHash;
+    private final long contentHashHigh;
+
+    /**
+     * @param element The mxCell element.
+     * @throws IllegalArgumentException if the element has no id attribute.
+     */
+    public MxCell(final XmlElement element) {
+        this.element = checkNotNull(element);
+        this.id = element.getAttribute("id");
+        if (id == null) {
+            throw new IllegalArgumentException("mxCell without an id attribute");
+        }
+        this.parent = element.getAttribute("parent");
+        this.source = element.getAttribute("source");
+        this.target = element.getAttribute("target");
+        this.value = element.getAttribute("value");
+        final String rawStyle = element.getAttribute("style");
+        this.style = rawStyle == null ? null : MxStyle.parse(rawStyle);
+        this.geometry = element.getChildren().stream()
+                .filter(child -> "mxGeometry".equals(child.getName()))
+                .findFirst()
+                .map(MxGeometry::new)
+                .orElse(null);
+        final Hasher hasher = CONTENT_HASH_FUNCTION.newHasher();
+        putElement(hasher, element);
+        final ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+        this.contentHash = hash.getLong();
+        this.contentHashHigh = hash.getLong();
+    }
+
+    private static void putElement(final Hasher hasher, final XmlElement element) {
+        putString(hasher, element.getName());
+        hasher.putInt(element.getAttributes().size());
+        for (final Map.Entry<String, String> attribute : element.getAttributes().entrySet()) {
+            putString(hasher, attribute.getKey());
+            putString(hasher, attribute.getValue());
+        }
+        hasher.putInt(element.getChildren().size());
+        for (final XmlElement child : element.getChildren()) {
+            putElement(hasher, child);
+        }
+        if (element.getText() != null) {
+            putString(hasher, element.getText());
+        }
+    }
+
+    /**
+     * Length-prefixed, so that e.g. the attributes a="bc" and ab="c" hash differently.
+     */
+    private static void putString(final Hasher hasher, final String string) {
+        hasher.putInt(string.length());
+        hasher.putString(string, StandardCharsets.UTF_8);
+    }
+
+    public XmlElement getElement() {
+        return element;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getParent() {
+        return parent;
+    }
+
+    @Nullable
+    public String getSource() {
+        return source;
+    }
+
+    @Nullable
+    public String getTarget() {
+        return target;
+    }
+
+    @Nullable
+    public String getValue() {
+        return value;
+    }
+
+    @Nullable
+    public MxStyle getStyle() {
+        return style;
+    }
+
+    @Nullable
+    public MxGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return the low 64 bits of the content hash.
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MxCell)) {
+            return false;
+        }
+        final MxCell that = (MxCell) o;
+        return contentHash == that.contentHash && contentHashHigh == that.contentHashHigh;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(contentHash);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("parent", parent)
+                .add("contentHash", Long.toHexString(contentHash))
+                .toString();
+    }
+}
@@ -0,0 +1,84 @@
+package logic;
+
+import javax.annotation.Nullable;
+
+/**
+ * A parsed view of an mxCell's mxGeometry child. Numbers are parsed once, when the cell is read; the underlying
+ * {@link XmlElement} is kept so that rendering gives back exactly what was read, including control points.
+ */
+public final class MxGeometry {
+    private final XmlElement element;
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+    private final boolean relative;
+
+    MxGeometry(final XmlElement element) {
+        this.element = element;
+        this.x = parseDouble(element.getAttribute("x"));
+        this.y = parseDouble(element.getAttribute("y"));
+        this.width = parseDouble(element.getAttribute("width"));
+        this.height = parseDouble(element.getAttribute("height"));
+        this.relative = "1".equals(element.getAttribute("relative"));
+    }
+
+    /**
+     * mxGraph leaves out attributes that are zero.
+     */
+    private static double parseDouble(@Nullable final String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public XmlElement getElement() {
+        return element;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public boolean isRelative() {
+        return relative;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MxGeometry)) {
+            return false;
+        }
+        return element.equals(((MxGeometry) o).element);
+    }
+
+    @Override
+    public int hashCode() {
+        return element.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return element.toString();
+    }
+}
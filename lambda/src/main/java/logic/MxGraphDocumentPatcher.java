@@ -0,0 +1,224 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.StringUtils;
+import tracing.Tracing;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Apply cell-level operations from a client directly to the newest version of a document. Unlike
+ * {@link MxGraphDocumentMerger} this doesn't need the client's whole document, nor the version it started from.
+ *
+ * The operations are applied one after the other to a linked list of the cells, indexed by ID, so each one is constant
+ * time and the whole patch is linear in the size of the document plus the number of operations.
+ *
+ * Without the source version we can't tell if someone else changed a cell the client is also changing, so conflicts are
+ * only the cases where the newest version is visibly out of line with the operation. As in the merge, the client wins:
+ * - UPDATE of a cell that is no longer on the board puts it back, on top.
+ * - INSERT of a cell that is already on the board, with different content, replaces it in place.
+ * DELETE of a cell that is already gone is a no-op and not a conflict, because both sides agree.
+ */
+public class MxGraphDocumentPatcher {
+    private final XmlUtils xmlUtils;
+
+    public MxGraphDocumentPatcher() {
+        this(new XmlUtils());
+    }
+
+    public MxGraphDocumentPatcher(final XmlUtils xmlUtils) {
+        this.xmlUtils = checkNotNull(xmlUtils);
+    }
+
+    /**
+     * @param documentString The newest version of the document, may be blank for a new whiteboard.
+     * @param operations Operations to apply, in order.
+     * @return The patched document, and the IDs of cells whose operations conflicted with it.
+     */
+    public PatchResult patch(final String documentString, final List<CellOperation> operations) {
+        try (final Tracing.Span span = Tracing.begin("apply")) {
+            final List<MxCell> cells = parseCells(documentString);
+            final Set<String> conflictingIds = new LinkedHashSet<>();
+            final List<MxCell> patchedCells = patchCells(cells, operations, conflictingIds);
+            span.annotate("cells", patchedCells.size())
+                    .annotate("operations", operations.size())
+                    .annotate("conflicts", conflictingIds.size());
+            return new PatchResult(xmlUtils.renderMxGraphModel(patchedCells), conflictingIds);
+        }
+    }
+
+    /**
+     * @param cells mxCell elements, in z-order.
+     * @param operations Operations to apply, in order.
+     * @param conflictingIds Receives the IDs of cells whose operations conflicted with the cells.
+     * @return The patched cells, in z-order.
+     */
+    public List<MxCell> patchCells(final List<MxCell> cells,
+                                   final List<CellOperation> operations,
+                                   final Set<String> conflictingIds) {
+        final Link head = new Link(null);
+        final Link tail = new Link(null);
+        head.next = tail;
+        tail.previous = head;
+        final Map<String, Link> linksById = new HashMap<>(cells.size() * 2);
+        for (final MxCell cell : cells) {
+            final Link link = new Link(cell);
+            link.insertAfter(tail.previous);
+            // Operations on a duplicated ID apply to the first cell with it, as in CellIndex.
+            linksById.putIfAbsent(cell.getId(), link);
+        }
+
+        for (final CellOperation operation : operations) {
+            checkArgument(operation.getType() != null, "operation has no type: %s", operation);
+            checkArgument(operation.getId() != null, "operation has no id: %s", operation);
+            final String id = operation.getId();
+            final Link existingLink = linksById.get(id);
+            switch (operation.getType()) {
+                case INSERT: {
+                    final MxCell cell = parseCell(operation);
+                    if (existingLink != null) {
+                        if (!cell.equals(existingLink.cell)) {
+                            conflictingIds.add(id);
+                        }
+                        existingLink.cell = cell;
+                    } else {
+                        final Link anchor = operation.getAfterId() == null
+                                ? null
+                                : linksById.get(operation.getAfterId());
+                        final Link link = new Link(cell);
+                        link.insertAfter(anchor != null ? anchor : tail.previous);
+                        linksById.put(id, link);
+                    }
+                    break;
+                }
+                case UPDATE: {
+                    final MxCell cell = parseCell(operation);
+                    if (existingLink != null) {
+                        existingLink.cell = cell;
+                    } else {
+                        conflictingIds.add(id);
+                        final Link link = new Link(cell);
+                        link.insertAfter(tail.previous);
+                        linksById.put(id, link);
+                    }
+                    break;
+                }
+                case DELETE:
+                    if (existingLink != null) {
+                        existingLink.remove();
+                        linksById.remove(id);
+                    }
+                    break;
+            }
+        }
+
+        final ImmutableList.Builder<MxCell> result = ImmutableList.builderWithExpectedSize(linksById.size());
+        for (Link link = head.next; link != tail; link = link.next) {
+            result.add(link.cell);
+        }
+        return result.build();
+    }
+
+    /**
+     * The inverse of {@link #patchCells}: operations that turn one list of cells into another. Cells that moved in
+     * z-order are deleted and inserted again, and only the cells that have to move are, as found by
+     * {@link CellChanges}.
+     *
+     * @return operations that patch {@code fromCells} into exactly {@code toCells}, or null if there are none. That is
+     * the case when either side has duplicate IDs, or a cell has to go at the very bottom, below which there is nothing
+     * to insert it after.
+     */
+    @Nullable
+    public List<CellOperation> diff(final List<MxCell> fromCells, final List<MxCell> toCells) {
+        final CellIndex from = new CellIndex(fromCells);
+        final CellIndex to = new CellIndex(toCells);
+        if (from.hasDuplicateIds() || to.hasDuplicateIds()) {
+            return null;
+        }
+        final CellChanges changes = new CellChanges(from, to);
+        final ImmutableList.Builder<CellOperation> operations = ImmutableList.builder();
+        for (int i = 0; i < from.size(); i++) {
+            final String id = from.getId(i);
+            if (changes.getRemoved().contains(id) || changes.getMoved().contains(id)) {
+                operations.add(new CellOperation(CellOperation.Type.DELETE, id, null, null));
+            }
+        }
+        for (int i = 0; i < to.size(); i++) {
+            final String id = to.getId(i);
+            if (changes.getAdded().contains(id) || changes.getMoved().contains(id)) {
+                if (i == 0) {
+                    return null;
+                }
+                operations.add(new CellOperation(CellOperation.Type.INSERT,
+                        id,
+                        xmlUtils.mxCellToString(to.getCell(i)),
+                        to.getId(i - 1)));
+            } else if (changes.getModified().contains(id)) {
+                operations.add(new CellOperation(CellOperation.Type.UPDATE,
+                        id,
+                        xmlUtils.mxCellToString(to.getCell(i)),
+                        null));
+            }
+        }
+        return operations.build();
+    }
+
+    /**
+     * {@link #diff(List, List)} between two documents, either of which may be blank.
+     */
+    @Nullable
+    public List<CellOperation> diff(final String fromDocument, final String toDocument) {
+        try (final Tracing.Span span = Tracing.begin("diff")) {
+            final List<MxCell> toCells = parseCells(toDocument);
+            final List<CellOperation> operations = diff(parseCells(fromDocument), toCells);
+            span.annotate("cells", toCells.size())
+                    .annotate("operations", operations == null ? -1 : operations.size());
+            return operations;
+        }
+    }
+
+    private List<MxCell> parseCells(final String documentString) {
+        return StringUtils.isBlank(documentString) ? ImmutableList.of() : xmlUtils.parseMxCells(documentString);
+    }
+
+    private MxCell parseCell(final CellOperation operation) {
+        checkArgument(operation.getCell() != null, "operation has no cell: %s", operation);
+        final List<MxCell> cells = xmlUtils.parseMxCells(operation.getCell());
+        checkArgument(cells.size() == 1, "operation must contain exactly one mxCell: %s", operation);
+        final MxCell cell = cells.get(0);
+        checkArgument(Objects.equals(cell.getId(), operation.getId()),
+                "operation id does not match its cell: %s", operation);
+        return cell;
+    }
+
+    private static final class Link {
+        private MxCell cell;
+        private Link previous;
+        private Link next;
+
+        private Link(final MxCell cell) {
+            this.cell = cell;
+        }
+
+        private void insertAfter(final Link link) {
+            previous = link;
+            next = link.next;
+            link.next.previous = this;
+            link.next = this;
+        }
+
+        private void remove() {
+            previous.next = next;
+            next.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A parsed mxCell style attribute, e.g. "ellipse;whiteSpace=wrap;html=1;".
+ *
+ * An mxGraph style is a semicolon separated list of named base styles ("ellipse") and key=value pairs. The raw String
+ * is kept so that rendering the style gives back exactly what was parsed.
+ */
+public final class MxStyle {
+    private final String raw;
+    private final ImmutableList<String> names;
+    private final ImmutableMap<String, String> values;
+
+    private MxStyle(final String raw, final ImmutableList<String> names, final ImmutableMap<String, String> values) {
+        this.raw = raw;
+        this.names = names;
+        this.values = values;
+    }
+
+    public static MxStyle parse(final String raw) {
+        final ImmutableList.Builder<String> names = ImmutableList.builder();
+        final Map<String, String> values = new LinkedHashMap<>();
+        int start = 0;
+        while (start < raw.length()) {
+            int end = raw.indexOf(';', start);
+            if (end < 0) {
+                end = raw.length();
+            }
+            final int equals = raw.indexOf('=', start);
+            if (equals >= 0 && equals < end) {
+                values.put(raw.substring(start, equals), raw.substring(equals + 1, end));
+            } else if (end > start) {
+                names.add(raw.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return new MxStyle(raw, names.build(), ImmutableMap.copyOf(values));
+    }
+
+    /**
+     * @return named base styles, e.g. "ellipse", in order.
+     */
+    public ImmutableList<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return key=value pairs, in order. If a key is repeated the last value wins, as it does in mxGraph.
+     */
+    public ImmutableMap<String, String> getValues() {
+        return values;
+    }
+
+    @Nullable
+    public String get(final String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MxStyle)) {
+            return false;
+        }
+        return raw.equals(((MxStyle) o).raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return raw.hashCode();
+    }
+
+    /**
+     * @return the style exactly as it was parsed.
+     */
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
@@ -0,0 +1,79 @@
+package logic;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.algorithm.DiffException;
+import com.github.difflib.algorithm.myers.MyersDiff;
+import com.github.difflib.patch.Patch;
+import com.github.difflib.patch.PatchFailedException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The original merge, which runs two Myers diffs over the node lists. Each comparison is a deep
+ * {@link org.w3c.dom.Node#isEqualNode} walk, so this is quadratic in the number of cells for dissimilar documents.
+ *
+ * This is no longer used for serving requests. It is kept as the baseline that {@link IdKeyedNodeMerger} is
+ * benchmarked against.
+ */
+class MyersNodeMerger implements NodeMerger {
+    private static final Logger log = LogManager.getLogger(MyersNodeMerger.class);
+
+    @SneakyThrows(DiffException.class)
+    private <T> Patch<T> diff(final List<T> original, final List<T> revised) {
+        return DiffUtils.diff(original, revised, new MyersDiff<>());
+    }
+
+    private Set<String> getPatchSourceAndTargetIds(final Patch<MxCell> patch) {
+        final Set<String> oldPatchSourceIds = patch
+                .getDeltas()
+                .stream()
+                .map(delta -> delta.getSource().getLines())
+                .flatMap(cells -> cells.stream().map(MxCell::getId))
+                .collect(Collectors.toSet());
+        final Set<String> oldPatchTargetIds = patch
+                .getDeltas()
+                .stream()
+                .map(delta -> delta.getTarget().getLines())
+                .flatMap(cells -> cells.stream().map(MxCell::getId))
+                .collect(Collectors.toSet());
+        return Sets.union(oldPatchSourceIds, oldPatchTargetIds);
+    }
+
+    @SneakyThrows(PatchFailedException.class)
+    @Override
+    public NodeMergeResult mergeNodes(final List<MxCell> ancestorNodes,
+                                      final List<MxCell> oldNodes,
+                                      final List<MxCell> newNodes) {
+        log.debug("mergeNodes entry");
+        final Patch<MxCell> ancestorToOldPatch = diff(ancestorNodes, oldNodes);
+        final Patch<MxCell> ancestorToNewPatch = diff(ancestorNodes, newNodes);
+
+        // All mxCell nodes comes with unique IDs. If the old patch IDs do not overlap with the new patch IDs, we
+        // can merge them both together. Else we will let the new patch win.
+        final Set<String> oldPatchIds = getPatchSourceAndTargetIds(ancestorToOldPatch);
+        final Set<String> newPatchIds = getPatchSourceAndTargetIds(ancestorToNewPatch);
+        final Set<String> commonIds = Sets.intersection(oldPatchIds, newPatchIds);
+        if (commonIds.isEmpty()) {
+            log.debug("mergeNodes no overlap in IDs, three-way merge proceeding");
+            final List<MxCell> newApplied = ancestorToNewPatch.applyTo(ancestorNodes);
+            final List<MxCell> oldApplied = ancestorToOldPatch.applyTo(newApplied);
+            return new NodeMergeResult(ImmutableList.copyOf(oldApplied), ImmutableSet.of(), oldPatchIds.size(),
+                    false /*clobbered*/);
+        }
+
+        // We can't resolve the conflict, so to allow the whiteboard to make useful progress we allow the new patch to
+        // win and clobber the old patch.
+        log.debug("mergeNodes overlap in IDs, new nodes will clobber old nodes");
+        final List<MxCell> newApplied = ancestorToNewPatch.applyTo(ancestorNodes);
+        return new NodeMergeResult(ImmutableList.copyOf(newApplied), ImmutableSet.copyOf(commonIds), 0,
+                false /*clobbered*/);
+    }
+}
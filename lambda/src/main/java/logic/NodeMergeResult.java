@@ -0,0 +1,33 @@
+package logic;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Output of a {@link NodeMerger}.
+ */
+@Value
+class NodeMergeResult {
+    /**
+     * Merged mxCell nodes, in z-order.
+     */
+    List<MxCell> nodes;
+
+    /**
+     * IDs of cells both sides changed in different ways. The new document won for each of them.
+     */
+    Set<String> conflictingIds;
+
+    /**
+     * Number of cells whose change from the old document made it into the merge.
+     */
+    int keptOldChangeCount;
+
+    /**
+     * Whether the nodes couldn't be merged at all, so the new document was kept whole and the old document's changes
+     * were lost.
+     */
+    boolean clobbered;
+}
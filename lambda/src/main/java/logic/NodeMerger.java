@@ -0,0 +1,18 @@
+package logic;
+
+import java.util.List;
+
+/**
+ * Three-way merge of the flat list of mxCell nodes that make up an mxGraph document.
+ */
+interface NodeMerger {
+    /**
+     * @param ancestorNodes mxCell nodes of the common ancestor document.
+     * @param oldNodes mxCell nodes of the document that is currently the newest stored version.
+     * @param newNodes mxCell nodes of the document the client is trying to save.
+     * @return merged mxCell nodes, in z-order, and the cells that conflicted.
+     */
+    NodeMergeResult mergeNodes(List<MxCell> ancestorNodes,
+                               List<MxCell> oldNodes,
+                               List<MxCell> newNodes);
+}
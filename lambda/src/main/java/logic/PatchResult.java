@@ -0,0 +1,16 @@
+package logic;
+
+import lombok.Value;
+
+import java.util.Set;
+
+@Value
+public class PatchResult {
+    String document;
+
+    /**
+     * IDs of the cells whose operations didn't line up with the newest version, e.g. an update to a cell someone else
+     * has since deleted. The patch still wins for these cells, as it does in {@link IdKeyedNodeMerger}.
+     */
+    Set<String> conflictingIds;
+}
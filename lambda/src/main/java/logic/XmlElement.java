@@ -0,0 +1,53 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import lombok.Value;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * A small immutable XML element, used for mxCell nodes and their children such as mxGeometry and mxPoint.
+ *
+ * Attributes are kept sorted by name because that is the order the DOM serializer wrote them in, and we want the
+ * streaming writer to produce identical documents. Whitespace-only text is not kept.
+ */
+@Value
+public class XmlElement {
+    String name;
+    ImmutableSortedMap<String, String> attributes;
+    ImmutableList<XmlElement> children;
+    @Nullable
+    String text;
+
+    @Nullable
+    public String getAttribute(final String attributeName) {
+        return attributes.get(attributeName);
+    }
+
+    /**
+     * Both attribute maps are sorted, so they can be compared entry by entry. The default sorted map equality looks
+     * every entry up in the other map instead, which showed up as the top cost of a merge.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof XmlElement)) {
+            return false;
+        }
+        final XmlElement that = (XmlElement) o;
+        return name.equals(that.name)
+                && Objects.equals(text, that.text)
+                && attributes.keySet().asList().equals(that.attributes.keySet().asList())
+                && attributes.values().asList().equals(that.attributes.values().asList())
+                && children.equals(that.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, attributes, children, text);
+    }
+}
@@ -1,9 +1,13 @@
 package logic;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import lombok.SneakyThrows;
+import metrics.Metric;
+import metrics.Metrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -11,6 +15,10 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
@@ -18,15 +26,24 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 public class XmlUtils {
     private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newDefaultInstance();
@@ -39,33 +56,207 @@ public class XmlUtils {
     static {
         transformerFactory.setAttribute("indent-number", 4);
     }
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newDefaultFactory();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+    private static final int INDENT = 4;
+
+    /**
+     * Creating a DocumentBuilder or Transformer means a factory lookup and configuring a new parser or serializer, and
+     * a merge needs several. Instead idle ones are pooled and reset between uses. The pools aren't per thread, because
+     * the local server runs each request on a new virtual thread, which would never use its own twice. One per CPU is
+     * kept, since that many are busy at once; any more made under load are dropped once used. The factories aren't
+     * guaranteed to be thread safe, so creating them is synchronized on the factory.
+     */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final BlockingQueue<DocumentBuilder> documentBuilders = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Transformer> transformers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * The streaming parser and writer are used by default. The DOM ones are kept so they can be switched back to.
+     */
+    public enum ParserType {
+        STREAMING,
+        DOM,
+    }
+
+    private final ParserType parserType;
+    private final boolean reuseDomInstances;
 
-    @SneakyThrows({SAXException.class, IOException.class, ParserConfigurationException.class})
+    public XmlUtils() {
+        this(ParserType.STREAMING);
+    }
+
+    public XmlUtils(final ParserType parserType) {
+        this(parserType, true);
+    }
+
+    /**
+     * @param reuseDomInstances false to create a new DocumentBuilder and Transformer every time, for comparison.
+     */
+    XmlUtils(final ParserType parserType, final boolean reuseDomInstances) {
+        this.parserType = checkNotNull(parserType);
+        this.reuseDomInstances = reuseDomInstances;
+    }
+
+    @SneakyThrows(ParserConfigurationException.class)
+    private static DocumentBuilder newDocumentBuilder() {
+        synchronized (documentBuilderFactory) {
+            return documentBuilderFactory.newDocumentBuilder();
+        }
+    }
+
+    @SneakyThrows(TransformerConfigurationException.class)
+    private static Transformer newTransformer() {
+        synchronized (transformerFactory) {
+            return transformerFactory.newTransformer();
+        }
+    }
+
+    /**
+     * @return a DocumentBuilder as the factory configured it, with no state left from earlier documents. Give it back
+     * with {@link #releaseDocumentBuilder} once done.
+     */
+    private DocumentBuilder takeDocumentBuilder() {
+        final DocumentBuilder pooled = reuseDomInstances ? documentBuilders.poll() : null;
+        if (pooled == null) {
+            return newDocumentBuilder();
+        }
+        pooled.reset();
+        return pooled;
+    }
+
+    private void releaseDocumentBuilder(final DocumentBuilder builder) {
+        if (reuseDomInstances) {
+            documentBuilders.offer(builder);
+        }
+    }
+
+    /**
+     * reset() also clears the output properties, so they are set on every use, which is cheap. Give it back with
+     * {@link #releaseTransformer} once done.
+     */
+    private Transformer takeTransformer() {
+        final Transformer pooled = reuseDomInstances ? transformers.poll() : null;
+        final Transformer transformer;
+        if (pooled == null) {
+            transformer = newTransformer();
+        } else {
+            transformer = pooled;
+            transformer.reset();
+        }
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        return transformer;
+    }
+
+    private void releaseTransformer(final Transformer transformer) {
+        if (reuseDomInstances) {
+            transformers.offer(transformer);
+        }
+    }
+
+    @SneakyThrows({SAXException.class, IOException.class})
     private Document loadXml(final String text) {
-        final DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-        final InputStream is = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
-        final Document document = builder.parse(is);
-        document.getDocumentElement().normalize();
-        return document;
+        final DocumentBuilder builder = takeDocumentBuilder();
+        try {
+            final InputStream is = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+            final Document document = builder.parse(is);
+            document.getDocumentElement().normalize();
+            return document;
+        } finally {
+            releaseDocumentBuilder(builder);
+        }
+    }
+
+    /**
+     * Read the mxCell elements with whichever parser this instance was configured with.
+     *
+     * @param documentString Raw String of XML.
+     * @return The mxCell elements, in document order.
+     */
+    public List<MxCell> parseMxCells(final String documentString) {
+        final long startNanos = System.nanoTime();
+        final List<MxCell> cells;
+        switch (parserType) {
+            case DOM:
+                cells = getMxCellNodes(documentString);
+                break;
+            case STREAMING:
+            default:
+                cells = readMxCells(documentString);
+                break;
+        }
+        Metrics.get().recordTime(Metric.PARSE_TIME, startNanos);
+        Metrics.get().record(Metric.DOCUMENT_CELLS, cells.size());
+        return cells;
     }
 
     /**
-     * Given raw XML return a list of NodeWrapper instances, which wrap underlying XML nodes. We need to wrap them
-     * because they don't support equals() and hashCode(), which we need for diff'ing.
+     * Render an mxGraphModel with whichever writer this instance was configured with. Both give identical output.
+     *
+     * @param cells mxCell elements, in z-order.
+     * @return The rendered mxGraphModel document.
+     */
+    public String renderMxGraphModel(final List<MxCell> cells) {
+        final long startNanos = System.nanoTime();
+        final String rendered;
+        switch (parserType) {
+            case DOM:
+                rendered = documentToString(createMxGraphModelDocument(cells));
+                break;
+            case STREAMING:
+            default:
+                rendered = mxGraphModelToString(cells);
+                break;
+        }
+        Metrics.get().recordTime(Metric.RENDER_TIME, startNanos);
+        return rendered;
+    }
+
+    /**
+     * Given raw XML, parse it into a DOM and return its mxCell elements.
      *
      * @param documentString Raw String of XML.
-     * @return A list of NodeWrapper instances, for just the mxCell elements.
+     * @return The mxCell elements, in document order.
      */
-    public List<NodeWrapper> getMxCellNodes(final String documentString) {
+    public List<MxCell> getMxCellNodes(final String documentString) {
         final Document document = loadXml(documentString);
         final NodeList cells = document.getElementsByTagName("mxCell");
-        final ImmutableList.Builder<NodeWrapper> listBuilder = ImmutableList.builderWithExpectedSize(cells.getLength());
+        final ImmutableList.Builder<MxCell> listBuilder = ImmutableList.builderWithExpectedSize(cells.getLength());
         for (int i = 0; i < cells.getLength(); i++) {
-            listBuilder.add(new NodeWrapper(cells.item(i)));
+            listBuilder.add(new MxCell(toXmlElement((Element) cells.item(i))));
         }
         return listBuilder.build();
     }
 
+    private XmlElement toXmlElement(final Element element) {
+        final ImmutableSortedMap.Builder<String, String> attributes = ImmutableSortedMap.naturalOrder();
+        final NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            final Node attribute = attributeNodes.item(i);
+            attributes.put(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        final ImmutableList.Builder<XmlElement> children = ImmutableList.builder();
+        final StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                children.add(toXmlElement((Element) child));
+            } else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+        final String trimmedText = text.toString().trim();
+        return new XmlElement(element.getNodeName(),
+                attributes.build(),
+                children.build(),
+                trimmedText.isEmpty() ? null : trimmedText);
+    }
+
     /**
      * Note that an mxGraph document is one mxGraphModel node, with a single root child, and that root child
      * contains a flat list of mxCell items. The mxCell items seem to either be flat with just attributes or
@@ -74,43 +265,59 @@ public class XmlUtils {
      * That is why we can confidently consider an empty drawing to be a mxGraphModel, with a single root child. Then
      * we will in "nodes".
      *
-     * @param nodes {@link NodeWrapper} instances that wrap underlying XML nodes. We need to wrap them because they do
-     *              not natively support equals or hashCode, yet we need those methods for diff'ing.
+     * @param cells mxCell elements, in z-order.
      *
      * @return An XML document that can be "transformed" (rendered) to text.
      */
-    @SneakyThrows(ParserConfigurationException.class)
-    public Document createMxGraphModelDocument(final List<NodeWrapper> nodes) {
-        final DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-        final Document document = builder.newDocument();
+    public Document createMxGraphModelDocument(final List<MxCell> cells) {
+        final DocumentBuilder builder = takeDocumentBuilder();
+        final Document document;
+        try {
+            document = builder.newDocument();
+        } finally {
+            releaseDocumentBuilder(builder);
+        }
         final Element mxGraphModel = document.createElement("mxGraphModel");
         document.appendChild(mxGraphModel);
         final Element root = document.createElement("root");
         mxGraphModel.appendChild(root);
-        for (final NodeWrapper nodeWrapper : nodes) {
-            final Node node = nodeWrapper.getNode();
-            final Node importedNode = document.importNode(node, true /*deep*/);
-            root.appendChild(importedNode);
+        for (final MxCell cell : cells) {
+            root.appendChild(toDomElement(document, cell.getElement()));
         }
         return document;
     }
 
+    private Element toDomElement(final Document document, final XmlElement xmlElement) {
+        final Element element = document.createElement(xmlElement.getName());
+        for (final Map.Entry<String, String> attribute : xmlElement.getAttributes().entrySet()) {
+            element.setAttribute(attribute.getKey(), attribute.getValue());
+        }
+        for (final XmlElement child : xmlElement.getChildren()) {
+            element.appendChild(toDomElement(document, child));
+        }
+        if (xmlElement.getText() != null) {
+            element.appendChild(document.createTextNode(xmlElement.getText()));
+        }
+        return element;
+    }
+
     /**
      * Render an XML document DOM object to a UTF-8 encoded String.
      *
      * @param document XML document DOM root.
      * @return A rendered String.
      */
-    @SneakyThrows({TransformerConfigurationException.class, TransformerException.class})
+    @SneakyThrows(TransformerException.class)
     public String documentToString(final Document document) {
-        final Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
         final DOMSource domSource = new DOMSource(document);
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         final StreamResult streamResult = new StreamResult(baos);
-        transformer.transform(domSource, streamResult);
+        final Transformer transformer = takeTransformer();
+        try {
+            transformer.transform(domSource, streamResult);
+        } finally {
+            releaseTransformer(transformer);
+        }
         final String result = baos.toString(StandardCharsets.UTF_8);
         return removeBlankLines(result);
     }
@@ -118,16 +325,231 @@ public class XmlUtils {
     private String removeBlankLines(final String input) {
         final ByteArrayInputStream bais = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
         final ByteArrayOutputStream baos = new ByteArrayOutputStream(input.length());
-        try (final Scanner scanner = new Scanner(bais)) {
+        try (final Scanner scanner = new Scanner(bais, StandardCharsets.UTF_8)) {
             while (scanner.hasNextLine()) {
                 final String line = scanner.nextLine();
                 final String lineTrimmed = line.trim();
                 if (lineTrimmed.length() > 0) {
-                    baos.writeBytes(line.getBytes());
+                    baos.writeBytes(line.getBytes(StandardCharsets.UTF_8));
                     baos.write('\n');
                 }
             }
         }
         return baos.toString(StandardCharsets.UTF_8);
     }
+
+    /**
+     * Streaming alternative to {@link #getMxCellNodes(String)}. The document is read with StAX straight into
+     * {@link MxCell} instances, without building a DOM or copying the String into a byte array first.
+     *
+     * @param documentString Raw String of XML.
+     * @return The mxCell elements, in document order.
+     */
+    public List<MxCell> readMxCells(final String documentString) {
+        return readMxCells(createXmlStreamReader(documentString));
+    }
+
+    /**
+     * @param inputStream UTF-8 encoded XML.
+     * @return The mxCell elements, in document order.
+     */
+    public List<MxCell> readMxCells(final InputStream inputStream) {
+        return readMxCells(createXmlStreamReader(inputStream));
+    }
+
+    @SneakyThrows(XMLStreamException.class)
+    private XMLStreamReader createXmlStreamReader(final String documentString) {
+        return xmlInputFactory.createXMLStreamReader(new StringReader(documentString));
+    }
+
+    @SneakyThrows(XMLStreamException.class)
+    private XMLStreamReader createXmlStreamReader(final InputStream inputStream) {
+        return xmlInputFactory.createXMLStreamReader(inputStream, StandardCharsets.UTF_8.name());
+    }
+
+    @SneakyThrows(XMLStreamException.class)
+    private List<MxCell> readMxCells(final XMLStreamReader reader) {
+        final ImmutableList.Builder<MxCell> listBuilder = ImmutableList.builder();
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "mxCell".equals(reader.getLocalName())) {
+                    listBuilder.add(new MxCell(readElement(reader)));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return listBuilder.build();
+    }
+
+    /**
+     * Read the element the reader is positioned on, and everything inside it. Leaves the reader on the element's
+     * end tag.
+     */
+    private XmlElement readElement(final XMLStreamReader reader) throws XMLStreamException {
+        final String name = reader.getLocalName();
+        final ImmutableSortedMap.Builder<String, String> attributes = ImmutableSortedMap.naturalOrder();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        ImmutableList.Builder<XmlElement> children = null;
+        StringBuilder text = null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (children == null) {
+                        children = ImmutableList.builder();
+                    }
+                    children.add(readElement(reader));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (!reader.isWhiteSpace()) {
+                        if (text == null) {
+                            text = new StringBuilder();
+                        }
+                        text.append(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return new XmlElement(name,
+                            attributes.build(),
+                            children == null ? ImmutableList.of() : children.build(),
+                            text == null ? null : text.toString().trim());
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Streaming alternative to {@link #createMxGraphModelDocument(List)} followed by
+     * {@link #documentToString(Document)}. The mxGraphModel is written straight to the output stream, indented as we
+     * go, so there is no DOM, no Transformer and no blank line clean up pass. The output is identical to the DOM path.
+     *
+     * StAX's XMLStreamWriter is not used because it neither indents nor escapes newlines in attribute values, and
+     * mxGraph labels rely on the latter.
+     *
+     * @param cells mxCell elements, in z-order.
+     * @param outputStream Receives the UTF-8 encoded document. It is flushed but not closed.
+     */
+    @SneakyThrows(IOException.class)
+    public void writeMxGraphModel(final List<MxCell> cells, final OutputStream outputStream) {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write("<mxGraphModel>\n");
+        if (cells.isEmpty()) {
+            writeIndent(writer, 1);
+            writer.write("<root/>\n");
+        } else {
+            writeIndent(writer, 1);
+            writer.write("<root>\n");
+            for (final MxCell cell : cells) {
+                writeElement(writer, cell.getElement(), 2);
+            }
+            writeIndent(writer, 1);
+            writer.write("</root>\n");
+        }
+        writer.write("</mxGraphModel>\n");
+        writer.flush();
+    }
+
+    /**
+     * @param cells mxCell elements, in z-order.
+     * @return The rendered mxGraphModel document.
+     */
+    public String mxGraphModelToString(final List<MxCell> cells) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeMxGraphModel(cells, baos);
+        return baos.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param cell a single mxCell.
+     * @return the mxCell element on its own, as it would appear in a rendered document.
+     */
+    @SneakyThrows(IOException.class)
+    public String mxCellToString(final MxCell cell) {
+        final StringWriter writer = new StringWriter();
+        writeElement(writer, cell.getElement(), 0);
+        return writer.toString();
+    }
+
+    private void writeElement(final Writer writer, final XmlElement element, final int depth) throws IOException {
+        writeIndent(writer, depth);
+        writer.write('<');
+        writer.write(element.getName());
+        for (final Map.Entry<String, String> attribute : element.getAttributes().entrySet()) {
+            writer.write(' ');
+            writer.write(attribute.getKey());
+            writer.write("=\"");
+            writeEscaped(writer, attribute.getValue(), true);
+            writer.write('"');
+        }
+        if (element.getChildren().isEmpty() && element.getText() == null) {
+            writer.write("/>\n");
+            return;
+        }
+        writer.write(">\n");
+        for (final XmlElement child : element.getChildren()) {
+            writeElement(writer, child, depth + 1);
+        }
+        if (element.getText() != null) {
+            writeIndent(writer, depth + 1);
+            writeEscaped(writer, element.getText(), false);
+            writer.write('\n');
+        }
+        writeIndent(writer, depth);
+        writer.write("</");
+        writer.write(element.getName());
+        writer.write(">\n");
+    }
+
+    private void writeIndent(final Writer writer, final int depth) throws IOException {
+        for (int i = 0; i < depth * INDENT; i++) {
+            writer.write(' ');
+        }
+    }
+
+    /**
+     * Escape the same characters the DOM serializer does. That includes characters outside the Basic Multilingual
+     * Plane, such as emoji, which it writes as numeric character references.
+     */
+    private void writeEscaped(final Writer writer, final String value, final boolean attribute) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < value.length()) {
+                writer.write("&#");
+                writer.write(Integer.toString(value.codePointAt(i)));
+                writer.write(';');
+                i++;
+                continue;
+            }
+            switch (c) {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '"':
+                    writer.write(attribute ? "&quot;" : "\"");
+                    break;
+                case '\n':
+                    writer.write(attribute ? "&#10;" : "\n");
+                    break;
+                case '\r':
+                    writer.write(attribute ? "&#13;" : "\r");
+                    break;
+                case '\t':
+                    writer.write(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    writer.write(c);
+                    break;
+            }
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of non-negative values in buckets of a fixed size relative to the value, four to every power of two, so a
+ * bucket's midpoint is within 12.5% of any value in it. Recording a value allocates nothing, and any number of threads
+ * can record at once.
+ */
+final class Histogram {
+    /**
+     * The values below 4 each have a bucket, and then each power of two from 4 up to 2^62 has 4.
+     */
+    static final int BUCKETS = 4 + 61 * 4;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * A histogram's values since the last snapshot.
+     */
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sum;
+        final long min;
+        final long max;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long min, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    void record(final long value) {
+        final long nonNegative = Math.max(value, 0);
+        counts.incrementAndGet(bucket(nonNegative));
+        sum.add(nonNegative);
+        min.accumulate(nonNegative);
+        max.accumulate(nonNegative);
+    }
+
+    static int bucket(final long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int quarter = (int) (value >>> (exponent - 2)) & 3;
+        return 4 + (exponent - 2) * 4 + quarter;
+    }
+
+    /**
+     * @return the middle of the values in the bucket.
+     */
+    static double midpoint(final int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        final int exponent = (bucket - 4) / 4 + 2;
+        final long width = 1L << (exponent - 2);
+        final long lower = (4L + (bucket - 4) % 4) * width;
+        return lower + (width - 1) / 2.0;
+    }
+
+    /**
+     * The values recorded while the snapshot is taken may be split between this snapshot and the next.
+     *
+     * @return the values since the last snapshot, or null if there were none.
+     */
+    Snapshot snapshotAndReset() {
+        final long[] snapshotCounts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshotCounts[i] = counts.getAndSet(i, 0);
+            count += snapshotCounts[i];
+        }
+        final long snapshotSum = sum.sumThenReset();
+        final long snapshotMin = min.getThenReset();
+        final long snapshotMax = max.getThenReset();
+        return count == 0 ? null : new Snapshot(snapshotCounts, count, snapshotSum, snapshotMin, snapshotMax);
+    }
+}
@@ -0,0 +1,104 @@
+package metrics;
+
+/**
+ * What {@link Metrics} records. A distribution is every value recorded, summarised per flush; a count is a running
+ * total per flush.
+ */
+public enum Metric {
+    DECODE_TIME("DecodeTime", Unit.MILLISECONDS),
+    ENCODE_TIME("EncodeTime", Unit.MILLISECONDS),
+    PARSE_TIME("ParseTime", Unit.MILLISECONDS),
+    MERGE_NODES_TIME("MergeNodesTime", Unit.MILLISECONDS),
+    RENDER_TIME("RenderTime", Unit.MILLISECONDS),
+    TABLE_READ_TIME("TableReadTime", Unit.MILLISECONDS),
+    TABLE_WRITE_TIME("TableWriteTime", Unit.MILLISECONDS),
+    /**
+     * Of each read that missed its cache, from the table and with its content rebuilt.
+     */
+    WHITEBOARD_LOAD_TIME("WhiteboardLoadTime", Unit.MILLISECONDS),
+    NEWEST_WHITEBOARD_LOAD_TIME("NewestWhiteboardLoadTime", Unit.MILLISECONDS),
+    /**
+     * From the first attempt to the last, backoff included.
+     */
+    COMMIT_TIME("CommitTime", Unit.MILLISECONDS),
+    COMMIT_ATTEMPTS("CommitAttempts", Unit.COUNT),
+    /**
+     * Of each document decoded, uncompressed.
+     */
+    DOCUMENT_BYTES("DocumentBytes", Unit.BYTES),
+    /**
+     * Of each document parsed.
+     */
+    DOCUMENT_CELLS("DocumentCells", Unit.COUNT),
+
+    /**
+     * Sets saved as they were because nobody else had written since their source version, so nothing is lost.
+     */
+    CLOBBERS("Clobbers", Unit.COUNT, Kind.COUNT),
+
+    /**
+     * Sets saved as they were although others had written since their source version, because the source content
+     * wasn't available or the new document's cell IDs weren't unique. Changes the new document didn't have are lost.
+     */
+    LOSSY_CLOBBERS("LossyClobbers", Unit.COUNT, Kind.COUNT),
+    CLEAN_MERGES("CleanMerges", Unit.COUNT, Kind.COUNT),
+    CONFLICT_MERGES("ConflictMerges", Unit.COUNT, Kind.COUNT),
+    COMMITS_GIVEN_UP("CommitsGivenUp", Unit.COUNT, Kind.COUNT);
+
+    enum Kind {
+        DISTRIBUTION,
+        COUNT,
+    }
+
+    /**
+     * CloudWatch's units. Times are recorded in microseconds.
+     */
+    enum Unit {
+        MILLISECONDS("Milliseconds", 0.001),
+        BYTES("Bytes", 1),
+        COUNT("Count", 1),
+        PERCENT("Percent", 1);
+
+        private final String name;
+        private final double scale;
+
+        Unit(final String name, final double scale) {
+            this.name = name;
+            this.scale = scale;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        double fromRecorded(final double recorded) {
+            return recorded * scale;
+        }
+    }
+
+    private final String name;
+    private final Unit unit;
+    private final Kind kind;
+
+    Metric(final String name, final Unit unit) {
+        this(name, unit, Kind.DISTRIBUTION);
+    }
+
+    Metric(final String name, final Unit unit, final Kind kind) {
+        this.name = name;
+        this.unit = unit;
+        this.kind = kind;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Unit getUnit() {
+        return unit;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+}
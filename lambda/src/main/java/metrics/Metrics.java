@@ -0,0 +1,310 @@
+package metrics;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.CaseFormat;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Where the time of a request goes, how big its documents are and how its merges turned out, for sizing the Lambda.
+ *
+ * Values are added up in this container as they are recorded, which allocates nothing, and written out by
+ * {@link #flushIfDue} as one line of CloudWatch's embedded metric format, from which CloudWatch makes the metrics. A
+ * distribution is written as the counts of its values in {@link Histogram} buckets, so CloudWatch's percentiles of it
+ * are as good as the buckets are fine.
+ *
+ * Lines go to this class's logger, which log4j2.xml writes without a prefix, since CloudWatch only reads lines that
+ * are JSON. They are written every WHITEBOARD_METRICS_INTERVAL_SECONDS, or after every request if that is 0, the
+ * default, since Lambda freezes the process between invocations and a container may never be thawed again.
+ * WHITEBOARD_METRICS_NAMESPACE sets the namespace, {@code Whiteboard} by default, and each line has the function's name
+ * as a dimension.
+ */
+public final class Metrics {
+    private static final Logger log = LogManager.getLogger(Metrics.class);
+
+    private static final String DEFAULT_NAMESPACE = "Whiteboard";
+    private static final String FUNCTION_NAME_DIMENSION = "FunctionName";
+    /**
+     * CloudWatch takes at most this many values of a metric in one line.
+     */
+    private static final int MAX_VALUES = 100;
+
+    private static final Metrics instance = new Metrics(getNamespace(),
+            ImmutableMap.of(FUNCTION_NAME_DIMENSION, getFunctionName()), getInterval());
+
+    private static String getNamespace() {
+        final String namespace = System.getenv("WHITEBOARD_METRICS_NAMESPACE");
+        return StringUtils.isBlank(namespace) ? DEFAULT_NAMESPACE : namespace;
+    }
+
+    private static String getFunctionName() {
+        final String functionName = System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+        return StringUtils.isBlank(functionName) ? "local" : functionName;
+    }
+
+    private static Duration getInterval() {
+        final String interval = System.getenv("WHITEBOARD_METRICS_INTERVAL_SECONDS");
+        return Duration.ofSeconds(StringUtils.isBlank(interval) ? 0 : Long.parseLong(interval));
+    }
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final String namespace;
+    private final Map<String, String> dimensions;
+    private final long intervalMillis;
+    private final Histogram[] histograms = new Histogram[Metric.values().length];
+    private final LongAdder[] counts = new LongAdder[Metric.values().length];
+    private final AtomicLong nextFlushMillis = new AtomicLong();
+    private volatile Supplier<Map<String, CacheStats>> cacheStats = ImmutableMap::of;
+    private Map<String, CacheStats> lastCacheStats = ImmutableMap.of();
+
+    Metrics(final String namespace, final Map<String, String> dimensions, final Duration interval) {
+        this.namespace = checkNotNull(namespace);
+        this.dimensions = ImmutableMap.copyOf(dimensions);
+        this.intervalMillis = interval.toMillis();
+        for (final Metric metric : Metric.values()) {
+            if (metric.getKind() == Metric.Kind.DISTRIBUTION) {
+                histograms[metric.ordinal()] = new Histogram();
+            } else {
+                counts[metric.ordinal()] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * @return the container's metrics.
+     */
+    public static Metrics get() {
+        return instance;
+    }
+
+    /**
+     * Record the time from {@code startNanos}, from {@link System#nanoTime}, until now.
+     */
+    public void recordTime(final Metric metric, final long startNanos) {
+        record(metric, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public void record(final Metric metric, final long value) {
+        histograms[metric.ordinal()].record(value);
+    }
+
+    public void count(final Metric metric) {
+        counts[metric.ordinal()].increment();
+    }
+
+    /**
+     * @return how many times the metric has been counted since the last line.
+     */
+    public long getCount(final Metric metric) {
+        checkArgument(metric.getKind() == Metric.Kind.COUNT, "%s is not a count", metric);
+        return counts[metric.ordinal()].sum();
+    }
+
+    /**
+     * @param cacheStats The caches' running totals, by name. Each line has each cache's hit rate since the last.
+     */
+    public void setCacheStats(final Supplier<Map<String, CacheStats>> cacheStats) {
+        this.cacheStats = checkNotNull(cacheStats);
+    }
+
+    /**
+     * Forget what has been recorded since the last line, without writing it.
+     */
+    public synchronized void reset() {
+        for (final Metric metric : Metric.values()) {
+            if (metric.getKind() == Metric.Kind.DISTRIBUTION) {
+                histograms[metric.ordinal()].snapshotAndReset();
+            } else {
+                counts[metric.ordinal()].reset();
+            }
+        }
+        lastCacheStats = cacheStats.get();
+    }
+
+    /**
+     * Write out what has been recorded since the last line, if it is time to.
+     */
+    public void flushIfDue() {
+        final long nowMillis = System.currentTimeMillis();
+        final long dueMillis = nextFlushMillis.get();
+        if (nowMillis >= dueMillis && nextFlushMillis.compareAndSet(dueMillis, nowMillis + intervalMillis)) {
+            final String line = flush(nowMillis);
+            if (line != null) {
+                log.info(line);
+            }
+        }
+    }
+
+    /**
+     * @return the line, or null if nothing has been recorded since the last.
+     */
+    @Nullable
+    @SneakyThrows(IOException.class)
+    synchronized String flush(final long timestampMillis) {
+        final List<Metric> distributions = new ArrayList<>();
+        final List<Histogram.Snapshot> snapshots = new ArrayList<>();
+        final Map<Metric, Long> countValues = new EnumMap<>(Metric.class);
+        for (final Metric metric : Metric.values()) {
+            if (metric.getKind() == Metric.Kind.DISTRIBUTION) {
+                final Histogram.Snapshot snapshot = histograms[metric.ordinal()].snapshotAndReset();
+                if (snapshot != null) {
+                    distributions.add(metric);
+                    snapshots.add(snapshot);
+                }
+            } else {
+                final long count = counts[metric.ordinal()].sumThenReset();
+                if (count > 0) {
+                    countValues.put(metric, count);
+                }
+            }
+        }
+        if (distributions.isEmpty() && countValues.isEmpty()) {
+            return null;
+        }
+        final Map<String, Double> cacheHitRates = getCacheHitRates();
+
+        final StringWriter writer = new StringWriter();
+        try (final JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("_aws");
+            generator.writeNumberField("Timestamp", timestampMillis);
+            generator.writeArrayFieldStart("CloudWatchMetrics");
+            generator.writeStartObject();
+            generator.writeStringField("Namespace", namespace);
+            generator.writeArrayFieldStart("Dimensions");
+            generator.writeStartArray();
+            for (final String dimension : dimensions.keySet()) {
+                generator.writeString(dimension);
+            }
+            generator.writeEndArray();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Metrics");
+            for (final Metric metric : distributions) {
+                writeDefinition(generator, metric.getName(), metric.getUnit());
+            }
+            for (final Metric metric : countValues.keySet()) {
+                writeDefinition(generator, metric.getName(), metric.getUnit());
+            }
+            for (final String name : cacheHitRates.keySet()) {
+                writeDefinition(generator, name, Metric.Unit.PERCENT);
+            }
+            writeDefinition(generator, "HeapUsedBytes", Metric.Unit.BYTES);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            for (final Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                generator.writeStringField(dimension.getKey(), dimension.getValue());
+            }
+            for (int i = 0; i < distributions.size(); i++) {
+                generator.writeFieldName(distributions.get(i).getName());
+                writeDistribution(generator, distributions.get(i).getUnit(), snapshots.get(i));
+            }
+            for (final Map.Entry<Metric, Long> count : countValues.entrySet()) {
+                generator.writeNumberField(count.getKey().getName(), count.getValue());
+            }
+            for (final Map.Entry<String, Double> hitRate : cacheHitRates.entrySet()) {
+                generator.writeNumberField(hitRate.getKey(), hitRate.getValue());
+            }
+            final Runtime runtime = Runtime.getRuntime();
+            generator.writeNumberField("HeapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @return each cache's hit rate since the last line, named e.g. NewestWhiteboardCacheHitRate, for the caches that
+     * have been used since.
+     */
+    private Map<String, Double> getCacheHitRates() {
+        final Map<String, CacheStats> currentCacheStats = cacheStats.get();
+        final Map<String, Double> hitRates = new TreeMap<>();
+        currentCacheStats.forEach((name, stats) -> {
+            final CacheStats last = lastCacheStats.get(name);
+            final CacheStats since = last == null ? stats : stats.minus(last);
+            if (since.requestCount() > 0) {
+                hitRates.put(CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, name) + "CacheHitRate",
+                        since.hitRate() * 100);
+            }
+        });
+        lastCacheStats = currentCacheStats;
+        return hitRates;
+    }
+
+    private static void writeDefinition(final JsonGenerator generator,
+                                        final String name,
+                                        final Metric.Unit unit) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("Name", name);
+        generator.writeStringField("Unit", unit.getName());
+        generator.writeEndObject();
+    }
+
+    /**
+     * As the midpoint of each bucket with values in it and how many, which CloudWatch takes in place of the values
+     * themselves, with the exact count, sum, minimum and maximum.
+     */
+    private static void writeDistribution(final JsonGenerator generator,
+                                          final Metric.Unit unit,
+                                          final Histogram.Snapshot snapshot) throws IOException {
+        final List<Integer> buckets = new ArrayList<>();
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            if (snapshot.counts[bucket] > 0) {
+                buckets.add(bucket);
+            }
+        }
+        // Only if the values are spread over more than 25 powers of two. Neighbouring buckets are merged, into the
+        // midpoint of their values.
+        final int bucketsPerValue = (buckets.size() + MAX_VALUES - 1) / MAX_VALUES;
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("Values");
+        for (int i = 0; i < buckets.size(); i += bucketsPerValue) {
+            double weightedSum = 0;
+            long count = 0;
+            for (int j = i; j < Math.min(i + bucketsPerValue, buckets.size()); j++) {
+                weightedSum += Histogram.midpoint(buckets.get(j)) * snapshot.counts[buckets.get(j)];
+                count += snapshot.counts[buckets.get(j)];
+            }
+            generator.writeNumber(unit.fromRecorded(weightedSum / count));
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("Counts");
+        for (int i = 0; i < buckets.size(); i += bucketsPerValue) {
+            long count = 0;
+            for (int j = i; j < Math.min(i + bucketsPerValue, buckets.size()); j++) {
+                count += snapshot.counts[buckets.get(j)];
+            }
+            generator.writeNumber(count);
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("Count", snapshot.count);
+        generator.writeNumberField("Sum", unit.fromRecorded(snapshot.sum));
+        generator.writeNumberField("Min", unit.fromRecorded(snapshot.min));
+        generator.writeNumberField("Max", unit.fromRecorded(snapshot.max));
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,71 @@
+package tracing;
+
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Appends each trace document to a file, one per line, instead of sending it to the X-Ray daemon, so that a slow
+ * request's trace can be looked at on its own, offline. The documents are the ones the daemon would have been sent, so
+ * {@code aws xray put-trace-segments} takes them too.
+ */
+public class FileEmitter extends Emitter implements Closeable {
+    private static final Logger log = LogManager.getLogger(FileEmitter.class);
+
+    private final Path path;
+    private final Writer writer;
+
+    @SneakyThrows(IOException.class)
+    public FileEmitter(final Path path) {
+        this.path = checkNotNull(path);
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public boolean sendSegment(final Segment segment) {
+        return write(segment.serialize());
+    }
+
+    /**
+     * In Lambda, where the function's segment belongs to Lambda, each of the request's outermost subsegments is sent
+     * on its own, with its trace and parent.
+     */
+    @Override
+    public boolean sendSubsegment(final Subsegment subsegment) {
+        return write(subsegment.streamSerialize());
+    }
+
+    /**
+     * Flushed straight away, since Lambda may freeze the process after the request and never thaw it.
+     */
+    private synchronized boolean write(final String document) {
+        try {
+            writer.write(document);
+            writer.write('\n');
+            writer.flush();
+            return true;
+        } catch (final IOException e) {
+            log.warn("writing trace to {} failed", path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
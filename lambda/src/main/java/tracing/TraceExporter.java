@@ -0,0 +1,16 @@
+package tracing;
+
+/**
+ * Where traces go, set by WHITEBOARD_TRACE_EXPORTER.
+ */
+public enum TraceExporter {
+    /**
+     * To the X-Ray daemon, which Lambda runs alongside the function. The default in Lambda.
+     */
+    DAEMON,
+    /**
+     * To WHITEBOARD_TRACE_FILE, {@code whiteboard-traces.jsonl} in the temporary directory by default, see
+     * {@link FileEmitter}.
+     */
+    FILE,
+}
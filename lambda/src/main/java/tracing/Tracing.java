@@ -0,0 +1,141 @@
+package tracing;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.entities.Entity;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * X-Ray subsegments for the stages of a request that are work in the function rather than calls to AWS, which the SDK
+ * clients trace themselves, so that a slow request's trace shows where its time went instead of a gap between DynamoDB
+ * calls. Each is annotated with what makes it slow, its cells or bytes, so slow ones can be found with a filter
+ * expression such as {@code annotation.cells > 5000}.
+ *
+ * In Lambda every request is traced, and X-Ray's sampling decides which traces are kept. Elsewhere there is only a
+ * trace if {@link #beginLocalTrace} began one, which it only does if WHITEBOARD_TRACE_EXPORTER is set, see
+ * {@link TraceExporter}. Without a trace a span does nothing and allocates nothing.
+ */
+public final class Tracing {
+    private static final Logger log = LogManager.getLogger(Tracing.class);
+
+    private static final boolean IN_LAMBDA = !StringUtils.isBlank(System.getenv("LAMBDA_TASK_ROOT"));
+    /**
+     * Lambda's trace header for the current invocation, from which the SDK makes a subsegment's parent.
+     */
+    private static final String LAMBDA_TRACE_HEADER = "_X_AMZN_TRACE_ID";
+
+    @Nullable
+    private static final TraceExporter exporter = getExporter();
+    private static boolean configured;
+
+    private Tracing() {
+    }
+
+    @Nullable
+    private static TraceExporter getExporter() {
+        final String traceExporter = System.getenv("WHITEBOARD_TRACE_EXPORTER");
+        return StringUtils.isBlank(traceExporter) ? null : TraceExporter.valueOf(traceExporter);
+    }
+
+    private static Path getTraceFile() {
+        final String traceFile = System.getenv("WHITEBOARD_TRACE_FILE");
+        return StringUtils.isBlank(traceFile)
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "whiteboard-traces.jsonl")
+                : Paths.get(traceFile);
+    }
+
+    /**
+     * Point the X-Ray recorder at the configured exporter. Call before any client is created, since the SDK's tracing
+     * handlers hold on to the recorder there is then.
+     */
+    public static synchronized void configure() {
+        if (configured) {
+            return;
+        }
+        configured = true;
+        if (exporter == TraceExporter.FILE) {
+            final Path traceFile = getTraceFile();
+            AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard()
+                    .withEmitter(new FileEmitter(traceFile))
+                    .build());
+            log.info("writing traces to {}", traceFile);
+        }
+    }
+
+    /**
+     * @param name The stage, which is the subsegment's name.
+     * @return a span to annotate and close, as a subsegment of whatever is current if there is a trace.
+     */
+    public static Span begin(final String name) {
+        return isTraced() ? new Span(AWSXRay.beginSubsegment(name)) : Span.NONE;
+    }
+
+    /**
+     * Outside Lambda nothing begins a trace for each request, so this does, if WHITEBOARD_TRACE_EXPORTER is set.
+     *
+     * @param name The service, which is the segment's name.
+     */
+    public static Span beginLocalTrace(final String name) {
+        return IN_LAMBDA || exporter == null ? Span.NONE : new Span(AWSXRay.beginSegment(name));
+    }
+
+    /**
+     * In Lambda there is no trace header during initialisation, and the SDK warns about each subsegment begun then.
+     */
+    private static boolean isTraced() {
+        return IN_LAMBDA
+                ? !StringUtils.isBlank(System.getenv(LAMBDA_TRACE_HEADER))
+                : AWSXRay.getTraceEntity() != null;
+    }
+
+    /**
+     * A subsegment or segment, ended by {@link #close}.
+     */
+    public static final class Span implements AutoCloseable {
+        private static final Span NONE = new Span(null);
+
+        @Nullable
+        private final Entity entity;
+
+        private Span(@Nullable final Entity entity) {
+            this.entity = entity;
+        }
+
+        /**
+         * @param key Letters, digits and underscores only.
+         */
+        public Span annotate(final String key, final long value) {
+            if (entity != null) {
+                entity.putAnnotation(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * @param key Letters, digits and underscores only.
+         */
+        public Span annotate(final String key, final String value) {
+            if (entity != null) {
+                entity.putAnnotation(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (entity instanceof Subsegment) {
+                ((Subsegment) entity).close();
+            } else if (entity instanceof Segment) {
+                ((Segment) entity).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package dynamodb;
+
+import com.google.common.collect.ImmutableList;
+import exception.WhiteboardVersionExistsException;
+import lambda.Encoding;
+import lambda.WhiteboardDeltaCodec;
+import logic.MxGraphDocumentPatcher;
+import logic.XmlUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+class MappedLogWhiteboardTableTest {
+    private static final String CELL = "<mxCell id=\"%s\" value=\"%s\" style=\"rounded=1;\" parent=\"1\" vertex=\"1\">"
+            + "<mxGeometry x=\"10\" y=\"10\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>";
+    private static final String DOCUMENT =
+            "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>%s</root></mxGraphModel>";
+
+    @TempDir
+    Path directory;
+
+    private Encoding encoding;
+    private WhiteboardDeltaCodec deltas;
+
+    @BeforeEach
+    void setUp() {
+        final XmlUtils xmlUtils = new XmlUtils();
+        encoding = new Encoding();
+        deltas = new WhiteboardDeltaCodec(xmlUtils, new MxGraphDocumentPatcher(xmlUtils), encoding);
+    }
+
+    @Test
+    public void testVersionsReadBackAfterReopening() throws IOException {
+        // === given ===
+        // Random cell values barely compress, so the log outgrows its first mapping.
+        final Random random = new Random(1);
+        final ImmutableList.Builder<String> documentsBuilder = ImmutableList.builder();
+        for (int i = 0; i < 6; i++) {
+            documentsBuilder.add(document(random, 200));
+        }
+        final List<String> documents = documentsBuilder.build();
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            saveVersions(dao(table, StorageMode.FULL_COPY), "12345", documents);
+        }
+
+        // === when ===
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            final WhiteboardDao dao = dao(table, StorageMode.FULL_COPY);
+            final Whiteboard newest = dao.getNewestWhiteboard("12345", false /*consistentRead*/);
+            final Whiteboard version2 = dao.getWhiteboardAtVersion("12345", 2L);
+
+            // === then ===
+            Assertions.assertEquals(6L, newest.getVersion());
+            Assertions.assertEquals(documents.get(5), encoding.decode(newest.getContent()));
+            Assertions.assertEquals(documents.get(1), encoding.decode(version2.getContent()));
+            Assertions.assertNull(dao.getNewestWhiteboard("67890", false /*consistentRead*/));
+        }
+    }
+
+    @Test
+    public void testSavingAnExistingVersionFails() throws IOException {
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, true)) {
+            // === given ===
+            final WhiteboardDao dao = dao(table, StorageMode.FULL_COPY);
+            dao.saveCompletelyNewWhiteboard(whiteboard("12345", 1L, String.format(DOCUMENT, "")));
+
+            // === when / then ===
+            Assertions.assertThrows(WhiteboardVersionExistsException.class, () ->
+                    dao.saveCompletelyNewWhiteboard(whiteboard("12345", 1L, String.format(DOCUMENT, ""))));
+        }
+    }
+
+    @Test
+    public void testATornLastRecordIsDropped() throws IOException {
+        // === given ===
+        final Random random = new Random(1);
+        final List<String> documents = ImmutableList.of(document(random, 1), document(random, 2));
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            saveVersions(dao(table, StorageMode.FULL_COPY), "12345", documents);
+        }
+        tearLastByte("12345");
+
+        // === when ===
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            final WhiteboardDao dao = dao(table, StorageMode.FULL_COPY);
+            final Whiteboard newest = dao.getNewestWhiteboard("12345", false /*consistentRead*/);
+            final Whiteboard replacement = whiteboard("12345", 2L, documents.get(1));
+            dao.saveNewWhiteboardVersion(newest, replacement, null /*operations*/);
+
+            // === then ===
+            Assertions.assertEquals(1L, newest.getVersion());
+        }
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            Assertions.assertEquals(2L, dao(table, StorageMode.FULL_COPY)
+                    .getNewestWhiteboard("12345", false /*consistentRead*/)
+                    .getVersion());
+        }
+    }
+
+    /**
+     * Each version is a quarter of the first mapping, so the versions take the log through several doublings.
+     */
+    @Test
+    public void testALogGrownPastSeveralMappingsReadsBack() throws IOException {
+        // === given ===
+        final Random random = new Random(1);
+        final List<Whiteboard> saved = new ArrayList<>();
+        for (long version = 1; version <= 40; version++) {
+            final byte[] content = new byte[256 * 1024];
+            random.nextBytes(content);
+            final Whiteboard whiteboard = new Whiteboard();
+            whiteboard.setIdentifier("12345");
+            whiteboard.setVersion(version);
+            whiteboard.setSnapshotVersion(version);
+            whiteboard.setCompressedContent(content);
+            saved.add(whiteboard);
+        }
+
+        // === when ===
+        final List<Whiteboard> readBeforeReopening;
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            for (final Whiteboard whiteboard : saved) {
+                table.saveIfNotExists(whiteboard).join();
+            }
+            readBeforeReopening = table.loadVersions("12345", 1L, 40L, false /*consistentRead*/).join();
+        }
+        final List<Whiteboard> readAfterReopening;
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            readAfterReopening = table.loadVersions("12345", 1L, 40L, false /*consistentRead*/).join();
+        }
+
+        // === then ===
+        for (final List<Whiteboard> read : ImmutableList.of(readBeforeReopening, readAfterReopening)) {
+            Assertions.assertEquals(saved.size(), read.size());
+            for (int i = 0; i < saved.size(); i++) {
+                Assertions.assertEquals(saved.get(i).getVersion(), read.get(i).getVersion());
+                Assertions.assertArrayEquals(saved.get(i).getCompressedContent(), read.get(i).getCompressedContent());
+            }
+        }
+    }
+
+    @Test
+    public void testDeletedVersionsStayDeletedAfterReopening() throws IOException {
+        // === given ===
+        final Random random = new Random(1);
+        final List<String> documents = ImmutableList.of(document(random, 1), document(random, 2), document(random, 3));
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            saveVersions(dao(table, StorageMode.FULL_COPY), "12345", documents);
+            final Whiteboard key = new Whiteboard();
+            key.setIdentifier("12345");
+            key.setVersion(2L);
+            table.batchDelete(ImmutableList.of(key)).join();
+        }
+
+        // === when ===
+        try (final MappedLogWhiteboardTable table = new MappedLogWhiteboardTable(directory, false)) {
+            final List<Whiteboard> versions = table.loadVersions("12345", 1L, 3L, false /*consistentRead*/).join();
+
+            // === then ===
+            Assertions.assertEquals(ImmutableList.of(1L, 3L), versions.stream()
+                    .map(Whiteboard::getVersion)
+                    .collect(ImmutableList.toImmutableList()));
+            Assertions.assertEquals(Optional.empty(), table.load("12345", 2L).join());
+        }
+    }
+
+    private void saveVersions(final WhiteboardDao dao, final String identifier, final List<String> documents) {
+        Whiteboard previous = whiteboard(identifier, 1L, documents.get(0));
+        dao.saveCompletelyNewWhiteboard(previous);
+        for (final String document : documents.subList(1, documents.size())) {
+            final Whiteboard next = whiteboard(identifier, previous.getVersion() + 1, document);
+            dao.saveNewWhiteboardVersion(previous, next, null /*operations*/);
+            previous = next;
+        }
+    }
+
+    /**
+     * Flip the last byte of the last record, as if the process died while writing it.
+     */
+    private void tearLastByte(final String identifier) throws IOException {
+        final Path path = directory.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(identifier.getBytes(StandardCharsets.UTF_8)) + ".log");
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            long offset = 0;
+            long lastByte = -1;
+            while (true) {
+                header.clear();
+                channel.read(header, offset);
+                final int length = header.getInt(0);
+                if (length <= 0) {
+                    break;
+                }
+                lastByte = offset + Integer.BYTES * 2 + length - 1;
+                offset = lastByte + 1;
+            }
+            final ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, lastByte);
+            last.put(0, (byte) ~last.get(0));
+            last.rewind();
+            channel.write(last, lastByte);
+        }
+    }
+
+    private WhiteboardDao dao(final WhiteboardTable table, final StorageMode storageMode) {
+        return new WhiteboardDao(table, deltas, encoding, storageMode);
+    }
+
+    private static String document(final Random random, final int cellCount) {
+        final StringBuilder cells = new StringBuilder();
+        for (int i = 0; i < cellCount; i++) {
+            final byte[] value = new byte[1000];
+            random.nextBytes(value);
+            cells.append(String.format(CELL, "cell_" + i, Base64.getEncoder().encodeToString(value)));
+        }
+        return String.format(DOCUMENT, cells);
+    }
+
+    private Whiteboard whiteboard(final String identifier, final Long version, final String document) {
+        final Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setIdentifier(identifier);
+        whiteboard.setVersion(version);
+        whiteboard.setContent(encoding.encode(document));
+        return whiteboard;
+    }
+}
@@ -0,0 +1,211 @@
+package dynamodb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import exception.WhiteboardVersionExistsException;
+import lambda.Encoding;
+import lambda.WhiteboardDeltaCodec;
+import logic.MxGraphDocumentPatcher;
+import logic.XmlUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WhiteboardDao} on a table in memory, for what doesn't need DynamoDB Local to show.
+ */
+class WhiteboardDaoInMemoryTest {
+    private static final String CELL = "<mxCell id=\"%s\" value=\"%s\" style=\"rounded=1;\" parent=\"1\" vertex=\"1\">"
+            + "<mxGeometry x=\"10\" y=\"10\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>";
+    private static final String DOCUMENT =
+            "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>%s</root></mxGraphModel>";
+    private static final String CLIENT_THREAD = "client";
+
+    private Encoding encoding;
+    private MxGraphDocumentPatcher patcher;
+    private WhiteboardDeltaCodec deltas;
+    private ExecutorService clientExecutor;
+
+    @BeforeEach
+    void setUp() {
+        final XmlUtils xmlUtils = new XmlUtils();
+        encoding = new Encoding();
+        patcher = new MxGraphDocumentPatcher(xmlUtils);
+        deltas = new WhiteboardDeltaCodec(xmlUtils, patcher, encoding);
+        clientExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(CLIENT_THREAD)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientExecutor.shutdown();
+    }
+
+    @Test
+    public void testContentIsNotRebuiltOnTheClientThread() {
+        // === given ===
+        // Enough cells that the change is saved as a delta, which a read replays onto the snapshot.
+        final StringBuilder cells = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            cells.append(String.format(CELL, "cell_" + i, i));
+        }
+        final WhiteboardTable table = new ClientThreadTable(new InMemoryWhiteboardTable());
+        final WhiteboardDao savingDao = new WhiteboardDao(table, deltas, encoding, StorageMode.SNAPSHOT_AND_DELTA);
+        final Whiteboard version1 = whiteboard("12345", 1L, String.format(DOCUMENT, cells));
+        final String document2 = String.format(DOCUMENT, cells + String.format(CELL, "a", "A"));
+        savingDao.saveCompletelyNewWhiteboard(version1);
+        savingDao.saveNewWhiteboardVersion(version1, whiteboard("12345", 2L, document2), null /*operations*/);
+        final Set<String> decodeThreads = ConcurrentHashMap.newKeySet();
+        final ContentStorageFormat recordingFormat = new ContentStorageFormat() {
+            @Override
+            public byte[] toStored(final String content) {
+                return encoding.toStored(content);
+            }
+
+            @Override
+            public String fromStored(final byte[] stored) {
+                decodeThreads.add(Thread.currentThread().getName());
+                return encoding.fromStored(stored);
+            }
+        };
+
+        // === when ===
+        final Whiteboard newest = new WhiteboardDao(table, deltas, recordingFormat, StorageMode.SNAPSHOT_AND_DELTA)
+                .getNewestWhiteboard("12345", false /*consistentRead*/);
+
+        // === then ===
+        Assertions.assertEquals(2L, newest.getVersion());
+        Assertions.assertEquals(1L, newest.getSnapshotVersion());
+        Assertions.assertEquals(ImmutableList.of(), patcher.diff(document2, encoding.decode(newest.getContent())));
+        Assertions.assertFalse(decodeThreads.isEmpty());
+        Assertions.assertFalse(decodeThreads.contains(CLIENT_THREAD), decodeThreads.toString());
+    }
+
+    @Test
+    public void testLosingWriterDeletesItsChunks() {
+        // === given ===
+        final List<Whiteboard> savedChunks = new ArrayList<>();
+        final InMemoryWhiteboardTable table = new InMemoryWhiteboardTable() {
+            @Override
+            public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+                savedChunks.addAll(whiteboards);
+                return super.batchSave(whiteboards);
+            }
+        };
+        final Random random = new Random(1);
+        final Whiteboard winner = whiteboard("12345", 1L, chunkedDocument(random));
+        new WhiteboardDao(table, deltas, encoding, StorageMode.FULL_COPY).saveCompletelyNewWhiteboard(winner);
+        final List<Whiteboard> winnersChunks = new ArrayList<>(savedChunks);
+        savedChunks.clear();
+
+        // === when ===
+        Assertions.assertThrows(WhiteboardVersionExistsException.class, () ->
+                new WhiteboardDao(table, deltas, encoding, StorageMode.FULL_COPY)
+                        .saveCompletelyNewWhiteboard(whiteboard("12345", 1L, chunkedDocument(random))));
+
+        // === then ===
+        Assertions.assertTrue(winnersChunks.size() > 1, winnersChunks.toString());
+        Assertions.assertTrue(savedChunks.size() > 1, savedChunks.toString());
+        Assertions.assertEquals(ImmutableList.of(), table.batchLoad(savedChunks).join());
+        Assertions.assertEquals(winnersChunks.size(), table.batchLoad(winnersChunks).join().size());
+        Assertions.assertEquals(winner.getContent(), new WhiteboardDao(table, deltas, encoding, StorageMode.FULL_COPY)
+                .getWhiteboardAtVersion("12345", 1L).getContent());
+    }
+
+    /**
+     * Random cell values barely compress, so the stored content takes several chunks.
+     */
+    private static String chunkedDocument(final Random random) {
+        final StringBuilder cells = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            final byte[] value = new byte[1000];
+            random.nextBytes(value);
+            cells.append(String.format(CELL, "cell_" + i, Base64.getEncoder().encodeToString(value)));
+        }
+        return String.format(DOCUMENT, cells);
+    }
+
+    private Whiteboard whiteboard(final String identifier, final Long version, final String document) {
+        final Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setIdentifier(identifier);
+        whiteboard.setVersion(version);
+        whiteboard.setContent(encoding.encode(document));
+        return whiteboard;
+    }
+
+    /**
+     * Completes every future on the client thread, after whatever is chained onto it has been, as an async client's
+     * event loop does.
+     */
+    private class ClientThreadTable implements WhiteboardTable {
+        private final WhiteboardTable table;
+
+        ClientThreadTable(final WhiteboardTable table) {
+            this.table = table;
+        }
+
+        private <T> CompletableFuture<T> onClientThread(final CompletableFuture<T> future) {
+            return future.thenApplyAsync(result -> result,
+                    CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS, clientExecutor));
+        }
+
+        @Override
+        public CompletableFuture<Optional<Whiteboard>> load(final String identifier, final long version) {
+            return onClientThread(table.load(identifier, version));
+        }
+
+        @Override
+        public CompletableFuture<Optional<Whiteboard>> loadNewest(final String identifier,
+                                                                  final boolean consistentRead) {
+            return onClientThread(table.loadNewest(identifier, consistentRead));
+        }
+
+        @Override
+        public CompletableFuture<Optional<Whiteboard>> loadNewestKeysAndDelta(final String identifier,
+                                                                              final boolean consistentRead) {
+            return onClientThread(table.loadNewestKeysAndDelta(identifier, consistentRead));
+        }
+
+        @Override
+        public CompletableFuture<List<Whiteboard>> loadVersions(final String identifier,
+                                                                final long fromVersion,
+                                                                final long toVersion,
+                                                                final boolean consistentRead) {
+            return onClientThread(table.loadVersions(identifier, fromVersion, toVersion, consistentRead));
+        }
+
+        @Override
+        public CompletableFuture<List<Whiteboard>> batchLoad(final List<Whiteboard> keys) {
+            return onClientThread(table.batchLoad(keys));
+        }
+
+        @Override
+        public CompletableFuture<Void> saveIfNotExists(final Whiteboard whiteboard) {
+            return onClientThread(table.saveIfNotExists(whiteboard));
+        }
+
+        @Override
+        public CompletableFuture<Void> batchSave(final List<Whiteboard> whiteboards) {
+            return onClientThread(table.batchSave(whiteboards));
+        }
+
+        @Override
+        public CompletableFuture<Void> batchDelete(final List<Whiteboard> keys) {
+            return onClientThread(table.batchDelete(keys));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package dynamodb;
+
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.datamodeling.ConversionSchemas;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.SaveBehavior;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
+import com.google.common.collect.ImmutableList;
+import exception.WhiteboardVersionExistsException;
+import lambda.Encoding;
+import lambda.WhiteboardDeltaCodec;
+import logic.CellOperation;
+import logic.MxGraphDocumentPatcher;
+import logic.XmlUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Runs against DynamoDB Local, started with e.g. {@code docker run -p 8000:8000 amazon/dynamodb-local}, when
+ * DYNAMODB_ENDPOINT=http://localhost:8000 is set, along with AWS_REGION and any credentials. Whiteboards saved through
+ * one of the tables are read back through the other, both ways round.
+ */
+@EnabledIfEnvironmentVariable(named = "DYNAMODB_ENDPOINT", matches = ".+")
+class WhiteboardDaoTest {
+    private static final String CELL = "<mxCell id=\"%s\" value=\"%s\" style=\"rounded=1;\" parent=\"1\" vertex=\"1\">"
+            + "<mxGeometry x=\"10\" y=\"10\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>";
+    private static final String DOCUMENT =
+            "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>%s</root></mxGraphModel>";
+
+    private static AmazonDynamoDB dynamoDb;
+    private static DynamoDbAsyncClient dynamoDbAsync;
+    private static String tableName;
+
+    private Encoding encoding;
+    private MxGraphDocumentPatcher patcher;
+    private WhiteboardDeltaCodec deltas;
+
+    @BeforeAll
+    static void createTable() {
+        final String endpoint = System.getenv("DYNAMODB_ENDPOINT");
+        dynamoDb = AmazonDynamoDBClientBuilder.standard()
+                .withEndpointConfiguration(new EndpointConfiguration(endpoint, System.getenv("AWS_REGION")))
+                .build();
+        dynamoDbAsync = DynamoDbAsyncClient.builder()
+                .httpClientBuilder(AwsCrtAsyncHttpClient.builder())
+                .endpointOverride(URI.create(endpoint))
+                .build();
+        tableName = "whiteboard-test-" + UUID.randomUUID();
+        dynamoDbAsync.createTable(CreateTableRequest.builder()
+                .tableName(tableName)
+                .keySchema(
+                        KeySchemaElement.builder().attributeName("identifier").keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("version").keyType(KeyType.RANGE).build())
+                .attributeDefinitions(
+                        AttributeDefinition.builder()
+                                .attributeName("identifier")
+                                .attributeType(ScalarAttributeType.S)
+                                .build(),
+                        AttributeDefinition.builder()
+                                .attributeName("version")
+                                .attributeType(ScalarAttributeType.N)
+                                .build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build()).join();
+    }
+
+    @AfterAll
+    static void deleteTable() {
+        dynamoDbAsync.deleteTable(DeleteTableRequest.builder().tableName(tableName).build()).join();
+    }
+
+    @BeforeEach
+    void setUp() {
+        final XmlUtils xmlUtils = new XmlUtils();
+        encoding = new Encoding();
+        patcher = new MxGraphDocumentPatcher(xmlUtils);
+        deltas = new WhiteboardDeltaCodec(xmlUtils, patcher, encoding);
+    }
+
+    @Test
+    public void testSnapshotAndDeltasReadBack() {
+        for (final List<WhiteboardDao> daos : savingAndReadingDaos(StorageMode.SNAPSHOT_AND_DELTA)) {
+            // === given ===
+            final String identifier = UUID.randomUUID().toString();
+            // Enough cells that no change is big enough to be saved as a snapshot instead of a delta.
+            final StringBuilder unchangedCells = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                unchangedCells.append(String.format(CELL, "cell_" + i, i));
+            }
+            final String a = String.format(CELL, "a", "A");
+            final String a2 = String.format(CELL, "a", "A2");
+            final String b = String.format(CELL, "b", "B");
+            final String document1 = String.format(DOCUMENT, unchangedCells + a);
+            final String document2 = String.format(DOCUMENT, unchangedCells + a + b);
+            final String document3 = String.format(DOCUMENT, unchangedCells + a2 + b);
+            final String document4 = String.format(DOCUMENT, unchangedCells + a2);
+            final WhiteboardDao savingDao = daos.get(0);
+            Whiteboard previous = whiteboard(identifier, 1L, document1);
+            savingDao.saveCompletelyNewWhiteboard(previous);
+            for (final String document : ImmutableList.of(document2, document3, document4)) {
+                final Whiteboard next = whiteboard(identifier, previous.getVersion() + 1, document);
+                savingDao.saveNewWhiteboardVersion(previous, next, null /*operations*/);
+                previous = next;
+            }
+
+            // === when ===
+            final WhiteboardDao readingDao = daos.get(1);
+            final Whiteboard newest = readingDao.getNewestWhiteboard(identifier, false /*consistentRead*/);
+            final Whiteboard version2 = readingDao.getWhiteboardAtVersion(identifier, 2L);
+            final List<CellOperation> operations = readingDao.getOperationsSince(newest, 1L);
+
+            // === then ===
+            Assertions.assertEquals(4L, newest.getVersion());
+            Assertions.assertEquals(1L, newest.getSnapshotVersion());
+            Assertions.assertEquals(ImmutableList.of(), patcher.diff(document4, encoding.decode(newest.getContent())));
+            Assertions.assertEquals(2L, version2.getVersion());
+            Assertions.assertEquals(ImmutableList.of(),
+                    patcher.diff(document2, encoding.decode(version2.getContent())));
+            Assertions.assertEquals(ImmutableList.of("b", "a", "b"), operations.stream()
+                    .map(CellOperation::getId)
+                    .collect(ImmutableList.toImmutableList()));
+        }
+    }
+
+    /**
+     * Random cell values barely compress, so the stored content takes several chunks.
+     */
+    @Test
+    public void testChunkedContentReadBack() {
+        for (final List<WhiteboardDao> daos : savingAndReadingDaos(StorageMode.FULL_COPY)) {
+            // === given ===
+            final String identifier = UUID.randomUUID().toString();
+            final Random random = new Random(1);
+            final StringBuilder cells = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                final byte[] value = new byte[1000];
+                random.nextBytes(value);
+                cells.append(String.format(CELL, "cell_" + i, Base64.getEncoder().encodeToString(value)));
+            }
+            final Whiteboard whiteboard = whiteboard(identifier, 1L, String.format(DOCUMENT, cells));
+            daos.get(0).saveCompletelyNewWhiteboard(whiteboard);
+
+            // === when ===
+            final Whiteboard result = daos.get(1).getWhiteboardAtVersion(identifier, 1L);
+
+            // === then ===
+            Assertions.assertEquals(whiteboard.getContent(), result.getContent());
+        }
+    }
+
+    @Test
+    public void testSavingAnExistingVersionFails() {
+        for (final List<WhiteboardDao> daos : savingAndReadingDaos(StorageMode.FULL_COPY)) {
+            // === given ===
+            final String identifier = UUID.randomUUID().toString();
+            daos.get(0).saveCompletelyNewWhiteboard(whiteboard(identifier, 1L, String.format(DOCUMENT, "")));
+
+            // === when / then ===
+            Assertions.assertThrows(WhiteboardVersionExistsException.class, () ->
+                    daos.get(1).saveCompletelyNewWhiteboard(whiteboard(identifier, 1L, String.format(DOCUMENT, ""))));
+        }
+    }
+
+    @Test
+    public void testMissingWhiteboardsReadAsNull() {
+        for (final List<WhiteboardDao> daos : savingAndReadingDaos(StorageMode.FULL_COPY)) {
+            // === given ===
+            final String identifier = UUID.randomUUID().toString();
+
+            // === when / then ===
+            Assertions.assertNull(daos.get(1).getNewestWhiteboard(identifier, true /*consistentRead*/));
+            Assertions.assertNull(daos.get(1).getNewestWhiteboard(identifier, false /*consistentRead*/));
+            Assertions.assertNull(daos.get(1).getWhiteboardAtVersion(identifier, 1L));
+            Assertions.assertNull(daos.get(1).getNewestStoredWhiteboard(identifier, false /*consistentRead*/));
+        }
+    }
+
+    /**
+     * Pairs of a DAO to save through and a DAO to read through, one on each table each way round. The reading DAO
+     * has its own caches, so it reads what was saved from the table.
+     */
+    private List<List<WhiteboardDao>> savingAndReadingDaos(final StorageMode storageMode) {
+        return ImmutableList.of(
+                ImmutableList.of(dao(mapperTable(), storageMode), dao(asyncTable(), storageMode)),
+                ImmutableList.of(dao(asyncTable(), storageMode), dao(mapperTable(), storageMode)));
+    }
+
+    private WhiteboardDao dao(final WhiteboardTable table, final StorageMode storageMode) {
+        return new WhiteboardDao(table, deltas, encoding, storageMode);
+    }
+
+    private static WhiteboardTable mapperTable() {
+        final DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
+                .withSaveBehavior(SaveBehavior.UPDATE)
+                .withTableNameOverride(TableNameOverride.withTableNameReplacement(tableName))
+                .withConversionSchema(ConversionSchemas.V2)
+                .build();
+        return new MapperWhiteboardTable(new DynamoDBMapper(dynamoDb, config).newTableMapper(Whiteboard.class));
+    }
+
+    private static WhiteboardTable asyncTable() {
+        return new AsyncWhiteboardTable(dynamoDbAsync, tableName);
+    }
+
+    private Whiteboard whiteboard(final String identifier, final Long version, final String document) {
+        final Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setIdentifier(identifier);
+        whiteboard.setVersion(version);
+        whiteboard.setContent(encoding.encode(document));
+        return whiteboard;
+    }
+}
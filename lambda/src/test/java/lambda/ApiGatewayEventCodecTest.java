@@ -0,0 +1,87 @@
+package lambda;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+class ApiGatewayEventCodecTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ApiGatewayEventCodec codec = new ApiGatewayEventCodec();
+
+    @Test
+    public void testBodyIsBoundWhereverTheResourceIs() throws IOException {
+        for (final boolean resourceFirst : new boolean[] {true, false}) {
+            // === given ===
+            final String body = objectMapper.writeValueAsString(
+                    new SetWhiteboardRequest(1, "12345", 3L, "quote \" backslash \\ newline \n é"));
+            final String event = resourceFirst
+                    ? event("\"resource\": \"/api/set\"", "\"requestContext\": {\"stage\": [1, {}]}",
+                    "\"body\": " + objectMapper.writeValueAsString(body))
+                    : event("\"body\": " + objectMapper.writeValueAsString(body),
+                    "\"headers\": {\"If-None-Match\": \"\\\"12345@3\\\"\"}", "\"resource\": \"/api/set\"");
+
+            // === when ===
+            final ApiGatewayEventCodec.Request request = codec.readRequest(
+                    new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)),
+                    resource -> objectMapper.readerFor(SetWhiteboardRequest.class));
+
+            // === then ===
+            Assertions.assertEquals("/api/set", request.getResource());
+            final SetWhiteboardRequest setWhiteboardRequest = (SetWhiteboardRequest) request.getBody();
+            Assertions.assertEquals("12345", setWhiteboardRequest.getIdentifier());
+            Assertions.assertEquals(3L, setWhiteboardRequest.getSourceWhiteboardVersion());
+            Assertions.assertEquals("quote \" backslash \\ newline \n é", setWhiteboardRequest.getContent());
+        }
+    }
+
+    @Test
+    public void testABadBodyFailsOnlyWhenUsed() throws IOException {
+        // === given ===
+        final String event = event("\"resource\": \"/api/get\"", "\"body\": \"{not json\"");
+
+        // === when ===
+        final ApiGatewayEventCodec.Request request = codec.readRequest(
+                new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)),
+                resource -> objectMapper.readerFor(GetWhiteboardRequest.class));
+
+        // === then ===
+        Assertions.assertEquals("/api/get", request.getResource());
+        Assertions.assertThrows(JsonProcessingException.class, request::getBody);
+    }
+
+    @Test
+    public void testResponseBodyIsEscapedIntoTheEnvelope() throws IOException {
+        // === given ===
+        final SetWhiteboardResponse body = new SetWhiteboardResponse("12345", "quote \" newline \n é", 1L, 2L, 3L);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // === when ===
+        codec.writeResponse(output, 200, ImmutableMap.of("ETag", "\"12345@3\""), body,
+                objectMapper.writerFor(SetWhiteboardResponse.class));
+
+        // === then ===
+        final Map<String, Object> response = objectMapper.readValue(output.toByteArray(),
+                new TypeReference<Map<String, Object>>() {});
+        Assertions.assertEquals(200, response.get("statusCode"));
+        Assertions.assertEquals(false, response.get("isBase64Encoded"));
+        Assertions.assertEquals(ImmutableMap.of("ETag", "\"12345@3\""), response.get("headers"));
+        final SetWhiteboardResponse readBody =
+                objectMapper.readValue((String) response.get("body"), SetWhiteboardResponse.class);
+        Assertions.assertEquals("quote \" newline \n é", readBody.getContent());
+        Assertions.assertEquals(3L, readBody.getCurrentNewestWhiteboardVersion());
+    }
+
+    private static String event(final String... fields) {
+        return "{" + String.join(", ", fields) + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package lambda;
+
+import com.google.common.collect.ImmutableList;
+import exception.WhiteboardVersionExistsException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class CommitLoopTest {
+    private List<Long> sleeps;
+    private CommitLoop commitLoop;
+
+    @BeforeEach
+    void setUp() {
+        sleeps = new ArrayList<>();
+        commitLoop = new CommitLoop(4, Duration.ofMillis(100), sleeps::add);
+    }
+
+    @Test
+    public void testRetriesWithConsistentReadsUntilCommitted() {
+        // === given ===
+        final List<Boolean> consistentReads = new ArrayList<>();
+
+        // === when ===
+        final String result = commitLoop.commit("12345", "set", attempt -> {
+            consistentReads.add(attempt.isConsistentRead());
+            if (attempt.getNumber() < 3) {
+                throw new WhiteboardVersionExistsException("lost", null);
+            }
+            return "committed";
+        });
+
+        // === then ===
+        Assertions.assertEquals("committed", result);
+        Assertions.assertEquals(ImmutableList.of(false, true, true), consistentReads);
+        Assertions.assertEquals(2, sleeps.size());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        // === given ===
+        final List<Integer> attempts = new ArrayList<>();
+
+        // === when / then ===
+        Assertions.assertThrows(WhiteboardVersionExistsException.class, () ->
+                commitLoop.commit("12345", "patch", attempt -> {
+                    attempts.add(attempt.getNumber());
+                    throw new WhiteboardVersionExistsException("lost", null);
+                }));
+        Assertions.assertEquals(ImmutableList.of(1, 2, 3, 4), attempts);
+        Assertions.assertEquals(3, sleeps.size());
+    }
+
+    @Test
+    public void testOtherFailuresAreNotRetried() {
+        // === when / then ===
+        Assertions.assertThrows(IllegalStateException.class, () ->
+                commitLoop.commit("12345", "set", attempt -> {
+                    throw new IllegalStateException("broken");
+                }));
+        Assertions.assertEquals(ImmutableList.of(), sleeps);
+    }
+
+    @Test
+    public void testBackoffIsJitteredUpToADoublingCap() {
+        for (int i = 0; i < 1000; i++) {
+            // === when ===
+            final long first = commitLoop.getBackoffMillis(1);
+            final long third = commitLoop.getBackoffMillis(3);
+            final long tenth = commitLoop.getBackoffMillis(10);
+
+            // === then ===
+            Assertions.assertTrue(first >= 0 && first <= 100, "first backoff " + first);
+            Assertions.assertTrue(third >= 0 && third <= 400, "third backoff " + third);
+            Assertions.assertTrue(tenth >= 0 && tenth <= 1000, "tenth backoff " + tenth);
+        }
+    }
+}
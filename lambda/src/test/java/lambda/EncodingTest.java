@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,6 +46,44 @@ class EncodingTest {
         Assertions.assertEquals(expectedDecoded, decoded);
     }
 
+    /**
+     * With deflate for storage too, content from clients is stored exactly as they deflated it.
+     */
+    @Test
+    public void testStoredDeflateKeepsClientBytes() {
+        // === given ===
+        final String encoded = loadResourcesFile("encoding01/encoded.txt");
+
+        // === when ===
+        final byte[] stored = encoding.toStored(encoded);
+
+        // === then ===
+        Assertions.assertEquals(DeflateCodec.FORMAT, stored[0]);
+        Assertions.assertEquals(encoded, encoding.fromStored(stored));
+    }
+
+    /**
+     * Content stored with LZ4 reads back the same, and so does content stored with deflate when LZ4 is in use.
+     */
+    @Test
+    public void testStoredLz4RoundTrip() {
+        // === given ===
+        final Encoding lz4Encoding = new Encoding(new DeflateCodec(Deflater.DEFAULT_COMPRESSION), new Lz4Codec());
+        final String expectedDecoded = loadResourcesFile("encoding01/decoded.txt");
+        final String encoded = loadResourcesFile("encoding01/encoded.txt");
+
+        // === when ===
+        final byte[] stored = lz4Encoding.toStored(encoded);
+        final String decodedFromLz4 = lz4Encoding.decode(lz4Encoding.fromStored(stored));
+        final String decodedFromDeflate = lz4Encoding.decode(lz4Encoding.fromStored(encoding.toStored(encoded)));
+
+        // === then ===
+        Assertions.assertEquals(Lz4Codec.FORMAT, stored[0]);
+        Assertions.assertEquals(expectedDecoded, decodedFromLz4);
+        Assertions.assertEquals(expectedDecoded, decodedFromDeflate);
+        Assertions.assertEquals("", lz4Encoding.fromStored(lz4Encoding.toStored("")));
+    }
+
     @SneakyThrows(IOException.class)
     private static String loadResourcesFile(final String filename) {
         return Resources.toString(Resources.getResource(filename), StandardCharsets.UTF_8);
@@ -0,0 +1,135 @@
+package lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dynamodb.InMemoryWhiteboardTable;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+class LocalServerTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String DOCUMENT = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+            + "</root></mxGraphModel>";
+
+    private LocalServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() {
+        server = new LocalServer(new WhiteboardHandler(new InMemoryWhiteboardTable()),
+                new InetSocketAddress("localhost", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testGetSetAndGetAgain() throws IOException {
+        // === given ===
+        final HttpResponse<String> created = post("/api/get", "{\"apiVersion\": 1, \"identifier\": \"12345\"}", null);
+
+        // === when ===
+        final HttpResponse<String> set = post("/api/set", objectMapper.writeValueAsString(
+                new SetWhiteboardRequest(1, "12345", 1L, new Encoding().encode(DOCUMENT))), null);
+        final HttpResponse<String> notModified = post("/api/get", "{\"apiVersion\": 1, \"identifier\": \"12345\"}",
+                "\"12345@2\"");
+
+        // === then ===
+        Assertions.assertEquals(200, created.statusCode());
+        Assertions.assertEquals("\"12345@1\"", created.headers().firstValue("ETag").orElse(null));
+        Assertions.assertEquals(1L, objectMapper.readValue(created.body(), GetWhiteboardResponse.class)
+                .getWhiteboardVersion());
+        Assertions.assertEquals(200, set.statusCode());
+        Assertions.assertEquals(2L, objectMapper.readValue(set.body(), SetWhiteboardResponse.class)
+                .getCurrentNewestWhiteboardVersion());
+        Assertions.assertEquals(304, notModified.statusCode());
+    }
+
+    @Test
+    public void testVersionsAreCachedForGoodAndTheHeadForASecond() throws IOException {
+        // === given ===
+        post("/api/get", "{\"apiVersion\": 1, \"identifier\": \"12345\"}", null);
+        final String content = new Encoding().encode(DOCUMENT);
+        post("/api/set", objectMapper.writeValueAsString(new SetWhiteboardRequest(1, "12345", 1L, content)), null);
+
+        // === when ===
+        final HttpResponse<String> head = get("/api/board/12345/head", null);
+        final HttpResponse<String> version = get("/api/board/12345/v/2", null);
+        final HttpResponse<String> notModified = get("/api/board/12345/v/2", "\"12345@2\"");
+        final HttpResponse<String> futureVersion = get("/api/board/12345/v/3", null);
+        final HttpResponse<String> unknownWhiteboard = get("/api/board/54321/head", null);
+        final HttpResponse<String> post = post("/api/board/12345/head", "{}", null);
+
+        // === then ===
+        Assertions.assertEquals(200, head.statusCode());
+        Assertions.assertEquals("public, max-age=1", head.headers().firstValue("Cache-Control").orElse(null));
+        Assertions.assertEquals(2L, objectMapper.readValue(head.body(), GetWhiteboardHeadResponse.class)
+                .getWhiteboardVersion());
+        Assertions.assertEquals(200, version.statusCode());
+        Assertions.assertEquals("public, max-age=31536000, immutable",
+                version.headers().firstValue("Cache-Control").orElse(null));
+        Assertions.assertEquals("\"12345@2\"", version.headers().firstValue("ETag").orElse(null));
+        Assertions.assertEquals(content, objectMapper.readValue(version.body(), GetWhiteboardResponse.class)
+                .getContent());
+        Assertions.assertEquals(304, notModified.statusCode());
+        Assertions.assertEquals(404, futureVersion.statusCode());
+        Assertions.assertEquals("public, max-age=1", futureVersion.headers().firstValue("Cache-Control").orElse(null));
+        Assertions.assertEquals(404, unknownWhiteboard.statusCode());
+        Assertions.assertEquals(405, post.statusCode());
+    }
+
+    @Test
+    public void testUnknownPathsAndMethods() {
+        // === when ===
+        final HttpResponse<String> unknownPath = post("/api/get/12345", "{}", null);
+        final HttpResponse<String> preflight = send(HttpRequest.newBuilder(uri("/api/set"))
+                .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+                .build());
+        final HttpResponse<String> wrongMethod = send(HttpRequest.newBuilder(uri("/api/set")).GET().build());
+
+        // === then ===
+        Assertions.assertEquals(404, unknownPath.statusCode());
+        Assertions.assertEquals(204, preflight.statusCode());
+        Assertions.assertEquals("*", preflight.headers().firstValue("Access-Control-Allow-Origin").orElse(null));
+        Assertions.assertEquals(405, wrongMethod.statusCode());
+    }
+
+    private HttpResponse<String> post(final String path, final String body, final String ifNoneMatch) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri(path))
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return send(request.build());
+    }
+
+    private HttpResponse<String> get(final String path, final String ifNoneMatch) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return send(request.build());
+    }
+
+    @SneakyThrows({IOException.class, InterruptedException.class})
+    private HttpResponse<String> send(final HttpRequest request) {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,115 @@
+package lambda;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import logic.CellOperation;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RealtimeTest {
+    private static final ObjectReader whiteboardUpdateReader = new ObjectMapper().readerFor(WhiteboardUpdate.class);
+    private static final String SUBSCRIBE_12345 = "{\"action\": \"subscribe\", \"identifier\": \"12345\"}";
+
+    private LocalRealtimeServer server;
+    private ConnectionPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        server = new LocalRealtimeServer();
+        publisher = new ConnectionPublisher(
+                server.getSubscriptions(), server, MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void testSubscribersReceiveOperations() {
+        // === given ===
+        final String subscriber = server.connect();
+        final String otherSubscriber = server.connect();
+        final String otherBoardSubscriber = server.connect();
+        server.send(subscriber, SUBSCRIBE_12345);
+        server.send(otherSubscriber, SUBSCRIBE_12345);
+        server.send(otherBoardSubscriber, "{\"action\": \"subscribe\", \"identifier\": \"67890\"}");
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.DELETE, "2", null, null));
+
+        // === when ===
+        publisher.publish("12345", 3L, 4L, () -> operations);
+
+        // === then ===
+        for (final String connectionId : ImmutableList.of(subscriber, otherSubscriber)) {
+            final List<String> messages = server.getMessages(connectionId);
+            assertEquals(1, messages.size());
+            final WhiteboardUpdate update = readUpdate(messages.get(0));
+            assertEquals("12345", update.getIdentifier());
+            assertEquals(3L, update.getPreviousVersion());
+            assertEquals(4L, update.getVersion());
+            assertEquals(1, update.getOperations().size());
+            assertEquals(CellOperation.Type.DELETE, update.getOperations().get(0).getType());
+            assertEquals("2", update.getOperations().get(0).getId());
+        }
+        assertEquals(ImmutableList.of(), server.getMessages(otherBoardSubscriber));
+    }
+
+    @Test
+    public void testUnsubscribedAndGoneConnectionsReceiveNothing() {
+        // === given ===
+        final String unsubscribed = server.connect();
+        final String disconnected = server.connect();
+        final String dropped = server.connect();
+        for (final String connectionId : ImmutableList.of(unsubscribed, disconnected, dropped)) {
+            server.send(connectionId, SUBSCRIBE_12345);
+        }
+        server.send(unsubscribed, "{\"action\": \"unsubscribe\", \"identifier\": \"12345\"}");
+        server.disconnect(disconnected);
+        server.drop(dropped);
+
+        // === when ===
+        publisher.publish("12345", 1L, 2L, ImmutableList::of);
+
+        // === then ===
+        assertEquals(ImmutableList.of(), server.getMessages(unsubscribed));
+        assertEquals(ImmutableList.of(), server.getSubscriptions().getConnectionIds("12345"));
+    }
+
+    @Test
+    public void testNoSubscribersDoesNotWorkOutOperations() {
+        // === when ===
+        publisher.publish("12345", 1L, 2L, () -> {
+            throw new AssertionError("operations should not be needed");
+        });
+    }
+
+    @Test
+    public void testTooManyOperationsAreLeftOut() {
+        // === given ===
+        final String subscriber = server.connect();
+        server.send(subscriber, SUBSCRIBE_12345);
+        final String cell = String.format("<mxCell id=\"2\" value=\"%s\"/>", Strings.repeat("x", 200_000));
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.UPDATE, "2", cell, null));
+
+        // === when ===
+        publisher.publish("12345", 1L, 2L, () -> operations);
+
+        // === then ===
+        final List<String> messages = server.getMessages(subscriber);
+        assertEquals(1, messages.size());
+        final WhiteboardUpdate update = readUpdate(messages.get(0));
+        assertEquals(2L, update.getVersion());
+        assertNull(update.getOperations());
+    }
+
+    @SneakyThrows(IOException.class)
+    private static WhiteboardUpdate readUpdate(final String message) {
+        return whiteboardUpdateReader.readValue(message);
+    }
+}
@@ -0,0 +1,54 @@
+package lambda;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class RequestLoggingTest {
+    @AfterEach
+    void tearDown() {
+        RequestLogging.end();
+    }
+
+    @Test
+    public void testAClientsRequestIdIsUsedOnlyIfPlausible() {
+        // === when ===
+        final String plausible = RequestLogging.begin(null /*context*/, "client-1.2:3");
+        final String forged = RequestLogging.begin(null /*context*/, "abc\n2020-01-01 00:00:00 forged line");
+
+        // === then ===
+        Assertions.assertEquals("client-1.2:3", plausible);
+        Assertions.assertNotEquals("abc\n2020-01-01 00:00:00 forged line", forged);
+        Assertions.assertEquals(forged, ThreadContext.get(RequestLogging.REQUEST_ID_KEY));
+
+        // === when ===
+        RequestLogging.end();
+
+        // === then ===
+        Assertions.assertNull(ThreadContext.get(RequestLogging.REQUEST_ID_KEY));
+        Assertions.assertNull(ThreadContext.get(RequestLogging.SAMPLED_KEY));
+    }
+
+    @Test
+    public void testCredentialsAreRedactedFromHeaders() {
+        // === given ===
+        final Map<String, String> headers = ImmutableMap.of(
+                "Authorization", "Bearer secret",
+                "X-Amz-Security-Token", "secret",
+                "If-None-Match", "\"12345@3\"");
+
+        // === when ===
+        final Map<String, String> redacted = RequestLogging.redactHeaders(headers);
+
+        // === then ===
+        Assertions.assertEquals(ImmutableMap.of(
+                "Authorization", "<redacted>",
+                "X-Amz-Security-Token", "<redacted>",
+                "If-None-Match", "\"12345@3\""), redacted);
+        Assertions.assertTrue(RequestLogging.redactHeaders(null).isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+package lambda;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import exception.WhiteboardVersionExistsException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+class WriteCoalescerTest {
+    private WriteCoalescer<String, String> coalescer;
+    private List<List<String>> batches;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new WriteCoalescer<>(Duration.ofMillis(200), IllegalArgumentException.class::isInstance);
+        batches = Collections.synchronizedList(new ArrayList<>());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @Test
+    public void testWritesWithinTheWindowAreCommittedTogether() {
+        // === when ===
+        final List<CompletableFuture<String>> results = writeAll(ImmutableList.of(
+                ImmutableList.of("12345", "a"),
+                ImmutableList.of("12345", "b"),
+                ImmutableList.of("12345", "c"),
+                ImmutableList.of("67890", "d")));
+
+        // === then ===
+        Assertions.assertEquals(ImmutableList.of("A", "B", "C", "D"), joinAll(results));
+        Assertions.assertEquals(2, batches.size());
+        Assertions.assertEquals(ImmutableSet.of(ImmutableSet.of("a", "b", "c"), ImmutableSet.of("d")),
+                batches.stream().map(ImmutableSet::copyOf).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testAFailedBatchIsCommittedOneAtATime() {
+        // === when ===
+        final List<CompletableFuture<String>> results = writeAll(ImmutableList.of(
+                ImmutableList.of("12345", "a"),
+                ImmutableList.of("12345", "bad"),
+                ImmutableList.of("12345", "c")));
+
+        // === then ===
+        Assertions.assertEquals("A", results.get(0).join());
+        final CompletionException e = Assertions.assertThrows(CompletionException.class, results.get(1)::join);
+        Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        Assertions.assertEquals("C", results.get(2).join());
+        Assertions.assertEquals(4, batches.size());
+        Assertions.assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    public void testABatchThatLostIsNotCommittedOneAtATime() {
+        // === when ===
+        final List<CompletableFuture<String>> results = writeAll(ImmutableList.of(
+                ImmutableList.of("12345", "a"),
+                ImmutableList.of("12345", "lost"),
+                ImmutableList.of("12345", "c")));
+
+        // === then ===
+        for (final CompletableFuture<String> result : results) {
+            final CompletionException e = Assertions.assertThrows(CompletionException.class, result::join);
+            Assertions.assertTrue(e.getCause() instanceof WhiteboardVersionExistsException, e.toString());
+        }
+        Assertions.assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testAnInterruptedWriterFailsItsBatchAndClosesIt() throws Exception {
+        // === given ===
+        final CompletableFuture<String> interrupted = new CompletableFuture<>();
+        final Thread writer = new Thread(() -> {
+            try {
+                interrupted.complete(coalescer.write("12345", "a", this::commit));
+            } catch (final Throwable t) {
+                interrupted.completeExceptionally(t);
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+        final List<CompletableFuture<String>> joined = writeAll(ImmutableList.of(ImmutableList.of("12345", "b")));
+        Thread.sleep(50);
+
+        // === when ===
+        writer.interrupt();
+
+        // === then ===
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> interrupted.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof InterruptedException, e.toString());
+        Assertions.assertThrows(ExecutionException.class, () -> joined.get(0).get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("C", writeAll(ImmutableList.of(ImmutableList.of("12345", "c"))).get(0)
+                .get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(ImmutableList.of(ImmutableList.of("c")), batches);
+    }
+
+    /**
+     * The writes are submitted together, well within the window.
+     */
+    private List<CompletableFuture<String>> writeAll(final List<List<String>> identifiersAndWrites) {
+        final List<CompletableFuture<String>> results = new ArrayList<>();
+        for (final List<String> identifierAndWrite : identifiersAndWrites) {
+            results.add(CompletableFuture.supplyAsync(() -> coalescer.write(identifierAndWrite.get(0),
+                    identifierAndWrite.get(1), this::commit), executor));
+        }
+        return results;
+    }
+
+    private List<String> commit(final List<String> batch) {
+        batches.add(batch);
+        if (batch.contains("bad")) {
+            throw new IllegalArgumentException("bad write");
+        }
+        if (batch.contains("lost")) {
+            throw new WhiteboardVersionExistsException("lost every attempt", null);
+        }
+        return batch.stream().map(String::toUpperCase).collect(Collectors.toList());
+    }
+
+    private static List<String> joinAll(final List<CompletableFuture<String>> results) {
+        return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+}
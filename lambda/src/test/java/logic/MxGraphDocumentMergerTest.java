@@ -2,6 +2,8 @@ package logic;
 
 import com.google.common.io.Resources;
 import lombok.SneakyThrows;
+import metrics.Metric;
+import metrics.Metrics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -46,6 +48,94 @@ class MxGraphDocumentMergerTest {
         Assertions.assertEquals(expectedDoc, merged);
     }
 
+    /**
+     * The old document adds a node and the new document deletes a different node. Both changes should survive.
+     */
+    @Test
+    public void testMergeDeleteAndAdd() {
+        // === given ===
+        final String ancestorDoc = loadResourcesFile("delete_and_add/doc004_ancestor.xml");
+        final String oldDoc = loadResourcesFile("delete_and_add/doc004_old.xml");
+        final String newDoc = loadResourcesFile("delete_and_add/doc004_new.xml");
+        final String expectedDoc = loadResourcesFile("delete_and_add/doc004_expected.xml");
+
+        // === when ===
+        final String merged = merger.merge(ancestorDoc, oldDoc, newDoc);
+
+        // === then ===
+        Assertions.assertEquals(expectedDoc, merged);
+    }
+
+    /**
+     * The old and new documents each modify a different node. Both modifications should survive.
+     */
+    @Test
+    public void testMergeModifyDifferentNodes() {
+        // === given ===
+        final String ancestorDoc = loadResourcesFile("modify_both/doc005_ancestor.xml");
+        final String oldDoc = loadResourcesFile("modify_both/doc005_old.xml");
+        final String newDoc = loadResourcesFile("modify_both/doc005_new.xml");
+        final String expectedDoc = loadResourcesFile("modify_both/doc005_expected.xml");
+
+        // === when ===
+        final String merged = merger.merge(ancestorDoc, oldDoc, newDoc);
+
+        // === then ===
+        Assertions.assertEquals(expectedDoc, merged);
+    }
+
+    /**
+     * Both documents modify the same node, and the old document also modifies a second node. Only the shared node is a
+     * conflict, which the new document wins; the old document's other modification should survive.
+     */
+    @Test
+    public void testMergeConflictResolvedPerCell() {
+        // === given ===
+        final String ancestorDoc = loadResourcesFile("conflict_one/doc006_ancestor.xml");
+        final String oldDoc = loadResourcesFile("conflict_one/doc006_old.xml");
+        final String newDoc = loadResourcesFile("conflict_one/doc006_new.xml");
+        final String expectedDoc = loadResourcesFile("conflict_one/doc006_expected.xml");
+
+        // === when ===
+        final String merged = merger.merge(ancestorDoc, oldDoc, newDoc);
+
+        // === then ===
+        Assertions.assertEquals(expectedDoc, merged);
+        Assertions.assertEquals(1, merger.getStatistics().getMergesWithConflicts());
+        Assertions.assertEquals(1, merger.getStatistics().getConflictingCells());
+        Assertions.assertEquals(1, merger.getStatistics().getKeptOldChangesDespiteConflicts());
+    }
+
+    /**
+     * Cells can't be matched up by an ID that isn't unique, so the new document is kept whole, which clobbers the old
+     * document's changes. That is counted as a clobber.
+     */
+    @Test
+    public void testMergeWithDuplicateIdsClobbers() {
+        // === given ===
+        final String ancestorDoc = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+                + "<mxCell id=\"a\" value=\"A\" parent=\"1\" vertex=\"1\"/></root></mxGraphModel>";
+        final String oldDoc = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+                + "<mxCell id=\"a\" value=\"A2\" parent=\"1\" vertex=\"1\"/></root></mxGraphModel>";
+        final String newDoc = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+                + "<mxCell id=\"a\" value=\"A\" parent=\"1\" vertex=\"1\"/>"
+                + "<mxCell id=\"b\" value=\"B\" parent=\"1\" vertex=\"1\"/>"
+                + "<mxCell id=\"b\" value=\"B\" parent=\"1\" vertex=\"1\"/></root></mxGraphModel>";
+        final long lossyClobbersBefore = Metrics.get().getCount(Metric.LOSSY_CLOBBERS);
+        final long cleanMergesBefore = Metrics.get().getCount(Metric.CLEAN_MERGES);
+
+        // === when ===
+        final String merged = merger.merge(ancestorDoc, oldDoc, newDoc);
+
+        // === then ===
+        Assertions.assertFalse(merged.contains("A2"), merged);
+        Assertions.assertEquals(2, merged.split("id=\"b\"", -1).length - 1, merged);
+        Assertions.assertEquals(lossyClobbersBefore + 1, Metrics.get().getCount(Metric.LOSSY_CLOBBERS));
+        Assertions.assertEquals(cleanMergesBefore, Metrics.get().getCount(Metric.CLEAN_MERGES));
+        Assertions.assertEquals(1, merger.getStatistics().getClobberedMerges());
+        Assertions.assertEquals(0, merger.getStatistics().getMergesWithConflicts());
+    }
+
     /**
      * In mxGraph the order of nodes under root indicates z-order. Our diff algorithm should not duplicate elements
      * if just the z-order changes.
@@ -0,0 +1,158 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class MxGraphDocumentPatcherTest {
+    private static final String ADDED_ID = "b5f5536a-9f57-abfb-15ae-110ee5734f1e_1";
+    private static final String ADDED_CELL = "<mxCell id=\"b5f5536a-9f57-abfb-15ae-110ee5734f1e_1\" value=\"\" "
+            + "style=\"whiteSpace=wrap;html=1;aspect=fixed;\" parent=\"1\" vertex=\"1\">"
+            + "<mxGeometry x=\"100\" y=\"40\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>";
+    private static final String EXISTING_ID = "da59c70f-a292-3dae-ef72-a01f3c25f0ee_1";
+    private static final String MOVED_EXISTING_CELL = "<mxCell id=\"da59c70f-a292-3dae-ef72-a01f3c25f0ee_1\" value=\"\" "
+            + "style=\"whiteSpace=wrap;html=1;aspect=fixed;\" parent=\"1\" vertex=\"1\">"
+            + "<mxGeometry x=\"300\" y=\"370\" width=\"80\" height=\"80\" as=\"geometry\"/></mxCell>";
+
+    private XmlUtils xmlUtils;
+    private MxGraphDocumentPatcher patcher;
+
+    @BeforeEach
+    public void setUp() {
+        xmlUtils = new XmlUtils();
+        patcher = new MxGraphDocumentPatcher(xmlUtils);
+    }
+
+    /**
+     * Inserting the one cell the new document added, on top of the old document, gives the same result as merging
+     * the whole new document.
+     */
+    @Test
+    public void testPatchInsertsCell() {
+        // === given ===
+        final String oldDoc = loadResourcesFile("add_two/doc003_old.xml");
+        final String expectedDoc = loadResourcesFile("add_two/doc003_expected.xml");
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.INSERT, ADDED_ID, ADDED_CELL, EXISTING_ID));
+
+        // === when ===
+        final PatchResult result = patcher.patch(oldDoc, operations);
+
+        // === then ===
+        Assertions.assertEquals(expectedDoc, result.getDocument());
+        Assertions.assertTrue(result.getConflictingIds().isEmpty());
+    }
+
+    @Test
+    public void testPatchUpdatesAndDeletesCells() {
+        // === given ===
+        final String doc = loadResourcesFile("add_two/doc003_expected.xml");
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.UPDATE, EXISTING_ID, MOVED_EXISTING_CELL, null),
+                new CellOperation(CellOperation.Type.DELETE, ADDED_ID, null, null));
+
+        // === when ===
+        final PatchResult result = patcher.patch(doc, operations);
+
+        // === then ===
+        final List<MxCell> cells = xmlUtils.readMxCells(result.getDocument());
+        Assertions.assertEquals(ImmutableList.of("0", "1", EXISTING_ID), getIds(cells));
+        Assertions.assertEquals(300, cells.get(2).getGeometry().getX());
+        Assertions.assertTrue(result.getConflictingIds().isEmpty());
+    }
+
+    /**
+     * Later inserts above the same cell end up directly above it, as if the operations were applied one by one.
+     */
+    @Test
+    public void testPatchInsertsInOrder() {
+        // === given ===
+        final String doc = loadResourcesFile("add_two/doc003_ancestor.xml");
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.INSERT, "a", "<mxCell id=\"a\" parent=\"1\"/>", "1"),
+                new CellOperation(CellOperation.Type.INSERT, "b", "<mxCell id=\"b\" parent=\"1\"/>", "1"),
+                new CellOperation(CellOperation.Type.INSERT, "c", "<mxCell id=\"c\" parent=\"1\"/>", "a"),
+                new CellOperation(CellOperation.Type.INSERT, "d", "<mxCell id=\"d\" parent=\"1\"/>", null));
+
+        // === when ===
+        final PatchResult result = patcher.patch(doc, operations);
+
+        // === then ===
+        Assertions.assertEquals(ImmutableList.of("0", "1", "b", "a", "c", "d"),
+                getIds(xmlUtils.readMxCells(result.getDocument())));
+    }
+
+    /**
+     * Someone else deleted the cell this client updated. The update wins and the cell comes back, on top.
+     */
+    @Test
+    public void testPatchUpdateOfDeletedCellIsConflict() {
+        // === given ===
+        final String doc = loadResourcesFile("add_two/doc003_new.xml");
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.UPDATE, EXISTING_ID, MOVED_EXISTING_CELL, null));
+
+        // === when ===
+        final PatchResult result = patcher.patch(doc, operations);
+
+        // === then ===
+        Assertions.assertEquals(ImmutableList.of("0", "1", ADDED_ID, EXISTING_ID),
+                getIds(xmlUtils.readMxCells(result.getDocument())));
+        Assertions.assertEquals(ImmutableSet.of(EXISTING_ID), result.getConflictingIds());
+    }
+
+    @Test
+    public void testPatchRejectsMismatchedId() {
+        // === given ===
+        final List<CellOperation> operations = ImmutableList.of(
+                new CellOperation(CellOperation.Type.INSERT, "other", ADDED_CELL, null));
+
+        // === when / then ===
+        Assertions.assertThrows(IllegalArgumentException.class, () -> patcher.patch("", operations));
+    }
+
+    /**
+     * Patching a document with its diff against another gives exactly the other document, moves included.
+     */
+    @Test
+    public void testDiffPatchesIntoOtherDocument() {
+        for (final String[] files : new String[][]{
+                {"add_two/doc003_old.xml", "add_two/doc003_expected.xml"},
+                {"delete_and_add/doc004_ancestor.xml", "delete_and_add/doc004_expected.xml"},
+                {"modify_both/doc005_ancestor.xml", "modify_both/doc005_expected.xml"},
+                {"zorder/doc001_old.xml", "zorder/doc001_new.xml"}}) {
+            // === given ===
+            final List<MxCell> fromCells = xmlUtils.readMxCells(loadResourcesFile(files[0]));
+            final List<MxCell> toCells = xmlUtils.readMxCells(loadResourcesFile(files[1]));
+
+            // === when ===
+            final List<CellOperation> operations = patcher.diff(fromCells, toCells);
+            final Set<String> conflictingIds = new HashSet<>();
+            final List<MxCell> patchedCells = patcher.patchCells(fromCells, operations, conflictingIds);
+
+            // === then ===
+            Assertions.assertEquals(toCells, patchedCells, files[1]);
+            Assertions.assertTrue(conflictingIds.isEmpty());
+        }
+    }
+
+    private static List<String> getIds(final List<MxCell> cells) {
+        return cells.stream().map(MxCell::getId).collect(Collectors.toList());
+    }
+
+    @SneakyThrows(IOException.class)
+    private static String loadResourcesFile(final String filename) {
+        return Resources.toString(Resources.getResource(filename), StandardCharsets.UTF_8);
+    }
+}
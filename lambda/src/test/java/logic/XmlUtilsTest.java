@@ -0,0 +1,102 @@
+package logic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class XmlUtilsTest {
+    private XmlUtils xmlUtils;
+
+    @BeforeEach
+    public void setUp() {
+        xmlUtils = new XmlUtils();
+    }
+
+    /**
+     * The streaming reader and writer must render documents exactly as the DOM reader and Transformer do, including
+     * escaping of markup and newlines in labels, non-ASCII text and nested geometry.
+     */
+    @Test
+    public void testStreamingRoundTripMatchesDom() {
+        for (final String filename : new String[]{
+                "add_two/doc003_old.xml", "delete_one/doc002_old.xml", "escaping/doc007.xml"}) {
+            // === given ===
+            final String doc = loadResourcesFile(filename);
+
+            // === when ===
+            final String domRendered = xmlUtils.documentToString(
+                    xmlUtils.createMxGraphModelDocument(xmlUtils.getMxCellNodes(doc)));
+            final String streamRendered = xmlUtils.mxGraphModelToString(xmlUtils.readMxCells(doc));
+
+            // === then ===
+            Assertions.assertEquals(domRendered, streamRendered, filename);
+        }
+    }
+
+    @Test
+    public void testStreamingRoundTripIsStable() {
+        // === given ===
+        final String doc = loadResourcesFile("escaping/doc007.xml");
+
+        // === when ===
+        final List<MxCell> cells = xmlUtils.readMxCells(doc);
+        final List<MxCell> reread = xmlUtils.readMxCells(xmlUtils.mxGraphModelToString(cells));
+
+        // === then ===
+        Assertions.assertEquals(4, cells.size());
+        Assertions.assertEquals("<b>Tom & Jerry</b> say \"hi\"\nsecond line", cells.get(2).getValue());
+        Assertions.assertEquals(cells, reread);
+    }
+
+    @Test
+    public void testCellsAreParsed() {
+        // === given ===
+        final String doc = loadResourcesFile("escaping/doc007.xml");
+
+        // === when ===
+        final List<MxCell> cells = xmlUtils.readMxCells(doc);
+        final MxCell vertex = cells.get(2);
+        final MxCell edge = cells.get(3);
+
+        // === then ===
+        Assertions.assertEquals("a_2", vertex.getId());
+        Assertions.assertEquals("1", vertex.getParent());
+        Assertions.assertEquals("1", vertex.getStyle().get("html"));
+        Assertions.assertEquals(ImmutableList.of("text"), vertex.getStyle().getNames());
+        Assertions.assertEquals(10, vertex.getGeometry().getX());
+        Assertions.assertEquals(80, vertex.getGeometry().getHeight());
+        Assertions.assertEquals("a_2", edge.getSource());
+        Assertions.assertEquals("a_2", edge.getTarget());
+        Assertions.assertTrue(edge.getGeometry().isRelative());
+        Assertions.assertNotEquals(vertex, edge);
+        Assertions.assertNotEquals(vertex.getContentHash(), edge.getContentHash());
+    }
+
+    /**
+     * Both parsers must build equal cells, so the merge doesn't depend on which one is configured.
+     */
+    @Test
+    public void testDomAndStreamingParsersAgree() {
+        // === given ===
+        final String doc = loadResourcesFile("escaping/doc007.xml");
+
+        // === when ===
+        final List<MxCell> domCells = xmlUtils.getMxCellNodes(doc);
+        final List<MxCell> streamCells = xmlUtils.readMxCells(doc);
+
+        // === then ===
+        Assertions.assertEquals(domCells, streamCells);
+    }
+
+    @SneakyThrows(IOException.class)
+    private static String loadResourcesFile(final String filename) {
+        return Resources.toString(Resources.getResource(filename), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+class MetricsTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testFlushWritesEmbeddedMetricFormatOnceThenNothing() throws IOException {
+        // === given ===
+        final Metrics metrics = new Metrics("Whiteboard", ImmutableMap.of("FunctionName", "test"), Duration.ZERO);
+        metrics.setCacheStats(() -> ImmutableMap.of("newestWhiteboard", new CacheStats(3, 1, 1, 0, 0, 0)));
+        metrics.record(Metric.DOCUMENT_BYTES, 1000);
+        metrics.record(Metric.DOCUMENT_BYTES, 1000);
+        metrics.record(Metric.DOCUMENT_BYTES, 100_000);
+        metrics.recordTime(Metric.PARSE_TIME, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.count(Metric.CLEAN_MERGES);
+        metrics.count(Metric.CLEAN_MERGES);
+
+        // === when ===
+        final JsonNode line = objectMapper.readTree(metrics.flush(1234L));
+
+        // === then ===
+        final JsonNode directive = line.get("_aws").get("CloudWatchMetrics").get(0);
+        Assertions.assertEquals(1234L, line.get("_aws").get("Timestamp").asLong());
+        Assertions.assertEquals("Whiteboard", directive.get("Namespace").asText());
+        Assertions.assertEquals("FunctionName", directive.get("Dimensions").get(0).get(0).asText());
+        Assertions.assertEquals("test", line.get("FunctionName").asText());
+        for (final JsonNode definition : directive.get("Metrics")) {
+            Assertions.assertTrue(line.has(definition.get("Name").asText()), definition.toString());
+        }
+
+        final JsonNode documentBytes = line.get("DocumentBytes");
+        Assertions.assertEquals(2, documentBytes.get("Values").size());
+        Assertions.assertEquals(2, documentBytes.get("Counts").get(0).asLong());
+        Assertions.assertEquals(1, documentBytes.get("Counts").get(1).asLong());
+        Assertions.assertEquals(3, documentBytes.get("Count").asLong());
+        Assertions.assertEquals(102_000, documentBytes.get("Sum").asDouble(), 0.001);
+        Assertions.assertEquals(1000, documentBytes.get("Values").get(0).asDouble(), 1000 * 0.125);
+        Assertions.assertTrue(line.get("ParseTime").get("Min").asDouble() >= 5);
+        Assertions.assertEquals(2, line.get("CleanMerges").asLong());
+        Assertions.assertFalse(line.has("ConflictMerges"));
+        Assertions.assertEquals(75, line.get("NewestWhiteboardCacheHitRate").asDouble(), 0.001);
+        Assertions.assertNull(metrics.flush(1235L));
+    }
+
+    @Test
+    public void testBucketMidpointsAreCloseToTheirValues() {
+        int lastBucket = -1;
+        for (long value = 0; value < 1L << 62; value = value < 100 ? value + 1 : value + value / 7) {
+            final int bucket = Histogram.bucket(value);
+            Assertions.assertTrue(bucket >= lastBucket && bucket < Histogram.BUCKETS, "value " + value);
+            Assertions.assertEquals(value, Histogram.midpoint(bucket), value * 0.125, "value " + value);
+            lastBucket = bucket;
+        }
+        Assertions.assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+}
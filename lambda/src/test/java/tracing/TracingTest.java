@@ -0,0 +1,73 @@
+package tracing;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorder;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import logic.MxGraphDocumentMerger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class TracingTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String ANCESTOR = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+            + "</root></mxGraphModel>";
+    private static final String OLD = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+            + "<mxCell id=\"a\" parent=\"1\" vertex=\"1\"/></root></mxGraphModel>";
+    private static final String NEW = "<mxGraphModel><root><mxCell id=\"0\"/><mxCell id=\"1\" parent=\"0\"/>"
+            + "<mxCell id=\"b\" parent=\"1\" vertex=\"1\"/></root></mxGraphModel>";
+
+    @Test
+    public void testSpansAreNoOpsWithoutATrace() {
+        // === when ===
+        final Tracing.Span first = Tracing.begin("parse").annotate("cells", 1);
+        final Tracing.Span second = Tracing.begin("render").annotate("identifier", "whiteboard");
+        first.close();
+        second.close();
+
+        // === then ===
+        Assertions.assertSame(first, second);
+        Assertions.assertNull(AWSXRay.getTraceEntity());
+    }
+
+    @Test
+    public void testMergeStagesAreWrittenToTheFileAsSubsegments(@TempDir final Path directory) throws IOException {
+        // === given ===
+        final Path traceFile = directory.resolve("traces.jsonl");
+        final AWSXRayRecorder globalRecorder = AWSXRay.getGlobalRecorder();
+        final FileEmitter emitter = new FileEmitter(traceFile);
+        AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard().withEmitter(emitter).build());
+
+        // === when ===
+        try {
+            AWSXRay.beginSegment("whiteboard");
+            new MxGraphDocumentMerger().merge(ANCESTOR, OLD, NEW);
+            AWSXRay.endSegment();
+        } finally {
+            AWSXRay.setGlobalRecorder(globalRecorder);
+            emitter.close();
+        }
+
+        // === then ===
+        final List<String> lines = Files.readAllLines(traceFile);
+        Assertions.assertEquals(1, lines.size());
+        final JsonNode segment = objectMapper.readTree(lines.get(0));
+        Assertions.assertEquals("whiteboard", segment.get("name").asText());
+        final Map<String, JsonNode> subsegments = new HashMap<>();
+        segment.get("subsegments").forEach(subsegment -> subsegments.put(subsegment.get("name").asText(), subsegment));
+        Assertions.assertEquals(3, subsegments.size(), subsegments.keySet().toString());
+        Assertions.assertEquals(8, subsegments.get("parse").get("annotations").get("cells").asInt());
+        Assertions.assertEquals(0, subsegments.get("mergeNodes").get("annotations").get("conflicts").asInt());
+        Assertions.assertEquals(4, subsegments.get("render").get("annotations").get("cells").asInt());
+    }
+}
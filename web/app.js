@@ -115,11 +115,15 @@
             });
     }
 
-    async function getContentFromRemote(identifier, editor, onResponseCallback, isContentNewCallback) {
+    async function getContentFromRemote(identifier, knownVersion, editor, onResponseCallback, isContentNewCallback) {
         const data = {
             "apiVersion": 1,
             "identifier": identifier,
         };
+        // Only sends the content back if there is a newer version than this.
+        if (knownVersion > 0) {
+            data["knownWhiteboardVersion"] = knownVersion;
+        }
         return postData(endpoint + '/api/get', data)
             .then((response) => {
                 console.log("get response: " + response.ok);
@@ -325,7 +329,7 @@
                 return;
             }
 
-            getContentFromRemote(identifier, editor,
+            getContentFromRemote(identifier, lastGetVersion, editor,
                 function () {
                     if (refreshContentTimerId === -1 && focused) {
                         refreshContentTimerId = setInterval(refreshContent, refreshInterval);